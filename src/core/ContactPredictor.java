@@ -0,0 +1,484 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+import input.ExternalEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <P>
+ * Event queue of predicted contact (connection up and down) events. After
+ * the hosts have been moved for an update interval, the predictor knows
+ * each host's exact trajectory during the interval: straight lines between
+ * the start location, the waypoints the host reached (see
+ * {@link DTNHost#recordTurns()}) and the end location. For every pair of
+ * network interfaces (of the same type) whose trajectories get close to
+ * each other, the times when the distance crosses the transmit range are
+ * solved analytically and connection up/down events are scheduled for
+ * those times. The events are processed by the {@link World} like any
+ * other external events, so the contacts start and end at the exact times
+ * also within long update intervals.
+ * </P>
+ * <P>
+ * The normal connectivity update is still done at the end of every update
+ * interval, so crossings at the very end of the interval and the contacts
+ * of hosts that jumped (see {@link DTNHost#setLocation(Coord)}) are
+ * handled by it.
+ * </P>
+ */
+public class ContactPredictor implements EventQueue {
+	/** fraction of the update interval at its end where no events are
+	 * predicted (the connectivity update at the end takes care of them) */
+	private static final double END_MARGIN = 1e-9;
+
+	private List<DTNHost> hosts;
+	/** locations of the hosts at the start of the movement round */
+	private double[] startXs;
+	private double[] startYs;
+	/** bounding boxes of the hosts' trajectories during the round */
+	private double[] minXs;
+	private double[] maxXs;
+	private double[] minYs;
+	private double[] maxYs;
+	/** did the host move (or jump) during the round */
+	private boolean[] moved;
+	/** interfaces of the hosts grouped by the interface type */
+	private List<InterfaceGroup> groups;
+	private PriorityQueue<PredictedContact> events;
+	/** sequence number of the next event (for ordering same time events) */
+	private long nextSeq;
+
+	/**
+	 * Constructor.
+	 * @param hosts The hosts whose contacts are predicted
+	 */
+	public ContactPredictor(List<DTNHost> hosts) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.startXs = new double[n];
+		this.startYs = new double[n];
+		this.minXs = new double[n];
+		this.maxXs = new double[n];
+		this.minYs = new double[n];
+		this.maxYs = new double[n];
+		this.moved = new boolean[n];
+		this.events = new PriorityQueue<PredictedContact>();
+		this.nextSeq = 0;
+
+		IdentityHashMap<DTNHost, Integer> indexes =
+			new IdentityHashMap<DTNHost, Integer>();
+		HashMap<String, List<NetworkInterface>> byType =
+			new HashMap<String, List<NetworkInterface>>();
+		List<String> types = new ArrayList<String>();
+
+		for (int i=0; i < n; i++) {
+			DTNHost h = hosts.get(i);
+			indexes.put(h, i);
+			h.recordTurns();
+			for (NetworkInterface ni : h.getInterfaces()) {
+				if (ni.getTransmitRange() <= 0) {
+					continue; /* no connectivity simulation for these */
+				}
+				List<NetworkInterface> list = byType.get(
+						ni.getInterfaceType());
+				if (list == null) {
+					list = new ArrayList<NetworkInterface>();
+					byType.put(ni.getInterfaceType(), list);
+					types.add(ni.getInterfaceType());
+				}
+				list.add(ni);
+			}
+		}
+
+		this.groups = new ArrayList<InterfaceGroup>();
+		for (String type : types) {
+			groups.add(new InterfaceGroup(byType.get(type), indexes));
+		}
+	}
+
+	/**
+	 * Stores the start locations of the hosts. Must be called before the
+	 * hosts are moved.
+	 */
+	public void beforeMovement() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			DTNHost h = hosts.get(i);
+			Coord c = h.getLocation();
+			startXs[i] = c.getX();
+			startYs[i] = c.getY();
+			h.clearTurns();
+		}
+	}
+
+	/**
+	 * Predicts the contact events of the movement round. Must be called
+	 * after the hosts have been moved.
+	 * @param startTime The simulation time at the start of the round
+	 * @param timeIncrement Length of the round
+	 */
+	public void afterMovement(double startTime, double timeIncrement) {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			updateBounds(i);
+		}
+		for (InterfaceGroup g : groups) {
+			predict(g, startTime, timeIncrement);
+		}
+	}
+
+	/**
+	 * Returns the next predicted event or an event with time
+	 * Double.MAX_VALUE if there are no events left
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		if (events.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return events.poll();
+	}
+
+	/**
+	 * Returns the time of the next predicted event or Double.MAX_VALUE if
+	 * there are no events left
+	 * @return The time of the next event
+	 */
+	public double nextEventsTime() {
+		if (events.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return events.peek().getTime();
+	}
+
+	/**
+	 * Computes the bounding box of a host's trajectory during the round
+	 * @param h Index of the host
+	 */
+	private void updateBounds(int h) {
+		DTNHost host = hosts.get(h);
+		Coord end = host.getLocation();
+		double[] turns = host.getTurns();
+
+		minXs[h] = Math.min(startXs[h], end.getX());
+		maxXs[h] = Math.max(startXs[h], end.getX());
+		minYs[h] = Math.min(startYs[h], end.getY());
+		maxYs[h] = Math.max(startYs[h], end.getY());
+		for (int k=0, n = host.getNrofTurns(); k < n; k++) {
+			double x = turns[3*k + 1];
+			double y = turns[3*k + 2];
+			minXs[h] = Math.min(minXs[h], x);
+			maxXs[h] = Math.max(maxXs[h], x);
+			minYs[h] = Math.min(minYs[h], y);
+			maxYs[h] = Math.max(maxYs[h], y);
+		}
+
+		moved[h] = host.hasJumped() || host.getNrofTurns() > 0 ||
+			minXs[h] != maxXs[h] || minYs[h] != maxYs[h];
+	}
+
+	/**
+	 * Finds the interface pairs of a group whose (range expanded)
+	 * trajectory bounding boxes overlap and predicts their contacts.
+	 * @param g The interface group
+	 * @param startTime The simulation time at the start of the round
+	 * @param timeIncrement Length of the round
+	 */
+	private void predict(InterfaceGroup g, double startTime,
+			double timeIncrement) {
+		int n = g.interfaces.length;
+		int[] order = g.order;
+
+		for (int k=0; k < n; k++) {
+			int h = g.hostIdx[k];
+			double r = g.interfaces[k].getTransmitRange() / 2;
+			g.minX[k] = minXs[h] - r;
+			g.maxX[k] = maxXs[h] + r;
+			g.minY[k] = minYs[h] - r;
+			g.maxY[k] = maxYs[h] + r;
+		}
+
+		/* the order from the previous round is nearly right */
+		for (int i=1; i < n; i++) {
+			int idx = order[i];
+			double x = g.minX[idx];
+			int j = i - 1;
+			while (j >= 0 && g.minX[order[j]] > x) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = idx;
+		}
+
+		for (int i=0; i < n; i++) {
+			int a = order[i];
+			for (int j = i + 1; j < n && g.minX[order[j]] <= g.maxX[a]; j++) {
+				int b = order[j];
+				int ha = g.hostIdx[a];
+				int hb = g.hostIdx[b];
+				if (g.minY[b] > g.maxY[a] || g.maxY[b] < g.minY[a] ||
+						ha == hb || (!moved[ha] && !moved[hb]) ||
+						hosts.get(ha).hasJumped() ||
+						hosts.get(hb).hasJumped()) {
+					continue;
+				}
+				predictPair(g.interfaces[a], ha, g.interfaces[b], hb,
+						startTime, timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Solves the times when the distance of two interfaces crosses their
+	 * (smaller) transmit range during the round and schedules the
+	 * corresponding events.
+	 */
+	private void predictPair(NetworkInterface ia, int a, NetworkInterface ib,
+			int b, double startTime, double timeIncrement) {
+		double range = Math.min(ia.getTransmitRange(), ib.getTransmitRange());
+		double range2 = range * range;
+		int lastA = hosts.get(a).getNrofTurns() + 1;
+		int lastB = hosts.get(b).getNrofTurns() + 1;
+		int ka = 0;
+		int kb = 0;
+		double u0 = 0;
+		/* relative location at the start of the current piece */
+		double dx0 = knotX(a, 0) - knotX(b, 0);
+		double dy0 = knotY(a, 0) - knotY(b, 0);
+		boolean inRange = dx0 * dx0 + dy0 * dy0 <= range2;
+
+		while (u0 < 1) {
+			/* the trajectories are straight lines between the knots */
+			while (ka < lastA - 1 && knotFraction(a, ka + 1) <= u0) {
+				ka++;
+			}
+			while (kb < lastB - 1 && knotFraction(b, kb + 1) <= u0) {
+				kb++;
+			}
+			double u1 = Math.min(knotFraction(a, ka + 1),
+					knotFraction(b, kb + 1));
+
+			double dx1 = interpolate(a, ka, u1, true) -
+				interpolate(b, kb, u1, true);
+			double dy1 = interpolate(a, ka, u1, false) -
+				interpolate(b, kb, u1, false);
+
+			/* |d0 + t*(d1 - d0)|^2 = range^2, t in [0,1] */
+			double wx = dx1 - dx0;
+			double wy = dy1 - dy0;
+			double qa = wx * wx + wy * wy;
+			double qb = 2 * (dx0 * wx + dy0 * wy);
+			double qc = dx0 * dx0 + dy0 * dy0 - range2;
+			double disc = qb * qb - 4 * qa * qc;
+			if (qa > 0 && disc > 0) {
+				double sq = Math.sqrt(disc);
+				double t1 = (-qb - sq) / (2 * qa);
+				double t2 = (-qb + sq) / (2 * qa);
+				if (t1 > 0 && t1 < 1 && !inRange) {
+					inRange = true;
+					schedule(ia, ib, true, u0 + t1 * (u1 - u0),
+							startTime, timeIncrement);
+				}
+				if (t2 > 0 && t2 < 1 && inRange) {
+					inRange = false;
+					schedule(ia, ib, false, u0 + t2 * (u1 - u0),
+							startTime, timeIncrement);
+				}
+			}
+
+			boolean endInRange = dx1 * dx1 + dy1 * dy1 <= range2;
+			if (endInRange != inRange) { /* crossing exactly at the end */
+				inRange = endInRange;
+				schedule(ia, ib, inRange, u1, startTime, timeIncrement);
+			}
+
+			dx0 = dx1;
+			dy0 = dy1;
+			u0 = u1;
+		}
+	}
+
+	/**
+	 * Schedules a predicted contact event (unless it is at the very start
+	 * or end of the round)
+	 */
+	private void schedule(NetworkInterface ia, NetworkInterface ib,
+			boolean up, double fraction, double startTime,
+			double timeIncrement) {
+		if (fraction <= 0 || fraction >= 1 - END_MARGIN) {
+			return;
+		}
+		events.add(new PredictedContact(ia, ib, up,
+				startTime + fraction * timeIncrement, nextSeq++));
+	}
+
+	/**
+	 * Returns the fraction of the round of a trajectory knot (0 = start,
+	 * 1..nrofTurns = turning points, nrofTurns+1 = end)
+	 */
+	private double knotFraction(int h, int k) {
+		DTNHost host = hosts.get(h);
+		if (k == 0) {
+			return 0;
+		} else if (k > host.getNrofTurns()) {
+			return 1;
+		}
+		return host.getTurns()[3 * (k - 1)];
+	}
+
+	/**
+	 * Returns the X coordinate of a trajectory knot
+	 */
+	private double knotX(int h, int k) {
+		DTNHost host = hosts.get(h);
+		if (k == 0) {
+			return startXs[h];
+		} else if (k > host.getNrofTurns()) {
+			return host.getLocation().getX();
+		}
+		return host.getTurns()[3 * (k - 1) + 1];
+	}
+
+	/**
+	 * Returns the Y coordinate of a trajectory knot
+	 */
+	private double knotY(int h, int k) {
+		DTNHost host = hosts.get(h);
+		if (k == 0) {
+			return startYs[h];
+		} else if (k > host.getNrofTurns()) {
+			return host.getLocation().getY();
+		}
+		return host.getTurns()[3 * (k - 1) + 2];
+	}
+
+	/**
+	 * Returns a coordinate of a host at the given fraction of the round
+	 * when the fraction is between the knots k and k+1
+	 * @param h Index of the host
+	 * @param k Index of the knot
+	 * @param u The fraction of the round
+	 * @param x True for the X coordinate, false for Y
+	 * @return The coordinate
+	 */
+	private double interpolate(int h, int k, double u, boolean x) {
+		double f0 = knotFraction(h, k);
+		double f1 = knotFraction(h, k + 1);
+		double c0 = x ? knotX(h, k) : knotY(h, k);
+		double c1 = x ? knotX(h, k + 1) : knotY(h, k + 1);
+		if (f1 <= f0) {
+			return c1;
+		}
+		return c0 + (u - f0) / (f1 - f0) * (c1 - c0);
+	}
+
+	/**
+	 * Network interfaces of the same type (that can connect to each other)
+	 */
+	private static class InterfaceGroup {
+		private NetworkInterface[] interfaces;
+		/** index of each interface's host */
+		private int[] hostIdx;
+		/** interface indexes in the order of the boxes' minimum X */
+		private int[] order;
+		/** trajectory boxes expanded by half of the transmit range */
+		private double[] minX;
+		private double[] maxX;
+		private double[] minY;
+		private double[] maxY;
+
+		private InterfaceGroup(List<NetworkInterface> interfaces,
+				IdentityHashMap<DTNHost, Integer> indexes) {
+			int n = interfaces.size();
+			this.interfaces = interfaces.toArray(new NetworkInterface[n]);
+			this.hostIdx = new int[n];
+			this.minX = new double[n];
+			this.maxX = new double[n];
+			this.minY = new double[n];
+			this.maxY = new double[n];
+
+			/* initial order by the hosts' current X coordinates */
+			Integer[] sorted = new Integer[n];
+			for (int i=0; i < n; i++) {
+				hostIdx[i] = indexes.get(this.interfaces[i].getHost());
+				sorted[i] = i;
+			}
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Double.compare(
+						InterfaceGroup.this.interfaces[a].getLocation().getX(),
+						InterfaceGroup.this.interfaces[b].getLocation().getX());
+				}
+			});
+			this.order = new int[n];
+			for (int i=0; i < n; i++) {
+				order[i] = sorted[i];
+			}
+		}
+	}
+
+	/**
+	 * Predicted connection up or down event between two interfaces
+	 */
+	@SuppressWarnings("serial")
+	private static class PredictedContact extends ExternalEvent {
+		private NetworkInterface from;
+		private NetworkInterface to;
+		private boolean isUp;
+		/** sequence number for keeping the same time events in order */
+		private long seq;
+
+		private PredictedContact(NetworkInterface from, NetworkInterface to,
+				boolean up, double time, long seq) {
+			super(time);
+			this.from = from;
+			this.to = to;
+			this.isUp = up;
+			this.seq = seq;
+		}
+
+		/**
+		 * Creates the connection if either of the interfaces is scanning
+		 * and the other one's radio is active (like the normal connectivity
+		 * update would do), or destroys the connection.
+		 */
+		@Override
+		public void processEvent(World world) {
+			if (!isUp) {
+				from.destroyConnection(to);
+				return;
+			}
+			if (from.isConnected(to)) {
+				return;
+			}
+			if ((from.isScanning() && to.getHost().isRadioActive()) ||
+					(to.isScanning() && from.getHost().isRadioActive())) {
+				from.createConnection(to);
+			}
+		}
+
+		@Override
+		public int compareTo(ExternalEvent other) {
+			int c = super.compareTo(other);
+			if (c == 0 && other instanceof PredictedContact) {
+				long otherSeq = ((PredictedContact)other).seq;
+				c = seq < otherSeq ? -1 : (seq > otherSeq ? 1 : 0);
+			}
+			return c;
+		}
+
+		@Override
+		public String toString() {
+			return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " +
+				from.getHost() + "<->" + to.getHost() + " (predicted)";
+		}
+	}
+}
@@ -30,6 +30,19 @@ public class DTNHost implements Comparable<DTNHost> {
 	private Path path;
 	private double speed;
 	private double nextTimeToMove;
+	/** total distance this host has moved */
+	private double odometer;
+	/** odometer value at the end of the previous movement round */
+	private double roundOdometer;
+	/** upper bound for the distance any host has moved since the start */
+	private static double displacementBound;
+	/** turning points of the latest movement round as (fraction of the
+	 * round, x, y) triplets, or null if the turns are not recorded */
+	private double[] turns;
+	private int nrofTurns;
+	/** has the host jumped (see {@link #setLocation(Coord)}) after the
+	 * turns were cleared */
+	private boolean jumped;
 	private String name;
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
@@ -105,6 +118,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public static void reset() {
 		nextAddress = 0;
+		displacementBound = 0;
 	}
 
 	/**
@@ -127,6 +141,21 @@ public class DTNHost implements Comparable<DTNHost> {
 		return false;
 	}
 
+	/**
+	 * Returns true if the radio of this host is always active, i.e.,
+	 * checking it with {@link #isRadioActive()} doesn't change the state of
+	 * the network interfaces
+	 * @return True if the radio is always active
+	 */
+	boolean isRadioAlwaysActive() {
+		for (NetworkInterface i : this.net) {
+			if (!i.isAlwaysActive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Set a router for this host
 	 * @param router The router to set
@@ -209,9 +238,122 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param location The location to set
 	 */
 	public void setLocation(Coord location) {
+		if (this.location != null) {
+			double jump = this.location.distance(location);
+			this.odometer += jump;
+			displacementBound += jump;
+		}
+		this.jumped = true;
 		this.location = location.clone();
 	}
 
+	/**
+	 * Returns the total distance this host has moved (including the jumps
+	 * made with {@link #setLocation(Coord)})
+	 * @return The total distance this host has moved
+	 */
+	public double getOdometer() {
+		return this.odometer;
+	}
+
+	/**
+	 * Returns an upper bound for the distance that any host has moved since
+	 * the start of the simulation. The difference of two values of the
+	 * bound is an upper bound for how much any host has moved in between.
+	 * @return The displacement bound
+	 */
+	public static double getDisplacementBound() {
+		return displacementBound;
+	}
+
+	/**
+	 * Increases the displacement bound
+	 * @param distance How much any host may have moved at most since the
+	 * previous increase
+	 * @see #getDisplacementBound()
+	 */
+	static void increaseDisplacementBound(double distance) {
+		displacementBound += distance;
+	}
+
+	/**
+	 * Starts recording the turning points of the movement. After this,
+	 * every time the host reaches a waypoint during a movement round, the
+	 * location and the fraction of the round's movement done so far are
+	 * recorded until {@link #clearTurns()} is called.
+	 */
+	void recordTurns() {
+		if (this.turns == null) {
+			this.turns = new double[3 * 4];
+		}
+		clearTurns();
+	}
+
+	/**
+	 * Clears the recorded turning points (and the jump flag)
+	 */
+	void clearTurns() {
+		this.nrofTurns = 0;
+		this.jumped = false;
+	}
+
+	/**
+	 * Returns the recorded turning points as (fraction of the movement
+	 * round, x, y) triplets. Only the first {@link #getNrofTurns()}
+	 * triplets are valid.
+	 * @return The turning points
+	 */
+	double[] getTurns() {
+		return this.turns;
+	}
+
+	/**
+	 * Returns the number of recorded turning points
+	 * @return The number of recorded turning points
+	 */
+	int getNrofTurns() {
+		return this.nrofTurns;
+	}
+
+	/**
+	 * Returns true if the host has jumped with {@link #setLocation(Coord)}
+	 * after the turns were cleared
+	 * @return True if the host has jumped
+	 */
+	boolean hasJumped() {
+		return this.jumped;
+	}
+
+	/**
+	 * Records the current location as a turning point (if recording)
+	 * @param fraction Fraction of the movement round's movement done so far
+	 */
+	private void recordTurn(double fraction) {
+		if (this.turns == null) {
+			return;
+		}
+		if (this.turns.length < 3 * (nrofTurns + 1)) {
+			double[] newTurns = new double[this.turns.length * 2];
+			System.arraycopy(this.turns, 0, newTurns, 0, 3 * nrofTurns);
+			this.turns = newTurns;
+		}
+		this.turns[3 * nrofTurns] = fraction;
+		this.turns[3 * nrofTurns + 1] = this.location.getX();
+		this.turns[3 * nrofTurns + 2] = this.location.getY();
+		nrofTurns++;
+	}
+
+	/**
+	 * Returns how much this host has moved since the previous call of this
+	 * method (i.e., during the latest movement round)
+	 * @return The distance moved during the latest movement round
+	 */
+	double takeRoundDisplacement() {
+		double moved = this.odometer - this.roundOdometer;
+		this.roundOdometer = this.odometer;
+		return moved;
+	}
+
 	/**
 	 * Sets the Node's name overriding the default name (groupId + netAddress)
 	 * @param name The name to set
@@ -335,17 +477,45 @@ public class DTNHost implements Comparable<DTNHost> {
 		if (!isRadioActive()) {
 			// Make sure inactive nodes don't have connections
 			tearDownAllConnections();
+			for (NetworkInterface i : net) {
+				i.clearPreparedNearInterfaces();
+			}
 			return;
 		}
 
 		if (simulateConnections) {
 			for (NetworkInterface i : net) {
 				i.update();
+				i.clearPreparedNearInterfaces();
 			}
 		}
 		this.router.update();
 	}
 
+	/**
+	 * Does the read phase of the network layer update: the interfaces find
+	 * the near interfaces they will try to connect to (see
+	 * {@link NetworkInterface#prepareNearInterfaces()}). Does not modify any
+	 * state that is visible to other hosts so this can be called for
+	 * multiple hosts concurrently before the actual
+	 * {@link #update(boolean)} calls.
+	 */
+	void prepareUpdate() {
+		for (NetworkInterface i : net) {
+			i.prepareNearInterfaces();
+		}
+	}
+
+	/**
+	 * Updates the locations of this host's network interfaces to their
+	 * connectivity optimizers without updating the connections
+	 */
+	void updateInterfaceLocations() {
+		for (NetworkInterface i : net) {
+			i.updateOptimizerLocation();
+		}
+	}
+
 	/**
 	 * Tears down all connections for this host.
 	 */
@@ -373,11 +543,24 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param timeIncrement How long time the node moves
 	 */
 	public void move(double timeIncrement) {
+		if (!isMovementActive()) {
+			return;
+		}
+		moveActive(timeIncrement);
+	}
+
+	/**
+	 * Moves the node like {@link #move(double)} but assumes that the
+	 * movement is active (i.e., the activeness has already been checked).
+	 * @param timeIncrement How long time the node moves
+	 */
+	void moveActive(double timeIncrement) {
 		double possibleMovement;
+		double totalMovement;
 		double distance;
 		double dx, dy;
 
-		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+		if (SimClock.getTime() < this.nextTimeToMove) {
 			return;
 		}
 		if (this.destination == null) {
@@ -387,12 +570,16 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 
 		possibleMovement = timeIncrement * speed;
+		totalMovement = possibleMovement;
 		distance = this.location.distance(this.destination);
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
+			this.odometer += distance;
 			possibleMovement -= distance;
+			recordTurn(totalMovement > 0 ?
+					1 - possibleMovement / totalMovement : 0);
 			if (!setNextWaypoint()) { // get a new waypoint
 				this.destination = null; // No more waypoints left, therefore the destination must be null
 				return; // no more waypoints left
@@ -406,6 +593,53 @@ public class DTNHost implements Comparable<DTNHost> {
 		dy = (possibleMovement/distance) * (this.destination.getY() -
 				this.location.getY());
 		this.location.translate(dx, dy);
+		this.odometer += possibleMovement;
+	}
+
+	/**
+	 * Moves the node (whose movement is active) like
+	 * {@link #moveActive(double)} if new paths can be requested from the
+	 * movement model concurrently (see
+	 * {@link MovementModel#isParallelPathSafe()}) and there are no movement
+	 * listeners. Otherwise moves the node towards its current destination
+	 * only if that can be done without reaching the destination. This can
+	 * be called for many hosts concurrently.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the move was done (or the node is waiting), false if
+	 * nothing was done and the node must be moved using
+	 * {@link #moveActive(double)}
+	 */
+	boolean moveOnPath(double timeIncrement) {
+		double possibleMovement;
+		double distance;
+		double dx, dy;
+
+		if (SimClock.getTime() < this.nextTimeToMove) {
+			return true;
+		}
+		if ((this.movListeners == null || this.movListeners.isEmpty()) &&
+				this.movement.isParallelPathSafe()) {
+			moveActive(timeIncrement);
+			return true;
+		}
+		if (this.destination == null || !this.movement.isParallelSafe()) {
+			return false;
+		}
+
+		possibleMovement = timeIncrement * speed;
+		distance = this.location.distance(this.destination);
+
+		if (possibleMovement >= distance) {
+			return false; // next waypoint is needed
+		}
+
+		dx = (possibleMovement/distance) * (this.destination.getX() -
+				this.location.getX());
+		dy = (possibleMovement/distance) * (this.destination.getY() -
+				this.location.getY());
+		this.location.translate(dx, dy);
+		this.odometer += possibleMovement;
+		return true;
 	}
 
 	/**
@@ -416,11 +650,15 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	private boolean setNextWaypoint() {
 		if (path == null) {
+			movement.selectRng();
 			path = movement.getPath();
+			movement.deselectRng();
 		}
 
 		if (path == null || !path.hasNext()) {
+			movement.selectRng();
 			this.nextTimeToMove = movement.nextPathAvailable();
+			movement.deselectRng();
 			this.path = null;
 			return false;
 		}
@@ -4,11 +4,11 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -22,12 +22,19 @@ public class Message implements Comparable<Message> {
 	private String id;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
+	/** The last node this message has passed; the hops are shared by the
+	 * replicates of the message */
+	private Hop lastHop;
+	/** List of nodes this message has passed (created when first asked) */
 	private List<DTNHost> path;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Interned integer form of the message identifier */
+	private int intId;
+	/** Integer forms of all message identifiers so far */
+	private static HashMap<String, Integer> intIds;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
@@ -41,10 +48,30 @@ public class Message implements Comparable<Message> {
 	/** if this message is a response message, this is set to the request msg*/
 	private Message requestMsg;
 
-	/** Container for generic message properties. Note that all values
+	/** Values of generic message properties indexed by the property slots
+	 * (or null if no properties have been set). Note that all values
 	 * stored in the properties should be immutable because only a shallow
-	 * copy of the properties is made when replicating messages */
-	private Map<String, Object> properties;
+	 * copy of the properties is made when replicating messages.
+	 * Primitive values are in {@link #propertyNumbers} and their slot here
+	 * has {@link #INT_VALUE} or {@link #DOUBLE_VALUE} as a marker. */
+	private Object[] properties;
+	/** Values of the primitive properties indexed by the property slots */
+	private double[] propertyNumbers;
+	/** True if the property arrays may be shared with other messages and
+	 * must be copied before they are modified */
+	private boolean propertiesShared;
+	/** Slots of the property keys that were asked with
+	 * {@link #getPropertySlot(String)}; they are kept over resets */
+	private static final Map<String, Integer> reservedSlots =
+		new HashMap<String, Integer>();
+	/** Slots of all property keys of the current run */
+	private static Map<String, Integer> propertySlots;
+	/** Number of property slots in use */
+	private static int nrofPropertySlots;
+	/** Marker of a property slot that has an int value */
+	private static final Object INT_VALUE = new Object();
+	/** Marker of a property slot that has a double value */
+	private static final Object DOUBLE_VALUE = new Object();
 
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -67,8 +94,10 @@ public class Message implements Comparable<Message> {
 		this.to = to;
 		this.id = id;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.lastHop = null;
+		this.path = null;
 		this.uniqueId = nextUniqueId;
+		this.intId = internId(id);
 
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -76,6 +105,8 @@ public class Message implements Comparable<Message> {
 		this.responseSize = 0;
 		this.requestMsg = null;
 		this.properties = null;
+		this.propertyNumbers = null;
+		this.propertiesShared = false;
 		this.appID = null;
 
 		Message.nextUniqueId++;
@@ -115,6 +146,40 @@ public class Message implements Comparable<Message> {
 		return this.uniqueId;
 	}
 
+	/**
+	 * Returns the interned integer form of the message ID. All messages with
+	 * the same ID (e.g., replicates) have the same value and the values are
+	 * given in the order of the IDs' first use starting from zero.
+	 * @return The integer ID
+	 */
+	public int getIntId() {
+		return this.intId;
+	}
+
+	/**
+	 * Returns the integer form of a message ID
+	 * @param id The message ID
+	 * @return The integer ID or -1 if no message has had the ID
+	 * @see #getIntId()
+	 */
+	public static int getIntId(String id) {
+		Integer intId = intIds.get(id);
+		return intId == null ? -1 : intId;
+	}
+
+	/**
+	 * Returns the integer form of a message ID and gives the next free
+	 * value to a new ID
+	 */
+	private static int internId(String id) {
+		Integer intId = intIds.get(id);
+		if (intId == null) {
+			intId = intIds.size();
+			intIds.put(id, intId);
+		}
+		return intId;
+	}
+
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
@@ -128,23 +193,50 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.lastHop = new Hop(node, this.lastHop);
+		this.path = null;
 	}
 
 	/**
-	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * Returns a list of nodes this message has passed so far. The list is
+	 * built when it's asked (use {@link #getHopCount()} if only the number
+	 * of hops is needed). The list can't be modified (the nodes are added
+	 * with {@link #addNodeOnPath(DTNHost)}) and it doesn't change when the
+	 * message passes more nodes later.
+	 * @return The (read-only) list in the order the nodes were passed
 	 */
 	public List<DTNHost> getHops() {
+		if (this.path == null) {
+			DTNHost[] nodes = new DTNHost[this.lastHop.count];
+			for (Hop h = this.lastHop; h != null; h = h.previous) {
+				nodes[h.count - 1] = h.node;
+			}
+			this.path = Collections.unmodifiableList(Arrays.asList(nodes));
+		}
 		return this.path;
 	}
 
+	/**
+	 * Returns true if the message has passed the given node (or was created
+	 * there). Unlike {@link #getHops()}, doesn't create the list of hops.
+	 * @param node The node
+	 * @return True if the node is on the path of the message
+	 */
+	public boolean hasPassed(DTNHost node) {
+		for (Hop h = this.lastHop; h != null; h = h.previous) {
+			if (h.node == node) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns the amount of hops this message has passed
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.lastHop.count - 1;
 	}
 
 	/**
@@ -174,6 +266,17 @@ public class Message implements Comparable<Message> {
 		this.initTtl = ttl;
 	}
 
+	/**
+	 * Returns the simulation time when the TTL of this message runs out
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.timeCreated + this.initTtl * 60.0;
+	}
+
 	/**
 	 * Sets the time when this message was received.
 	 * @param time The time to set
@@ -250,13 +353,15 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
-	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * Copies message data from other message. The path and the properties
+	 * are shared with the other message until either message changes them.
+	 * If new fields are introduced to this class, most likely they should be
+	 * copied here too (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.lastHop = m.lastHop;
+		this.path = m.path;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
@@ -264,11 +369,206 @@ public class Message implements Comparable<Message> {
 		this.appID = m.appID;
 
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
+			this.properties = m.properties;
+			this.propertyNumbers = m.propertyNumbers;
+			this.propertiesShared = true;
+			m.propertiesShared = true;
+		}
+	}
+
+	/**
+	 * Returns the slot of a property key. A key that has not been used before
+	 * is given the next free slot. The slots are the same for the whole run
+	 * of the program, so classes should look up the slots of their keys once
+	 * (e.g., to static fields) and use the slot based accessors.
+	 * @param key The property key
+	 * @return The slot of the key
+	 */
+	public static int getPropertySlot(String key) {
+		int slot = registerSlot(key);
+		reservedSlots.put(key, slot);
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of a property key for the string keyed accessors.
+	 * A new key is given the next free slot until the next reset.
+	 * @param key The property key
+	 * @return The slot of the key
+	 */
+	private static int registerSlot(String key) {
+		Integer slot = propertySlots.get(key);
+		if (slot == null) {
+			slot = nrofPropertySlots++;
+			propertySlots.put(key, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the value marker or object of a property slot
+	 */
+	private Object slotValue(int slot) {
+		if (this.properties == null || slot >= this.properties.length) {
+			return null;
+		}
+		return this.properties[slot];
+	}
+
+	/**
+	 * Prepares the property arrays for writing to a slot: creates them,
+	 * makes them big enough and copies them if they are shared
+	 */
+	private void writableSlot(int slot) {
+		if (this.properties == null) {
+			/* lazy creation to prevent performance overhead for classes
+			   that don't use the property feature  */
+			int length = Math.max(slot + 1, nrofPropertySlots);
+			this.properties = new Object[length];
+			this.propertyNumbers = new double[length];
+		} else if (this.propertiesShared || slot >= this.properties.length) {
+			/* copy on write */
+			int length = Math.max(slot + 1, this.properties.length);
+			this.properties = Arrays.copyOf(this.properties, length);
+			this.propertyNumbers = Arrays.copyOf(this.propertyNumbers, length);
+		}
+		this.propertiesShared = false;
+	}
+
+	/**
+	 * Returns true if the message has a value for a property
+	 * @param slot Slot of the property
+	 * @return True if a value has been stored using the slot
+	 * @see #getPropertySlot(String)
+	 */
+	public boolean hasProperty(int slot) {
+		return slotValue(slot) != null;
+	}
+
+	/**
+	 * Returns the value of a property. Primitive values are boxed.
+	 * @param slot Slot of the property
+	 * @return The stored object or null if it isn't found
+	 * @see #getPropertySlot(String)
+	 */
+	public Object getProperty(int slot) {
+		Object value = slotValue(slot);
+		if (value == INT_VALUE) {
+			return Integer.valueOf((int)this.propertyNumbers[slot]);
+		} else if (value == DOUBLE_VALUE) {
+			return Double.valueOf(this.propertyNumbers[slot]);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the value of a numeric property as an int
+	 * @param slot Slot of the property
+	 * @return The value or 0 if the message has no value for the property
+	 * @see #getPropertySlot(String)
+	 */
+	public int getInt(int slot) {
+		Object value = slotValue(slot);
+		if (value == INT_VALUE || value == DOUBLE_VALUE) {
+			return (int)this.propertyNumbers[slot];
+		}
+		return value == null ? 0 : ((Number)value).intValue();
+	}
+
+	/**
+	 * Returns the value of a numeric property as a double
+	 * @param slot Slot of the property
+	 * @return The value or 0 if the message has no value for the property
+	 * @see #getPropertySlot(String)
+	 */
+	public double getDouble(int slot) {
+		Object value = slotValue(slot);
+		if (value == INT_VALUE || value == DOUBLE_VALUE) {
+			return this.propertyNumbers[slot];
+		}
+		return value == null ? 0 : ((Number)value).doubleValue();
+	}
+
+	/**
+	 * Sets the value of a property
+	 * @param slot Slot of the property
+	 * @param value The value to store (or null to remove the value)
+	 * @see #getPropertySlot(String)
+	 */
+	public void updateProperty(int slot, Object value) {
+		if (value == null && slotValue(slot) == null) {
+			return;
+		}
+		writableSlot(slot);
+		this.properties[slot] = value;
+	}
+
+	/**
+	 * Sets the value of a property to an int
+	 * @param slot Slot of the property
+	 * @param value The value to store
+	 * @see #getPropertySlot(String)
+	 */
+	public void setInt(int slot, int value) {
+		writableSlot(slot);
+		this.properties[slot] = INT_VALUE;
+		this.propertyNumbers[slot] = value;
+	}
+
+	/**
+	 * Sets the value of a property to a double
+	 * @param slot Slot of the property
+	 * @param value The value to store
+	 * @see #getPropertySlot(String)
+	 */
+	public void setDouble(int slot, double value) {
+		writableSlot(slot);
+		this.properties[slot] = DOUBLE_VALUE;
+		this.propertyNumbers[slot] = value;
+	}
+
+	/**
+	 * Stores an int value for a property that the message doesn't have yet
+	 * @param slot Slot of the property
+	 * @param value The value to store
+	 * @throws SimError if the message already has a value for the property
+	 * @see #setInt(int, int)
+	 */
+	public void addInt(int slot, int value) throws SimError {
+		checkNewProperty(slot);
+		setInt(slot, value);
+	}
+
+	/**
+	 * Stores a double value for a property that the message doesn't have yet
+	 * @param slot Slot of the property
+	 * @param value The value to store
+	 * @throws SimError if the message already has a value for the property
+	 * @see #setDouble(int, double)
+	 */
+	public void addDouble(int slot, double value) throws SimError {
+		checkNewProperty(slot);
+		setDouble(slot, value);
+	}
+
+	/**
+	 * Checks that the message doesn't have a value for a property yet (to
+	 * prevent accidental name space collisions)
+	 * @param slot Slot of the property
+	 * @throws SimError if the message already has a value for the property
+	 */
+	private void checkNewProperty(int slot) throws SimError {
+		if (!hasProperty(slot)) {
+			return;
+		}
+		String key = "#" + slot;
+		for (Map.Entry<String, Integer> e : propertySlots.entrySet()) {
+			if (e.getValue() == slot) {
+				key = e.getKey();
 			}
 		}
+		throw new SimError("Message " + this + " already contains value " +
+				"for a key " + key);
 	}
 
 	/**
@@ -282,26 +582,25 @@ public class Message implements Comparable<Message> {
 	 * @throws SimError if the message already has a value for the given key
 	 */
 	public void addProperty(String key, Object value) throws SimError {
-		if (this.properties != null && this.properties.containsKey(key)) {
-			/* check to prevent accidental name space collisions */
-			throw new SimError("Message " + this + " already contains value " +
-					"for a key " + key);
-		}
-
-		this.updateProperty(key, value);
+		int slot = registerSlot(key);
+		checkNewProperty(slot);
+		this.updateProperty(slot, value);
 	}
 
 	/**
 	 * Returns an object that was stored to this message using the given
-	 * key. If such object is not found, null is returned.
+	 * key. If such object is not found, null is returned. Looking up a key
+	 * that has never been stored doesn't reserve a slot for it.
 	 * @param key The key used to lookup the object
 	 * @return The stored object or null if it isn't found
+	 * @see #getProperty(int)
 	 */
 	public Object getProperty(String key) {
 		if (this.properties == null) {
 			return null;
 		}
-		return this.properties.get(key);
+		Integer slot = propertySlots.get(key);
+		return slot == null ? null : getProperty(slot);
 	}
 
 	/**
@@ -310,15 +609,10 @@ public class Message implements Comparable<Message> {
 	 * checks for name space clashes.
 	 * @param key The key which is used to lookup the value
 	 * @param value The new value to store
+	 * @see #updateProperty(int, Object)
 	 */
 	public void updateProperty(String key, Object value) throws SimError {
-		if (this.properties == null) {
-			/* lazy creation to prevent performance overhead for classes
-			   that don't use the property feature  */
-			this.properties = new HashMap<String, Object>();
-		}
-
-		this.properties.put(key, value);
+		this.updateProperty(registerSlot(key), value);
 	}
 
 	/**
@@ -340,10 +634,19 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Resets all static fields to default values
+	 * Resets all static fields to default values. The property slots
+	 * returned by {@link #getPropertySlot(String)} stay valid; the slots of
+	 * the keys that were only used with the string keyed accessors are
+	 * released.
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		intIds = new HashMap<String, Integer>();
+		propertySlots = new HashMap<String, Integer>(reservedSlots);
+		nrofPropertySlots = 0;
+		for (int slot : reservedSlots.values()) {
+			nrofPropertySlots = Math.max(nrofPropertySlots, slot + 1);
+		}
 	}
 
 	/**
@@ -360,4 +663,20 @@ public class Message implements Comparable<Message> {
 		this.appID = appID;
 	}
 
+	/**
+	 * A node on the path of a message. Hops are immutable so the replicates
+	 * of a message can share the hops they have in common.
+	 */
+	private static class Hop {
+		private final DTNHost node;
+		private final Hop previous;
+		/** number of nodes on the path up to and including this one */
+		private final int count;
+
+		private Hop(DTNHost node, Hop previous) {
+			this.node = node;
+			this.previous = previous;
+			this.count = previous == null ? 1 : previous.count + 1;
+		}
+	}
 }
@@ -4,10 +4,12 @@
  */
 package core;
 
-import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityOptimizer.NearDistanceVisitor;
+import interfaces.ConnectivityOptimizer.NearInterfaceVisitor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -36,6 +38,34 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * The maximum amount of random offset for the offset */
 	public static final String ACT_JITTER_S = "activenessOffsetJitter";
 
+	/**
+	 * Incremental connectivity -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Boolean (true/false)
+	 * variable. Default = false.
+	 * If enabled, every interface keeps a list of the interfaces that were
+	 * within its transmit range plus a skin distance (see
+	 * {@link #CONNECTIVITY_SKIN_S}) when the list was built, and tries to
+	 * connect only to those. The list is rebuilt (with a connectivity
+	 * optimizer query) only after this host's own movement plus the
+	 * maximum movement of any other host since the previous build could
+	 * have brought an interface from outside the list within the range.
+	 * Thus stationary hosts and slow hosts don't rescan their surroundings
+	 * every update. Only the optimizers that report a coverage range larger
+	 * than the transmit range (e.g., {@link interfaces.ConnectivityGrid})
+	 * support this; other interfaces are scanned normally.
+	 */
+	public static final String INCREMENTAL_CONNECTIVITY_S =
+		"incrementalConnectivity";
+	/**
+	 * Skin distance of the incremental connectivity -setting id ({@value}).
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space. Double
+	 * value (meters). Larger skin means less frequent but more expensive
+	 * rebuilds of the near interface lists. The skin is limited so that the
+	 * list range doesn't exceed the optimizer's coverage range.
+	 * Default is the interface's transmit range.
+	 */
+	public static final String CONNECTIVITY_SKIN_S = "connectivitySkin";
+
 	/** {@link ModuleCommunicationBus} identifier for the "scanning interval"
     variable. */
 	public static final String SCAN_INTERVAL_ID = "Network.scanInterval";
@@ -49,7 +79,18 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
 
+	/** near list action of the update: keep the current near list */
+	private static final int NEAR_LIST_KEEP = 0;
+	/** near list action of the update: use the list built in read phase */
+	private static final int NEAR_LIST_BUILT = 1;
+	/** near list action of the update: drop the list (no room for skin) */
+	private static final int NEAR_LIST_DROP = 2;
+
 	private static Random rng;
+	/** are the near interface lists in use */
+	private static boolean incrementalConnectivity;
+	/** skin distance of the near interface lists or -1 for transmit range */
+	private static double connectivitySkin;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
@@ -64,6 +105,82 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private double scanInterval;
 	private double lastScanTime;
 
+	/** interface whose distance from this interface is known during the
+	 * ongoing connection attempt (or null) */
+	private NetworkInterface knownInterface;
+	/** distance of {@link #knownInterface} */
+	private double knownDistance;
+
+	/** visitor that tries to connect to every near interface */
+	private final NearInterfaceVisitor connector = new NearDistanceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+		public void visit(NetworkInterface ni, double distance) {
+			connect(ni, distance);
+		}
+	};
+
+	/** near interfaces found in the read phase of the update (see
+	 * {@link #prepareNearInterfaces()}) that connecting must be tried to */
+	private NetworkInterface[] prepared;
+	/** distances of the interfaces in {@link #prepared} */
+	private double[] preparedDistances;
+	/** number of near interfaces in {@link #prepared} */
+	private int nrofPrepared;
+	/** are there prepared near interfaces waiting for the update */
+	private boolean isPrepared;
+	/** were any near interfaces visited in the read phase */
+	private boolean preparedVisits;
+	/** transmit range in the read phase */
+	private double preparedRange;
+	/** connectivity optimizer's query stamp in the read phase */
+	private long preparedStamp;
+	/** what to do with the near list in the update (NEAR_LIST_*) */
+	private int preparedListAction;
+	/** near list built in the read phase (or a spare list) */
+	private List<NetworkInterface> preparedNearList;
+	/** skin distance of the near list built in the read phase */
+	private double preparedNearListSkin;
+	/** visitor that stores the near interfaces in the read phase */
+	private final NearInterfaceVisitor preparer =
+		new NearDistanceVisitor() {
+		public void visit(NetworkInterface ni) {
+			prepare(ni, distanceTo(ni));
+		}
+		public void visit(NetworkInterface ni, double distance) {
+			prepare(ni, distance);
+		}
+	};
+
+	/** interfaces that were within {@link #nearListRange} plus
+	 * {@link #nearListSkin} when the list was built (or null) */
+	private List<NetworkInterface> nearList;
+	/** transmit range used when the near list was built */
+	private double nearListRange;
+	/** skin distance of the near list */
+	private double nearListSkin;
+	/** host's odometer value when the near list was built */
+	private double nearListOdometer;
+	/** displacement bound when the near list was built */
+	private double nearListBound;
+	/** list where {@link #nearCollector} stores the interfaces */
+	private List<NetworkInterface> collectedList;
+	/** range within which {@link #nearCollector} stores the interfaces */
+	private double collectRange;
+	/** visitor that stores the interfaces within the near list's range */
+	private final NearInterfaceVisitor nearCollector =
+		new NearDistanceVisitor() {
+		public void visit(NetworkInterface ni) {
+			visit(ni, distanceTo(ni));
+		}
+		public void visit(NetworkInterface ni, double distance) {
+			if (distance <= collectRange) {
+				collectedList.add(ni);
+			}
+		}
+	};
+
 	/** activeness handler for the node group */
 	private ActivenessHandler ah;
 	/** maximum activeness jitter value for the node group */
@@ -81,6 +198,20 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public static void reset() {
 		rng = new Random(0);
+
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		incrementalConnectivity = s.getBoolean(INCREMENTAL_CONNECTIVITY_S,
+				false);
+		if (s.contains(CONNECTIVITY_SKIN_S)) {
+			connectivitySkin = s.getDouble(CONNECTIVITY_SKIN_S);
+			if (connectivitySkin < 0) {
+				throw new SettingsError("Negative value (" + connectivitySkin +
+						") for " + World.OPTIMIZATION_SETTINGS_NS + "." +
+						CONNECTIVITY_SKIN_S);
+			}
+		} else {
+			connectivitySkin = -1;
+		}
 	}
 
 	/**
@@ -155,7 +286,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 
 		if (transmitRange > 0) {
-			optimizer = ConnectivityGrid.ConnectivityGridFactory(
+			optimizer = ConnectivityOptimizer.getOptimizer(
 					this.interfacetype.hashCode(), transmitRange);
 			optimizer.addInterface(this);
 		} else {
@@ -360,8 +491,294 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
+		if (anotherInterface == this.knownInterface) {
+			return this.knownDistance <= smallerRange;
+		}
+		return distanceTo(anotherInterface) <= smallerRange;
+	}
+
+	/**
+	 * Returns the distance between the hosts of this and another interface
+	 * @param anotherInterface The another interface
+	 * @return The distance between the interfaces
+	 */
+	private double distanceTo(NetworkInterface anotherInterface) {
 		return this.host.getLocation().distance(
-				anotherInterface.getHost().getLocation()) <= smallerRange;
+				anotherInterface.getHost().getLocation());
+	}
+
+	/**
+	 * Tries to connect to another interface whose distance from this
+	 * interface is already known, so {@link #isWithinRange(NetworkInterface)}
+	 * doesn't need to compute it again
+	 * @param anotherInterface The interface to connect to
+	 * @param distance Distance between the current locations of the
+	 * interfaces
+	 */
+	private void connect(NetworkInterface anotherInterface, double distance) {
+		this.knownInterface = anotherInterface;
+		this.knownDistance = distance;
+		try {
+			connect(anotherInterface);
+		} finally {
+			this.knownInterface = null;
+		}
+	}
+
+	/**
+	 * Does the read phase of the update: finds the interfaces that
+	 * {@link #connectToNearInterfaces()} will try to connect to when this
+	 * interface is updated and stores the ones that the connection attempt
+	 * can have any effect for, i.e., the ones within the transmit range and
+	 * the ones whose hosts' radio activeness can change. Only modifies the
+	 * state of this interface so this can be called for many interfaces
+	 * concurrently. The update uses the prepared interfaces only if the
+	 * transmit range and the connectivity optimizer's query stamp (see
+	 * {@link ConnectivityOptimizer#getQueryStamp(NetworkInterface)}) are
+	 * still the same; otherwise the near interfaces are queried normally.
+	 */
+	void prepareNearInterfaces() {
+		this.isPrepared = false;
+		if (optimizer == null) {
+			return;
+		}
+
+		this.nrofPrepared = 0;
+		this.preparedVisits = false;
+		this.preparedRange = getTransmitRange();
+		this.preparedListAction = NEAR_LIST_KEEP;
+
+		if (incrementalConnectivity && isNearListValid()) {
+			for (int i=0, n = this.nearList.size(); i < n; i++) {
+				NetworkInterface ni = this.nearList.get(i);
+				prepare(ni, distanceTo(ni));
+			}
+		} else if (incrementalConnectivity) {
+			/* as ensureNearList() but the list is taken in use only in
+			 * the update */
+			double skin = getNearListSkin();
+			if (skin <= 0) {
+				this.preparedListAction = NEAR_LIST_DROP;
+				if (!optimizer.visitNearInterfacesAhead(this,
+						this.preparer)) {
+					return;
+				}
+			} else {
+				if (this.preparedNearList == null) {
+					this.preparedNearList = new ArrayList<NetworkInterface>();
+				} else {
+					this.preparedNearList.clear();
+				}
+				this.collectedList = this.preparedNearList;
+				this.collectRange = this.transmitRange + skin;
+				if (!optimizer.visitNearInterfacesAhead(this,
+						this.nearCollector)) {
+					return;
+				}
+				for (int i=0, n = this.preparedNearList.size(); i < n; i++) {
+					NetworkInterface ni = this.preparedNearList.get(i);
+					prepare(ni, distanceTo(ni));
+				}
+				this.preparedNearListSkin = skin;
+				this.preparedListAction = NEAR_LIST_BUILT;
+			}
+		} else if (!optimizer.visitNearInterfacesAhead(this, this.preparer)) {
+			return;
+		}
+
+		this.preparedStamp = optimizer.getQueryStamp(this);
+		this.isPrepared = true;
+	}
+
+	/**
+	 * Stores a near interface found in the read phase, with its distance,
+	 * if trying to connect to it can have any effect
+	 * @param ni The near interface
+	 * @param distance Distance between the interfaces
+	 */
+	private void prepare(NetworkInterface ni, double distance) {
+		this.preparedVisits = true;
+		if (distance > this.preparedRange &&
+				ni.getHost().isRadioAlwaysActive()) {
+			return; /* out of range and checking its activeness is no-op */
+		}
+
+		if (this.prepared == null) {
+			this.prepared = new NetworkInterface[8];
+			this.preparedDistances = new double[8];
+		} else if (this.nrofPrepared == this.prepared.length) {
+			this.prepared = Arrays.copyOf(this.prepared,
+					2 * this.prepared.length);
+			this.preparedDistances = Arrays.copyOf(this.preparedDistances,
+					2 * this.preparedDistances.length);
+		}
+		this.preparedDistances[this.nrofPrepared] = distance;
+		this.prepared[this.nrofPrepared++] = ni;
+	}
+
+	/**
+	 * Discards the near interfaces found by {@link #prepareNearInterfaces()}
+	 * (if they weren't used)
+	 */
+	void clearPreparedNearInterfaces() {
+		if (this.isPrepared) {
+			this.isPrepared = false;
+			Arrays.fill(this.prepared, 0, this.nrofPrepared, null);
+		}
+	}
+
+	/**
+	 * Tries to connect (using {@link #connect(NetworkInterface)}) to all
+	 * interfaces that the connectivity optimizer considers to be near this
+	 * interface. The interfaces found in the read phase of the update (see
+	 * {@link #prepareNearInterfaces()}) are used if they are still valid.
+	 * Does nothing if there is no optimizer.
+	 */
+	protected void connectToNearInterfaces() {
+		if (optimizer == null || connectToPreparedInterfaces()) {
+			return;
+		}
+		if (ensureNearList()) {
+			for (int i=0, n = this.nearList.size(); i < n; i++) {
+				connect(this.nearList.get(i));
+			}
+		} else {
+			optimizer.visitNearInterfaces(this, this.connector);
+		}
+	}
+
+	/**
+	 * Tries to connect to the interfaces prepared in the read phase of the
+	 * update if the transmit range and the optimizer's query stamp haven't
+	 * changed since. The outcome is the same as with the normal query:
+	 * connecting to the other interfaces wouldn't have any effect.
+	 * @return True if the prepared interfaces were used, false if the near
+	 * interfaces must be queried normally
+	 */
+	private boolean connectToPreparedInterfaces() {
+		if (!this.isPrepared) {
+			return false;
+		}
+		if (getTransmitRange() != this.preparedRange ||
+				optimizer.getQueryStamp(this) != this.preparedStamp) {
+			clearPreparedNearInterfaces();
+			return false;
+		}
+		this.isPrepared = false;
+
+		if (this.preparedListAction == NEAR_LIST_BUILT) {
+			List<NetworkInterface> spare = this.nearList;
+			this.nearList = this.preparedNearList;
+			this.preparedNearList = spare;
+			setNearListState(this.preparedNearListSkin);
+		} else if (this.preparedListAction == NEAR_LIST_DROP) {
+			this.nearList = null;
+		}
+
+		if (this.nrofPrepared == 0 && this.preparedVisits) {
+			isScanning(); /* a scan round starts at the first near interface */
+		}
+		for (int i=0; i < this.nrofPrepared; i++) {
+			NetworkInterface ni = this.prepared[i];
+			this.prepared[i] = null;
+			connect(ni, this.preparedDistances[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * Makes sure the near interface list is valid if incremental
+	 * connectivity is in use (see {@link #INCREMENTAL_CONNECTIVITY_S}).
+	 * The list is rebuilt if it isn't valid (see {@link #isNearListValid()}).
+	 * Only modifies the state of this interface.
+	 * @return True if there is a valid near list, false if the near
+	 * interfaces must be queried from the optimizer
+	 */
+	private boolean ensureNearList() {
+		if (!incrementalConnectivity) {
+			return false;
+		}
+		if (isNearListValid()) {
+			return true;
+		}
+
+		double skin = getNearListSkin();
+		if (skin <= 0) {
+			this.nearList = null; /* no room for a skin */
+			return false;
+		}
+
+		if (this.nearList == null) {
+			this.nearList = new ArrayList<NetworkInterface>();
+		} else {
+			this.nearList.clear();
+		}
+		this.collectedList = this.nearList;
+		this.collectRange = this.transmitRange + skin;
+		optimizer.visitNearInterfaces(this, this.nearCollector);
+		setNearListState(skin);
+		return true;
+	}
+
+	/**
+	 * Returns true if the near interface list is valid, i.e., no interface
+	 * that isn't in the list can be within the transmit range: the transmit
+	 * range hasn't grown and this host's movement plus the maximum movement
+	 * of any host since the list was built is less than the skin distance.
+	 * @return True if the near list is valid
+	 */
+	private boolean isNearListValid() {
+		if (this.nearList == null || this.transmitRange > nearListRange) {
+			return false;
+		}
+		double moved = (host.getOdometer() - nearListOdometer) +
+			(DTNHost.getDisplacementBound() - nearListBound);
+		return moved < nearListSkin;
+	}
+
+	/**
+	 * Returns the skin distance for a new near list: the configured skin
+	 * limited so that the list's range doesn't exceed the optimizer's
+	 * coverage range
+	 * @return The skin distance (zero or negative if there's no room for it)
+	 */
+	private double getNearListSkin() {
+		double skin = connectivitySkin < 0 ? transmitRange : connectivitySkin;
+		return Math.min(skin, optimizer.getCoverageRange() - transmitRange);
+	}
+
+	/**
+	 * Stores the state that a new near list was built in
+	 * @param skin Skin distance of the new list
+	 */
+	private void setNearListState(double skin) {
+		this.nearListRange = transmitRange;
+		this.nearListSkin = skin;
+		this.nearListOdometer = host.getOdometer();
+		this.nearListBound = DTNHost.getDisplacementBound();
+	}
+
+	/**
+	 * Returns true if this interface is always active, i.e., checking its
+	 * activeness with {@link #isActive()} doesn't change its state
+	 * @return True if the interface is always active
+	 */
+	boolean isAlwaysActive() {
+		if (ah == null) {
+			return true;
+		}
+		return ah.isAlwaysActive() && this.transmitRange > 0 &&
+			!host.getComBus().containsProperty(EnergyModel.ENERGY_VALUE_ID);
+	}
+
+	/**
+	 * Updates the location of this interface to the connectivity optimizer
+	 * (if there is one) without updating the connections
+	 */
+	void updateOptimizerLocation() {
+		if (optimizer != null) {
+			optimizer.updateLocation(this);
+		}
 	}
 
 	/**
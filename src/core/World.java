@@ -7,11 +7,14 @@ package core;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
+import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -48,6 +51,61 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the host updates be split in a parallel read phase and a
+	 * serial commit phase -setting id ({@value}). Boolean (true/false)
+	 * variable. Default = false.
+	 * In the read phase the network interfaces of all hosts concurrently
+	 * query their near interfaces from the connectivity optimizers, as the
+	 * optimizers will be at the interfaces' turns in the update round, and
+	 * store the ones that connecting can have any effect for. The commit
+	 * phase is the normal (possibly randomized) update round where the
+	 * interfaces only try to connect to the stored interfaces (or make the
+	 * query again if an earlier host's update has changed the optimizer's
+	 * state that the query depends on). The results are identical to the
+	 * serial updates.
+	 */
+	public static final String PARALLEL_UPDATES_S = "parallelUpdates";
+	/**
+	 * Should the hosts be moved concurrently -setting id ({@value}).
+	 * Boolean (true/false) variable. Default = false.
+	 * Hosts whose movement models can give new paths concurrently (see
+	 * {@link movement.MovementModel#isParallelPathSafe()}, which needs
+	 * {@link movement.MovementModel#HOST_RNG_S} for most models) are moved
+	 * in parallel, including the path requests, if there are no movement
+	 * listeners. Other hosts that only advance on their current path segment
+	 * are also moved in parallel; hosts that need a new waypoint or path
+	 * from such movement models (or whose movement model is not
+	 * {@link movement.MovementModel#isParallelSafe() parallel safe}) are
+	 * moved afterwards in a serial lane in the normal order. The results
+	 * are identical to the serial movement.
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+	/**
+	 * Should the contacts be predicted -setting id ({@value}).
+	 * Boolean (true/false) variable. Default = false.
+	 * If enabled, the hosts are moved at the start of each update interval
+	 * (instead of after the external events of the interval) and the
+	 * times when their interfaces get within (or out of) each other's
+	 * range during the interval are solved from the movement (see
+	 * {@link ContactPredictor}). The connections are created and destroyed
+	 * at those times; the connectivity is updated normally only at the end
+	 * of the interval. This gives exact contact times also with long
+	 * update intervals.
+	 */
+	public static final String CONTACT_PREDICTION_S = "contactPrediction";
+	/**
+	 * Number of worker threads for the parallel updates and movement
+	 * -setting id
+	 * ({@value}). Integer value. Default is the number of available
+	 * processors.
+	 */
+	public static final String PARALLELISM_S = "parallelism";
+	/** how many hosts a single parallel task handles at most ({@value}) */
+	private static final int PARALLEL_CHUNK_SIZE = 64;
+	/** worker pool shared by all the runs (null if not created yet) */
+	private static ForkJoinPool sharedPool = null;
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -67,6 +125,19 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** should the interfaces' locations in the connectivity optimizers be
+	 * updated for all hosts before the host updates */
+	private boolean updateAllLocations;
+	/** predictor of the contacts (null if not in use) */
+	private ContactPredictor contactPredictor;
+	/** worker pool for the parallel update phases (null if not in use) */
+	private ForkJoinPool updatePool;
+	/** worker pool for the parallel movement (null if not in use) */
+	private ForkJoinPool movePool;
+	/** which hosts' movement is active in the current movement round */
+	private boolean[] movementActive;
+	/** which hosts must be moved in the serial lane of the current round */
+	private boolean[] serialMove;
 	
 	private boolean realtimeSimulation;
 	private long simStartRealtime;
@@ -95,6 +166,25 @@ public class World {
 		initSettings();
 	}
 
+	/**
+	 * Returns the worker pool for the parallel phases. One pool is shared by
+	 * all the runs (e.g., the batch runs) so the runs don't leave idle pools
+	 * behind; a new pool is created, and the old one shut down, only if the
+	 * parallelism changes.
+	 * @param parallelism Number of worker threads
+	 * @return The worker pool
+	 */
+	private static synchronized ForkJoinPool getPool(int parallelism) {
+		if (sharedPool != null && sharedPool.getParallelism() == parallelism) {
+			return sharedPool;
+		}
+		if (sharedPool != null) {
+			sharedPool.shutdown();
+		}
+		sharedPool = new ForkJoinPool(parallelism);
+		return sharedPool;
+	}
+
 	/**
 	 * Initializes settings fields that can be configured using Settings class
 	 */
@@ -107,6 +197,33 @@ public class World {
 		
 		this.realtimeSimulation = s.getBoolean(REALTIME_SIM_S ,false);
 
+		this.updateAllLocations = s.getBoolean(
+				NetworkInterface.INCREMENTAL_CONNECTIVITY_S, false);
+
+		if (s.getBoolean(CONTACT_PREDICTION_S, false)) {
+			this.contactPredictor = new ContactPredictor(this.hosts);
+		} else {
+			this.contactPredictor = null;
+		}
+
+		boolean parallelUpdates = s.getBoolean(PARALLEL_UPDATES_S, false);
+		boolean parallelMovement = s.getBoolean(PARALLEL_MOVEMENT_S, false);
+		ForkJoinPool pool = null;
+
+		if (parallelUpdates || parallelMovement) {
+			int parallelism = s.getInt(PARALLELISM_S,
+					Runtime.getRuntime().availableProcessors());
+			if (parallelism < 1) {
+				throw new SettingsError("Invalid value (" + parallelism +
+						") for " + OPTIMIZATION_SETTINGS_NS + "." +
+						PARALLELISM_S);
+			}
+			pool = getPool(parallelism);
+		}
+
+		this.updatePool = parallelUpdates ? pool : null;
+		this.movePool = parallelMovement ? pool : null;
+
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
 			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
@@ -153,6 +270,11 @@ public class World {
 				earliest = eq.nextEventsTime();
 			}
 		}
+		if (this.contactPredictor != null &&
+				contactPredictor.nextEventsTime() < earliest) {
+			nextQueue = contactPredictor;
+			earliest = contactPredictor.nextEventsTime();
+		}
 
 		this.nextEventQueue = nextQueue;
 		this.nextQueueEventTime = earliest;
@@ -183,6 +305,16 @@ public class World {
 			}
 		}
 		
+		boolean predictContacts = this.contactPredictor != null &&
+			simulateConnections;
+		if (predictContacts) {
+			/* move first to know the movement during the interval */
+			contactPredictor.beforeMovement();
+			moveHosts(this.updateInterval);
+			contactPredictor.afterMovement(SimClock.getTime(),
+					this.updateInterval);
+		}
+
 		setNextEventQueue();
 
 		/* process all events that are due until next interval update */
@@ -190,14 +322,18 @@ public class World {
 			simClock.setTime(this.nextQueueEventTime);
 			ExternalEvent ee = this.nextEventQueue.nextEvent();
 			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+			/* update all hosts after every event (with predicted contacts
+			 * the locations are already from the end of the interval) */
+			updateHosts(!predictContacts);
 			setNextEventQueue();
 		}
 
-		moveHosts(this.updateInterval);
+		if (!predictContacts) {
+			moveHosts(this.updateInterval);
+		}
 		simClock.setTime(runUntil);
 
-		updateHosts();
+		updateHosts(true);
 
 		/* inform all update listeners */
 		for (UpdateListener ul : this.updateListeners) {
@@ -209,31 +345,52 @@ public class World {
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. If parallel updates are enabled, the
+	 * read-only part of the updates is first done concurrently for all hosts.
+	 * @param updateConnections Should the connectivity be updated (if
+	 * connections are simulated at all)
 	 */
-	private void updateHosts() {
+	private void updateHosts(boolean updateConnections) {
+		boolean simulateCons = simulateConnections && updateConnections;
+		List<DTNHost> order;
+
 		if (this.updateOrder == null) { // randomizing is off
-			for (int i=0, n = hosts.size();i < n; i++) {
-				if (this.isCancelled) {
-					break;
-				}
-				hosts.get(i).update(simulateConnections);
-			}
+			order = this.hosts;
 		}
 		else { // update order randomizing is on
 			assert this.updateOrder.size() == this.hosts.size() :
 				"Nrof hosts has changed unexpectedly";
 			Random rng = new Random(SimClock.getIntTime());
 			Collections.shuffle(this.updateOrder, rng);
-			for (int i=0, n = hosts.size();i < n; i++) {
-				if (this.isCancelled) {
-					break;
-				}
-				this.updateOrder.get(i).update(simulateConnections);
+			order = this.updateOrder;
+		}
+
+		if (this.updateAllLocations && simulateCons) {
+			/* near interface lists must be built from up-to-date locations
+			 * (also of the hosts that are not updated yet or are inactive) */
+			for (int i=0, n = hosts.size(); i < n; i++) {
+				hosts.get(i).updateInterfaceLocations();
 			}
 		}
+		if (simulateCons) {
+			ConnectivityOptimizer.prepareAllQueries();
+		}
 
-		if (simulateConOnce && simulateConnections) {
+		if (this.updatePool != null && simulateCons) {
+			/* read phase: no host state visible to others is modified */
+			this.updatePool.invoke(new HostPrepareTask(order, 0,
+					order.size()));
+		}
+
+		/* commit phase: the actual updates in the (shuffled) order */
+		for (int i=0, n = order.size();i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			order.get(i).update(simulateCons);
+		}
+
+		if (simulateConOnce && simulateCons) {
 			simulateConnections = false;
 		}
 	}
@@ -243,9 +400,50 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.movePool != null) {
+			moveHostsParallel(timeIncrement);
+		} else {
+			for (int i=0,n = hosts.size(); i<n; i++) {
+				DTNHost host = hosts.get(i);
+				host.move(timeIncrement);
+			}
+		}
+
+		/* nobody moved further than the host that moved the most */
+		double maxMoved = 0;
 		for (int i=0,n = hosts.size(); i<n; i++) {
-			DTNHost host = hosts.get(i);
-			host.move(timeIncrement);
+			maxMoved = Math.max(maxMoved,
+					hosts.get(i).takeRoundDisplacement());
+		}
+		DTNHost.increaseDisplacementBound(maxMoved);
+	}
+
+	/**
+	 * Moves all hosts in the world for a given amount of time using the
+	 * parallel movement lanes (see {@link #PARALLEL_MOVEMENT_S})
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsParallel(double timeIncrement) {
+		int n = hosts.size();
+		if (this.movementActive == null || this.movementActive.length != n) {
+			this.movementActive = new boolean[n];
+			this.serialMove = new boolean[n];
+		}
+
+		/* activeness handlers can be shared by many hosts -> check them
+		 * in the same order as the serial movement would */
+		for (int i=0; i<n; i++) {
+			this.movementActive[i] = hosts.get(i).isMovementActive();
+		}
+
+		this.movePool.invoke(new HostMoveTask(hosts, movementActive,
+				serialMove, timeIncrement, 0, n));
+
+		/* serial lane: hosts that need something from the movement models */
+		for (int i=0; i<n; i++) {
+			if (this.serialMove[i]) {
+				hosts.get(i).moveActive(timeIncrement);
+			}
 		}
 	}
 
@@ -306,4 +504,92 @@ public class World {
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
 	}
+
+	/**
+	 * Fork/join task that runs the read phase of a host update round
+	 * (see {@link DTNHost#prepareUpdate()}) for a range of hosts.
+	 */
+	@SuppressWarnings("serial")
+	private static class HostPrepareTask extends RecursiveAction {
+		private List<DTNHost> hosts;
+		private int from;
+		private int to;
+
+		/**
+		 * Creates a new task
+		 * @param hosts The hosts to prepare
+		 * @param from Index of the first host to prepare
+		 * @param to Index after the last host to prepare
+		 */
+		public HostPrepareTask(List<DTNHost> hosts, int from, int to) {
+			this.hosts = hosts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK_SIZE) {
+				for (int i=from; i < to; i++) {
+					hosts.get(i).prepareUpdate();
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new HostPrepareTask(hosts, from, mid),
+					new HostPrepareTask(hosts, mid, to));
+		}
+	}
+
+	/**
+	 * Fork/join task that moves a range of hosts along their current paths
+	 * (see {@link DTNHost#moveOnPath(double)}) and marks the hosts that
+	 * must be moved in the serial lane.
+	 */
+	@SuppressWarnings("serial")
+	private static class HostMoveTask extends RecursiveAction {
+		private List<DTNHost> hosts;
+		private boolean[] active;
+		private boolean[] serial;
+		private double timeIncrement;
+		private int from;
+		private int to;
+
+		/**
+		 * Creates a new task
+		 * @param hosts All hosts of the world
+		 * @param active Which hosts' movement is active
+		 * @param serial Array where the hosts that need to be moved in the
+		 * serial lane are marked
+		 * @param timeIncrement How long the hosts should move
+		 * @param from Index of the first host to move
+		 * @param to Index after the last host to move
+		 */
+		public HostMoveTask(List<DTNHost> hosts, boolean[] active,
+				boolean[] serial, double timeIncrement, int from, int to) {
+			this.hosts = hosts;
+			this.active = active;
+			this.serial = serial;
+			this.timeIncrement = timeIncrement;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK_SIZE) {
+				for (int i=from; i < to; i++) {
+					serial[i] = active[i] &&
+						!hosts.get(i).moveOnPath(timeIncrement);
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new HostMoveTask(hosts, active, serial, timeIncrement,
+					from, mid), new HostMoveTask(hosts, active, serial,
+							timeIncrement, mid, to));
+		}
+	}
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <P>Reads batches (e.g., lists of external events) from a source in a
+ * background thread so that the simulation can process the current batch
+ * while the next ones are being read and parsed. The batches are returned
+ * in the same order as the source gives them and at most a fixed number of
+ * them are read ahead.</P>
+ *
+ * <P>If the source throws an exception, the exception is thrown from
+ * {@link #next()} in place of the batch that failed, i.e., at the same
+ * point of the simulation where reading the batch without prefetching would
+ * have failed. With prefetching disabled (zero batches ahead), the batches
+ * are read in the caller's thread when they are asked.</P>
+ * @param <T> Type of the batches
+ */
+public class BatchPrefetcher<T> {
+	/** marker for the end of the batches in the queue */
+	private static final Object END = new Object();
+
+	/**
+	 * Source of the batches
+	 * @param <T> Type of the batches
+	 */
+	public interface Source<T> {
+		/**
+		 * Reads the next batch. Called only from one thread at a time.
+		 * @return The batch or null if there are no more batches
+		 */
+		public T read();
+	}
+
+	/**
+	 * Queue entry for an exception of the source
+	 */
+	private static class Failure {
+		private Throwable error;
+
+		private Failure(Throwable error) {
+			this.error = error;
+		}
+	}
+
+	private Source<T> source;
+	/** read batches or null if reading in the caller's thread */
+	private BlockingQueue<Object> queue;
+	private Thread thread;
+	/** true if the end of the batches (or an error) was returned */
+	private boolean ended;
+
+	/**
+	 * Creates a new prefetcher and starts reading batches from the source
+	 * @param source The source of the batches
+	 * @param nrofAhead How many batches are read ahead at most. If less
+	 * than 1, the batches are read in the caller's thread.
+	 * @param name Name of the reader thread
+	 */
+	public BatchPrefetcher(Source<T> source, int nrofAhead, String name) {
+		this.source = source;
+		this.ended = false;
+
+		if (nrofAhead < 1) {
+			return;
+		}
+
+		this.queue = new ArrayBlockingQueue<Object>(nrofAhead);
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				prefetch();
+			}
+		}, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Reads batches to the queue until the end of the source, an error, or
+	 * an interrupt
+	 */
+	private void prefetch() {
+		Object item;
+		do {
+			if (Thread.currentThread().isInterrupted()) {
+				return; // closed while reading the previous batch
+			}
+			try {
+				item = source.read();
+				if (item == null) {
+					item = END;
+				}
+			} catch (RuntimeException e) {
+				item = new Failure(e);
+			} catch (Error e) {
+				item = new Failure(e);
+			}
+
+			try {
+				queue.put(item);
+			} catch (InterruptedException e) {
+				return; // closed
+			}
+		} while (item != END && !(item instanceof Failure));
+	}
+
+	/**
+	 * Returns the next batch. Waits for the batch if it hasn't been read
+	 * yet.
+	 * @return The batch or null if there are no more batches
+	 */
+	@SuppressWarnings("unchecked")
+	public T next() {
+		if (ended) {
+			return null;
+		}
+		if (queue == null) {
+			T batch = source.read();
+			ended = (batch == null);
+			return batch;
+		}
+
+		Object item = take();
+		if (item == END) {
+			ended = true;
+			return null;
+		}
+		if (item instanceof Failure) {
+			ended = true;
+			Throwable error = ((Failure)item).error;
+			if (error instanceof Error) {
+				throw (Error)error;
+			}
+			throw (RuntimeException)error;
+		}
+		return (T)item;
+	}
+
+	/**
+	 * Takes the next item from the queue, waiting for it if necessary
+	 */
+	private Object take() {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return queue.take();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Stops reading batches. The batches that were not asked are discarded.
+	 * Waits until the reader thread has stopped, so the source is not used
+	 * after this method returns.
+	 */
+	public void close() {
+		ended = true;
+		if (thread == null) {
+			return;
+		}
+
+		thread.interrupt();
+		queue.clear();
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		queue.clear();
+		thread = null;
+	}
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.Tuple;
+
+import core.Coord;
+import core.SettingsError;
+
+/**
+ * <P>Binary, per-node indexed version of an ExternalMovement trace. The
+ * samples of each node are stored together, so a movement model can read
+ * its own node's samples straight from the (memory mapped) file without
+ * a global reader that parses all the nodes' samples and maps them by ID.
+ * Files are created from text traces with {@link #convert(File, File)},
+ * also from the command line:<BR>
+ * <TT>java -cp target input.BinaryMovementTrace &lt;trace.txt&gt;
+ * &lt;trace{@value #BINARY_EXT}&gt;</TT></P>
+ *
+ * <P>The nodes of the file are the nodes of the first time instance of the
+ * text trace, in the same order. Samples of IDs that are not in the first
+ * time instance are left out (ExternalMovement ignores them too). All the
+ * values are normalized as {@link ExternalMovementReader} normalizes them.
+ * </P>
+ *
+ * <P>File format (all values big-endian):<BR>
+ * <TT>magic (int), version (int), number of time instances (int), number
+ * of nodes (int), minTime, maxTime, minX, maxX, minY, maxY (doubles)</TT>
+ * <BR>
+ * the time index (time of each time instance, double)<BR>
+ * the node index (file offset (long) and number of samples (int) of each
+ * node)<BR>
+ * the node IDs (end offsets (int per node) and the IDs (UTF-8))<BR>
+ * and the samples of each node at their offsets: <TT>times, x and y
+ * coordinates</TT> (one double per sample in each)</P>
+ */
+public class BinaryMovementTrace {
+	/** Extension of binary movement trace files */
+	public static final String BINARY_EXT = ".bmt";
+	/** identifier in the beginning of the files ("\u0089ONM") */
+	private static final int MAGIC = 0x894F4E4D;
+	/** version of the file format */
+	private static final int VERSION = 1;
+	/** size of the header (magic, version, counts and offsets) */
+	private static final int HEADER_SIZE = 16 + 6 * 8;
+	/** size of a node index entry */
+	private static final int NODE_ENTRY_SIZE = 12;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File traceFile;
+	private int nrofTimes;
+	private int nrofNodes;
+	private double minTime;
+	private double maxTime;
+	private double minX;
+	private double maxX;
+	private double minY;
+	private double maxY;
+	private ByteBuffer times;
+	private ByteBuffer nodeIndex;
+	private ByteBuffer idEnds;
+	private ByteBuffer idBytes;
+
+	/**
+	 * Samples of one node. The samples are read from the file only when
+	 * they are asked.
+	 */
+	public static class NodeTrace {
+		private ByteBuffer samples;
+		private int size;
+
+		private NodeTrace(ByteBuffer samples, int size) {
+			this.samples = samples;
+			this.size = size;
+		}
+
+		/**
+		 * Returns the number of samples of the node
+		 * @return The number of samples
+		 */
+		public int size() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the time of the i:th sample
+		 * @param i Index of the sample
+		 * @return The time
+		 */
+		public double getTime(int i) {
+			return samples.getDouble(8 * i);
+		}
+
+		/**
+		 * Returns the location of the i:th sample
+		 * @param i Index of the sample
+		 * @return The location
+		 */
+		public Coord getLocation(int i) {
+			return new Coord(samples.getDouble(8 * (size + i)),
+					samples.getDouble(8 * (2 * size + i)));
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param traceFile The binary trace file
+	 * @throws SettingsError if the file can't be read
+	 */
+	public BinaryMovementTrace(File traceFile) {
+		this.traceFile = traceFile;
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(traceFile, "r");
+			FileChannel channel = file.getChannel();
+
+			ByteBuffer header = map(channel, 0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC) {
+				throw new SettingsError("Invalid binary movement trace: " +
+						traceFile.getAbsolutePath());
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new SettingsError("Unsupported version " +
+						header.getInt(4) + " of binary movement trace " +
+						traceFile.getAbsolutePath());
+			}
+			this.nrofTimes = header.getInt(8);
+			this.nrofNodes = header.getInt(12);
+			this.minTime = header.getDouble(16);
+			this.maxTime = header.getDouble(24);
+			this.minX = header.getDouble(32);
+			this.maxX = header.getDouble(40);
+			this.minY = header.getDouble(48);
+			this.maxY = header.getDouble(56);
+
+			long offset = HEADER_SIZE;
+			this.times = map(channel, offset, 8L * nrofTimes);
+			offset += 8L * nrofTimes;
+			this.nodeIndex = map(channel, offset,
+					(long)NODE_ENTRY_SIZE * nrofNodes);
+			offset += (long)NODE_ENTRY_SIZE * nrofNodes;
+			this.idEnds = map(channel, offset, 4L * nrofNodes);
+			offset += 4L * nrofNodes;
+			int nrofBytes = (nrofNodes == 0 ? 0 :
+				idEnds.getInt(4 * (nrofNodes - 1)));
+			this.idBytes = map(channel, offset, nrofBytes);
+		} catch (IOException e) {
+			throw new SettingsError("Can't read binary movement trace " +
+					traceFile.getAbsolutePath() + ": " + e.getMessage());
+		} finally {
+			closeFile(file); // the mappings stay valid
+		}
+	}
+
+	/**
+	 * Maps a part of a file to memory
+	 */
+	private static MappedByteBuffer map(FileChannel channel, long offset,
+			long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new SettingsError("Too large part in a binary movement " +
+					"trace");
+		}
+		if (offset + length > channel.size()) {
+			throw new SettingsError("Truncated binary movement trace");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	private static void closeFile(RandomAccessFile file) {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * Returns the number of time instances in the trace
+	 * @return The number of time instances
+	 */
+	public int getNrofTimes() {
+		return this.nrofTimes;
+	}
+
+	/**
+	 * Returns the time of the i:th time instance
+	 * @param i Index of the time instance
+	 * @return The (normalized) time
+	 */
+	public double getTime(int i) {
+		return times.getDouble(8 * i);
+	}
+
+	/**
+	 * Returns the number of nodes in the trace
+	 * @return The number of nodes
+	 */
+	public int getNrofNodes() {
+		return this.nrofNodes;
+	}
+
+	/**
+	 * Returns the ID of the i:th node in the trace
+	 * @param i Index of the node
+	 * @return The ID of the node
+	 */
+	public String getNodeId(int i) {
+		int start = (i == 0 ? 0 : idEnds.getInt(4 * (i - 1)));
+		byte[] bytes = new byte[idEnds.getInt(4 * i) - start];
+		for (int j = 0; j < bytes.length; j++) {
+			bytes[j] = idBytes.get(start + j);
+		}
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Returns the samples of the i:th node. The first sample is the node's
+	 * location at the first time instance.
+	 * @param i Index of the node
+	 * @return The samples
+	 * @throws SettingsError if the samples can't be read
+	 */
+	public NodeTrace getNode(int i) {
+		long offset = nodeIndex.getLong(NODE_ENTRY_SIZE * i);
+		int size = nodeIndex.getInt(NODE_ENTRY_SIZE * i + 8);
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(traceFile, "r");
+			return new NodeTrace(map(file.getChannel(), offset, 24L * size),
+					size);
+		} catch (IOException e) {
+			throw new SettingsError("Can't read binary movement trace " +
+					traceFile.getAbsolutePath() + ": " + e.getMessage());
+		} finally {
+			closeFile(file);
+		}
+	}
+
+	/**
+	 * Returns offset minTime
+	 * @return the minTime
+	 */
+	public double getMinTime() {
+		return minTime;
+	}
+
+	/**
+	 * Returns offset maxTime
+	 * @return the maxTime
+	 */
+	public double getMaxTime() {
+		return maxTime;
+	}
+
+	/**
+	 * Returns offset minX
+	 * @return the minX
+	 */
+	public double getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Returns offset maxX
+	 * @return the maxX
+	 */
+	public double getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Returns offset minY
+	 * @return the minY
+	 */
+	public double getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Returns offset maxY
+	 * @return the maxY
+	 */
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Checks if the given file is a binary movement trace (regardless of
+	 * its extension)
+	 * @param file The file to check
+	 * @return True if the file starts with the identifier of binary traces
+	 */
+	public static boolean isBinaryMovementTrace(File file) {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return false;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Converts an ExternalMovement text trace to a binary trace. The text
+	 * file is read twice (first to index the nodes and time instances), so
+	 * the samples don't need to fit in memory.
+	 * @param textFile The text trace
+	 * @param outFile The binary trace to create
+	 * @throws IOException if something in storing went wrong
+	 * @see ExternalMovementReader
+	 */
+	public static void convert(File textFile, File outFile)
+			throws IOException {
+		/* first pass: nodes, their number of samples and the time index */
+		ExternalMovementReader r =
+			new ExternalMovementReader(textFile.getPath());
+		Map<String, Integer> nodeIndexes = new HashMap<String, Integer>();
+		String[] ids = new String[0];
+		int[] counts = new int[0];
+		double[] timeIndex = new double[64];
+		int nrofTimes = 0;
+
+		for (List<Tuple<String, Coord>> moves = r.readNextMovements();
+				moves.size() > 0; moves = r.readNextMovements()) {
+			if (nrofTimes == 0) { // the nodes of the first time instance
+				ids = new String[moves.size()];
+				counts = new int[moves.size()];
+				for (int i = 0; i < moves.size(); i++) {
+					ids[i] = moves.get(i).getKey();
+					nodeIndexes.put(ids[i], i); // last one of same IDs
+					counts[i] = 1;
+				}
+			}
+			else {
+				for (Tuple<String, Coord> t : moves) {
+					Integer node = nodeIndexes.get(t.getKey());
+					if (node != null) {
+						counts[node]++;
+					}
+				}
+			}
+
+			if (nrofTimes == timeIndex.length) {
+				timeIndex = Arrays.copyOf(timeIndex, 2 * nrofTimes);
+			}
+			timeIndex[nrofTimes++] = r.getLastTimeStamp();
+		}
+
+		/* second pass: the samples */
+		Writer w = new Writer(outFile, r, timeIndex, nrofTimes, ids, counts);
+		r = new ExternalMovementReader(textFile.getPath());
+		boolean first = true;
+		for (List<Tuple<String, Coord>> moves = r.readNextMovements();
+				moves.size() > 0; moves = r.readNextMovements()) {
+			double time = r.getLastTimeStamp();
+			for (int i = 0; i < moves.size(); i++) {
+				Tuple<String, Coord> t = moves.get(i);
+				Integer node = (first ? Integer.valueOf(i) :
+					nodeIndexes.get(t.getKey()));
+				if (node != null) {
+					w.add(node, time, t.getValue());
+				}
+			}
+			first = false;
+		}
+		w.close();
+	}
+
+	/**
+	 * Converts an ExternalMovement text trace to a binary trace.
+	 * @param args Paths of the text trace and the binary trace to create
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: BinaryMovementTrace <trace file> " +
+					"<output file>");
+			System.exit(1);
+		}
+		convert(new File(args[0]), new File(args[1]));
+	}
+
+	/**
+	 * Writes the samples of the nodes through memory mappings
+	 */
+	private static class Writer {
+		private RandomAccessFile file;
+		private int[] counts;
+		private int[] added;
+		/** offsets of the nodes' samples in the file */
+		private long[] offsets;
+		/** mappings of the nodes' samples (created when first needed) */
+		private MappedByteBuffer[] samples;
+
+		/**
+		 * Creates a file and writes everything except the samples to it
+		 */
+		private Writer(File outFile, ExternalMovementReader r,
+				double[] timeIndex, int nrofTimes, String[] ids,
+				int[] counts) throws IOException {
+			this.file = new RandomAccessFile(outFile, "rw");
+			this.file.setLength(0);
+			this.counts = counts;
+			this.added = new int[counts.length];
+			this.offsets = new long[counts.length];
+			this.samples = new MappedByteBuffer[counts.length];
+
+			ByteArrayOutputStream idBytes = new ByteArrayOutputStream();
+			ByteBuffer idEnds = ByteBuffer.allocate(4 * ids.length);
+			for (String id : ids) {
+				byte[] bytes = id.getBytes(UTF8);
+				idBytes.write(bytes, 0, bytes.length);
+				idEnds.putInt(idBytes.size());
+			}
+
+			long offset = HEADER_SIZE + 8L * nrofTimes +
+				(long)NODE_ENTRY_SIZE * ids.length + 4L * ids.length +
+				idBytes.size();
+			ByteBuffer nodeIndex =
+				ByteBuffer.allocate(NODE_ENTRY_SIZE * ids.length);
+			for (int i = 0; i < ids.length; i++) {
+				offsets[i] = offset;
+				nodeIndex.putLong(offset).putInt(counts[i]);
+				offset += 24L * counts[i];
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(nrofTimes);
+			header.putInt(ids.length);
+			header.putDouble(r.getMinTime()).putDouble(r.getMaxTime());
+			header.putDouble(r.getMinX()).putDouble(r.getMaxX());
+			header.putDouble(r.getMinY()).putDouble(r.getMaxY());
+
+			ByteBuffer times = ByteBuffer.allocate(8 * nrofTimes);
+			for (int i = 0; i < nrofTimes; i++) {
+				times.putDouble(timeIndex[i]);
+			}
+
+			FileChannel channel = file.getChannel();
+			long position = 0;
+			for (ByteBuffer bb : new ByteBuffer[] {header, times, nodeIndex,
+					idEnds, ByteBuffer.wrap(idBytes.toByteArray())}) {
+				bb.rewind();
+				while (bb.hasRemaining()) {
+					position += channel.write(bb, position);
+				}
+			}
+			file.setLength(offset);
+		}
+
+		/**
+		 * Adds the next sample of a node
+		 */
+		private void add(int node, double time, Coord c) throws IOException {
+			MappedByteBuffer s = samples[node];
+			if (s == null) {
+				long length = 24L * counts[node];
+				if (length > Integer.MAX_VALUE) {
+					throw new SettingsError("Too many samples for node " +
+							node + " in a binary movement trace");
+				}
+				s = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+						offsets[node], length);
+				samples[node] = s;
+			}
+			int i = added[node]++;
+			int n = counts[node];
+			s.putDouble(8 * i, time);
+			s.putDouble(8 * (n + i), c.getX());
+			s.putDouble(8 * (2 * n + i), c.getY());
+
+			if (added[node] == n) { // all samples of the node written
+				s.force();
+				samples[node] = null;
+			}
+		}
+
+		/**
+		 * Closes the file
+		 */
+		private void close() throws IOException {
+			for (int i = 0; i < counts.length; i++) {
+				if (added[i] != counts[i]) {
+					throw new SettingsError("Only " + added[i] + " of " +
+							counts[i] + " samples of node " + i +
+							" were stored");
+				}
+			}
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,588 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * <P>Reads external events from a columnar binary file. The file is memory
+ * mapped and the events are created straight from the mapped columns, so
+ * reading is bound by the I/O instead of parsing. Files can be created from
+ * standard-format text files with {@link #convert(File, File)}, also from
+ * the command line:<BR>
+ * <TT>java -cp target input.ColumnarEventsReader &lt;events.txt&gt;
+ * &lt;events{@value #COLUMNAR_EXT}&gt;</TT></P>
+ *
+ * <P>File format (all values big-endian):<BR>
+ * <TT>magic (int), version (int), number of events (int),
+ * number of strings (int)</TT><BR>
+ * the columns, one value per event in each:<BR>
+ * <TT>time (double), from address (int), to address (int), size (int),
+ * response size (int), string index (int), event type (byte)</TT><BR>
+ * and the string table (message and interface IDs):<BR>
+ * <TT>end offsets of the strings (int per string), the strings (UTF-8)
+ * </TT></P>
+ *
+ * <P>The string index is -1 for events without a string (e.g., connection
+ * events without an interface ID). Delete events have the host address in
+ * both address columns.</P>
+ *
+ * <P>The columns are mapped in chunks of {@value #CHUNK_EVENTS} events, so
+ * a file can have up to <TT>Integer.MAX_VALUE</TT> events. The string table
+ * is mapped as one piece and its UTF-8 bytes can take up to
+ * <TT>Integer.MAX_VALUE</TT> bytes.</P>
+ */
+public class ColumnarEventsReader implements ExternalEventsReader {
+	/** Extension of columnar external events files */
+	public static final String COLUMNAR_EXT = ".cbee";
+	/** identifier in the beginning of the files ("\u0089ONE") */
+	private static final int MAGIC = 0x894F4E45;
+	/** version of the file format */
+	private static final int VERSION = 1;
+	/** size of the header (magic, version and counts) */
+	private static final int HEADER_SIZE = 16;
+	/** widths of the columns (time, from, to, size, response size,
+	 * string index and type) */
+	private static final int[] COLUMN_WIDTHS = {8, 4, 4, 4, 4, 4, 1};
+	/** number of events in a mapped chunk of a column (a power of two) */
+	private static final int CHUNK_EVENTS = 1 << 27;
+	/** number of events read at a time when converting */
+	private static final int CONVERT_CHUNK = 10000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/* event types */
+	private static final byte TYPE_CREATE = 0;
+	private static final byte TYPE_SEND = 1;
+	private static final byte TYPE_DELIVERED = 2;
+	private static final byte TYPE_ABORT = 3;
+	private static final byte TYPE_DROP = 4;
+	private static final byte TYPE_REMOVE = 5;
+	private static final byte TYPE_CONN_UP = 6;
+	private static final byte TYPE_CONN_DOWN = 7;
+
+	private int nrofEvents;
+	private int nextEvent;
+	private Column times;
+	private Column froms;
+	private Column tos;
+	private Column sizes;
+	private Column respSizes;
+	private Column stringIndexes;
+	private Column types;
+	/** end offsets of the strings */
+	private ByteBuffer stringEnds;
+	private ByteBuffer stringBytes;
+	/** strings that have been decoded */
+	private String[] strings;
+	private byte[] stringBuffer;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 */
+	public ColumnarEventsReader(File eventsFile) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(eventsFile, "r");
+			FileChannel channel = file.getChannel();
+
+			ByteBuffer header = map(channel, 0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC) {
+				throw new SimError("Invalid columnar external events file: " +
+						eventsFile.getAbsolutePath());
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new SimError("Unsupported version " + header.getInt(4) +
+						" of columnar external events file " +
+						eventsFile.getAbsolutePath());
+			}
+			this.nrofEvents = header.getInt(8);
+			int nrofStrings = header.getInt(12);
+
+			if (nrofEvents < 0 || nrofStrings < 0) {
+				throw new SimError("Invalid columnar external events file: " +
+						eventsFile.getAbsolutePath());
+			}
+
+			Column[] columns = new Column[COLUMN_WIDTHS.length];
+			long offset = HEADER_SIZE;
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = new Column(channel, FileChannel.MapMode.READ_ONLY,
+						offset, COLUMN_WIDTHS[i], nrofEvents);
+				offset += (long)COLUMN_WIDTHS[i] * nrofEvents;
+			}
+			this.times = columns[0];
+			this.froms = columns[1];
+			this.tos = columns[2];
+			this.sizes = columns[3];
+			this.respSizes = columns[4];
+			this.stringIndexes = columns[5];
+			this.types = columns[6];
+
+			this.stringEnds = map(channel, offset, 4L * nrofStrings);
+			offset += 4L * nrofStrings;
+			int nrofBytes = (nrofStrings == 0 ? 0 :
+				stringEnds.getInt(4 * (nrofStrings - 1)));
+			this.stringBytes = map(channel, offset, nrofBytes);
+		} catch (IOException e) {
+			throw new SimError("Can't read columnar external events file " +
+					eventsFile.getAbsolutePath(), e);
+		} finally {
+			closeFile(file); // the mappings stay valid
+		}
+
+		this.strings = new String[stringEnds.capacity() / 4];
+		this.stringBuffer = new byte[64];
+		this.nextEvent = 0;
+	}
+
+	/**
+	 * Maps a part of a file to memory
+	 */
+	private static MappedByteBuffer map(FileChannel channel, long offset,
+			long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new SimError("Part of " + length + " bytes in a columnar " +
+					"events file; at most " + Integer.MAX_VALUE + " bytes " +
+					"can be mapped at a time");
+		}
+		if (offset + length > channel.size()) {
+			throw new SimError("Truncated columnar external events file");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	private static void closeFile(RandomAccessFile file) {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	public List<ExternalEvent> readEvents(int nrof) {
+		int end = nextEvent + Math.min(nrof, nrofEvents - nextEvent);
+		ArrayList<ExternalEvent> events =
+			new ArrayList<ExternalEvent>(Math.max(end - nextEvent, 0));
+
+		for (int i = nextEvent; i < end; i++) {
+			events.add(createEvent(i));
+		}
+		nextEvent = Math.max(end, nextEvent);
+
+		return events;
+	}
+
+	/**
+	 * Creates the event of the given row of the columns
+	 * @param i Index of the event
+	 * @return The event
+	 */
+	private ExternalEvent createEvent(int i) {
+		double time = times.getDouble(i);
+		int from = froms.getInt(i);
+		int to = tos.getInt(i);
+		String id = getString(stringIndexes.getInt(i));
+
+		switch (types.get(i)) {
+		case TYPE_CREATE:
+			return new MessageCreateEvent(from, to, id, sizes.getInt(i),
+					respSizes.getInt(i), time);
+		case TYPE_SEND:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.SENDING);
+		case TYPE_DELIVERED:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.TRANSFERRED);
+		case TYPE_ABORT:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.ABORTED);
+		case TYPE_DROP:
+			return new MessageDeleteEvent(from, id, time, true);
+		case TYPE_REMOVE:
+			return new MessageDeleteEvent(from, id, time, false);
+		case TYPE_CONN_UP:
+			return new ConnectionEvent(from, to, id, true, time);
+		case TYPE_CONN_DOWN:
+			return new ConnectionEvent(from, to, id, false, time);
+		default:
+			throw new SimError("Unknown type " + types.get(i) +
+					" of external event " + i);
+		}
+	}
+
+	/**
+	 * Returns a string of the string table
+	 * @param index Index of the string
+	 * @return The string or null if the index is negative
+	 */
+	private String getString(int index) {
+		if (index < 0) {
+			return null;
+		}
+		if (strings[index] == null) {
+			int start = (index == 0 ? 0 : stringEnds.getInt(4 * (index - 1)));
+			int length = stringEnds.getInt(4 * index) - start;
+			if (length > stringBuffer.length) {
+				stringBuffer = new byte[Math.max(length,
+						2 * stringBuffer.length)];
+			}
+			for (int i = 0; i < length; i++) {
+				stringBuffer[i] = stringBytes.get(start + i);
+			}
+			strings[index] = new String(stringBuffer, 0, length, UTF8);
+		}
+		return strings[index];
+	}
+
+	public void close() {
+		/* nothing to close; the mappings are freed with the buffers */
+	}
+
+	/**
+	 * Checks if the given file is a columnar external events file
+	 * (regardless of its extension)
+	 * @param file The file to check
+	 * @return True if the file starts with the identifier of columnar files
+	 */
+	public static boolean isColumnarEeFile(File file) {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return false;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Stores the events to a columnar binary file
+	 * @param fileName Path to the file where the events are stored
+	 * @param events List of events to store
+	 * @throws IOException if something in storing went wrong
+	 */
+	public static void storeToFile(String fileName,
+			List<ExternalEvent> events) throws IOException {
+		Writer w = new Writer(new File(fileName), events.size());
+		for (ExternalEvent ee : events) {
+			w.add(ee);
+		}
+		w.close();
+	}
+
+	/**
+	 * Converts a standard-format external events file to a columnar binary
+	 * file. The text file is read twice (first to count the events), so the
+	 * events don't need to fit in memory.
+	 * @param textFile The standard-format events file
+	 * @param outFile The columnar file to create
+	 * @throws IOException if something in storing went wrong
+	 * @see StandardEventsReader
+	 */
+	public static void convert(File textFile, File outFile)
+			throws IOException {
+		long count = 0;
+		ExternalEventsReader r = new StandardEventsReader(textFile);
+		for (List<ExternalEvent> events = r.readEvents(CONVERT_CHUNK);
+				events.size() > 0; events = r.readEvents(CONVERT_CHUNK)) {
+			count += events.size();
+		}
+		r.close();
+		if (count > Integer.MAX_VALUE) {
+			throw new SimError(textFile.getAbsolutePath() + " has " + count +
+					" events; a columnar events file can have at most " +
+					Integer.MAX_VALUE + " events");
+		}
+
+		Writer w = new Writer(outFile, (int)count);
+		r = new StandardEventsReader(textFile);
+		for (List<ExternalEvent> events = r.readEvents(CONVERT_CHUNK);
+				events.size() > 0; events = r.readEvents(CONVERT_CHUNK)) {
+			for (ExternalEvent ee : events) {
+				w.add(ee);
+			}
+		}
+		r.close();
+		w.close();
+	}
+
+	/**
+	 * Converts a standard-format external events file to a columnar file.
+	 * @param args Paths of the text file and the columnar file to create
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: ColumnarEventsReader <events file> " +
+					"<output file>");
+			System.exit(1);
+		}
+		convert(new File(args[0]), new File(args[1]));
+	}
+
+	/**
+	 * Writes the columns of a file through memory mappings
+	 */
+	private static class Writer {
+		private RandomAccessFile file;
+		private int nrofEvents;
+		private int added;
+		private long stringsOffset;
+		private Column[] columns;
+		private Map<String, Integer> stringIndexes;
+		private ByteArrayOutputStream stringEnds;
+		private ByteArrayOutputStream stringBytes;
+
+		/**
+		 * Creates a file for the given number of events
+		 */
+		private Writer(File outFile, int nrofEvents) throws IOException {
+			this.file = new RandomAccessFile(outFile, "rw");
+			this.file.setLength(0);
+			this.nrofEvents = nrofEvents;
+			this.added = 0;
+			this.stringIndexes = new HashMap<String, Integer>();
+			this.stringEnds = new ByteArrayOutputStream();
+			this.stringBytes = new ByteArrayOutputStream();
+
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(nrofEvents);
+			header.putInt(0).flip(); // number of strings is written last
+			channel.write(header, 0);
+
+			this.columns = new Column[COLUMN_WIDTHS.length];
+			long offset = HEADER_SIZE;
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = new Column(channel, FileChannel.MapMode.READ_WRITE,
+						offset, COLUMN_WIDTHS[i], nrofEvents);
+				offset += (long)COLUMN_WIDTHS[i] * nrofEvents;
+			}
+			this.stringsOffset = offset;
+		}
+
+		/**
+		 * Adds the next event to the columns
+		 */
+		private void add(ExternalEvent ee) {
+			if (added == nrofEvents) {
+				throw new SimError("More events than the " + nrofEvents +
+						" the file was created for");
+			}
+			int from;
+			int to;
+			int size = 0;
+			int respSize = 0;
+			String id;
+			byte type;
+
+			if (ee.getClass() == MessageCreateEvent.class) {
+				MessageCreateEvent mce = (MessageCreateEvent)ee;
+				from = mce.fromAddr;
+				to = mce.toAddr;
+				id = mce.id;
+				size = mce.getSize();
+				respSize = mce.getResponseSize();
+				type = TYPE_CREATE;
+			}
+			else if (ee.getClass() == MessageRelayEvent.class) {
+				MessageRelayEvent mre = (MessageRelayEvent)ee;
+				from = mre.fromAddr;
+				to = mre.toAddr;
+				id = mre.id;
+				switch (mre.getStage()) {
+				case MessageRelayEvent.SENDING:
+					type = TYPE_SEND;
+					break;
+				case MessageRelayEvent.TRANSFERRED:
+					type = TYPE_DELIVERED;
+					break;
+				default:
+					type = TYPE_ABORT;
+				}
+			}
+			else if (ee.getClass() == MessageDeleteEvent.class) {
+				MessageDeleteEvent mde = (MessageDeleteEvent)ee;
+				from = mde.fromAddr;
+				to = mde.toAddr;
+				id = mde.id;
+				type = (mde.isDrop() ? TYPE_DROP : TYPE_REMOVE);
+			}
+			else if (ee.getClass() == ConnectionEvent.class) {
+				ConnectionEvent ce = (ConnectionEvent)ee;
+				from = ce.fromAddr;
+				to = ce.toAddr;
+				id = ce.interfaceId;
+				type = (ce.isUp ? TYPE_CONN_UP : TYPE_CONN_DOWN);
+			}
+			else {
+				throw new SimError("Can't store event " + ee +
+						" to a columnar events file");
+			}
+
+			columns[0].putDouble(added, ee.getTime());
+			columns[1].putInt(added, from);
+			columns[2].putInt(added, to);
+			columns[3].putInt(added, size);
+			columns[4].putInt(added, respSize);
+			columns[5].putInt(added, indexOf(id));
+			columns[6].put(added, type);
+			added++;
+		}
+
+		/**
+		 * Returns the index of a string in the string table (adds the string
+		 * if it isn't there yet)
+		 */
+		private int indexOf(String s) {
+			if (s == null) {
+				return -1;
+			}
+			Integer index = stringIndexes.get(s);
+			if (index == null) {
+				index = stringIndexes.size();
+				stringIndexes.put(s, index);
+				byte[] bytes = s.getBytes(UTF8);
+				if (bytes.length > Integer.MAX_VALUE - stringBytes.size()) {
+					throw new SimError("The strings of a columnar events " +
+							"file can take at most " + Integer.MAX_VALUE +
+							" bytes");
+				}
+				stringBytes.write(bytes, 0, bytes.length);
+				int end = stringBytes.size();
+				stringEnds.write(end >>> 24);
+				stringEnds.write(end >>> 16);
+				stringEnds.write(end >>> 8);
+				stringEnds.write(end);
+			}
+			return index;
+		}
+
+		/**
+		 * Writes the string table and closes the file
+		 */
+		private void close() throws IOException {
+			if (added != nrofEvents) {
+				throw new SimError("Only " + added + " of " + nrofEvents +
+						" events were stored");
+			}
+			FileChannel channel = file.getChannel();
+			for (Column column : columns) {
+				column.force();
+			}
+			channel.write(ByteBuffer.allocate(4).putInt(0,
+					stringIndexes.size()), 12);
+			channel.write(ByteBuffer.wrap(stringEnds.toByteArray()),
+					stringsOffset);
+			channel.write(ByteBuffer.wrap(stringBytes.toByteArray()),
+					stringsOffset + stringEnds.size());
+			file.close();
+		}
+	}
+
+	/**
+	 * A column of fixed width values that is mapped to memory in chunks of
+	 * {@link #CHUNK_EVENTS} values
+	 */
+	private static class Column {
+		private static final int CHUNK_SHIFT =
+			Integer.numberOfTrailingZeros(CHUNK_EVENTS);
+		private static final int CHUNK_MASK = CHUNK_EVENTS - 1;
+		private MappedByteBuffer[] chunks;
+		private int width;
+
+		/**
+		 * Maps a column of a file
+		 * @param channel The channel of the file
+		 * @param mode Mapping mode
+		 * @param offset Offset of the column in the file
+		 * @param width Width of a value (bytes)
+		 * @param nrofValues Number of values in the column
+		 */
+		private Column(FileChannel channel, FileChannel.MapMode mode,
+				long offset, int width, int nrofValues) throws IOException {
+			this.width = width;
+			this.chunks = new MappedByteBuffer[
+				(int)(((long)nrofValues + CHUNK_EVENTS - 1) >> CHUNK_SHIFT)];
+			for (int i = 0; i < chunks.length; i++) {
+				long first = (long)i << CHUNK_SHIFT;
+				long length = (long)width *
+					Math.min(CHUNK_EVENTS, nrofValues - first);
+				long start = offset + width * first;
+				if (mode == FileChannel.MapMode.READ_ONLY) {
+					chunks[i] = map(channel, start, length);
+				}
+				else {
+					chunks[i] = channel.map(mode, start, length);
+				}
+			}
+		}
+
+		private MappedByteBuffer chunk(int i) {
+			return chunks[i >>> CHUNK_SHIFT];
+		}
+
+		private int position(int i) {
+			return (i & CHUNK_MASK) * width;
+		}
+
+		private double getDouble(int i) {
+			return chunk(i).getDouble(position(i));
+		}
+
+		private int getInt(int i) {
+			return chunk(i).getInt(position(i));
+		}
+
+		private byte get(int i) {
+			return chunk(i).get(position(i));
+		}
+
+		private void putDouble(int i, double value) {
+			chunk(i).putDouble(position(i), value);
+		}
+
+		private void putInt(int i, int value) {
+			chunk(i).putInt(position(i), value);
+		}
+
+		private void put(int i, byte value) {
+			chunk(i).put(position(i), value);
+		}
+
+		/**
+		 * Writes the changes of the chunks to the file
+		 */
+		private void force() {
+			for (MappedByteBuffer chunk : chunks) {
+				chunk.force();
+			}
+		}
+	}
+}
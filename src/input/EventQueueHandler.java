@@ -48,6 +48,8 @@ public class EventQueueHandler  {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** number of event batches to read ahead -setting id ({@value})*/
+	public static final String PREFETCH_SETTING = "nrofPrefetch";
 
 	private List<EventQueue> queues;
 
@@ -70,8 +72,10 @@ public class EventQueueHandler  {
 					preload = s.getInt(PRELOAD_SETTING);
 				}
 				path = s.getSetting(PATH_SETTING);
+				int prefetch = s.getInt(PREFETCH_SETTING,
+						ExternalEventsQueue.DEFAULT_NROF_PREFETCH);
 
-				queues.add(new ExternalEventsQueue(path, preload));
+				queues.add(new ExternalEventsQueue(path, preload, prefetch));
 			}
 			else if (s.contains(CLASS_SETTING)) { // event generator class
 				String className = CLASS_PACKAGE + "." +
@@ -8,11 +8,14 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import core.DTNSim;
 import core.Settings;
 
 /**
  * Queue of external events. This class also takes care of buffering
- * the events and preloading only a proper amount of them.
+ * the events and preloading only a proper amount of them. The next preload
+ * batches are read in a background thread while the events of the current
+ * batch are processed (see {@link #PREFETCH_SETTING}).
  */
 public class ExternalEventsQueue implements EventQueue {
 	/** ExternalEvents namespace ({@value})*/
@@ -21,34 +24,67 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** number of preload batches to read ahead in a background thread
+	 * -setting id ({@value}). 0 reads the batches only when needed. */
+	public static final String PREFETCH_SETTING = "nrofPrefetch";
 
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
+	/** default number of prefetched preload batches */
+	public static final int DEFAULT_NROF_PREFETCH = 2;
 
 	private File eventsFile;
 	private ExternalEventsReader reader;
+	private BatchPrefetcher<List<ExternalEvent>> prefetcher;
 	private int nextEventIndex;
-	private int nrofPreload;
+	/** preload size; read by the prefetch thread for every batch */
+	private volatile int nrofPreload;
+	private int nrofPrefetch;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
 
+	/** queues whose events haven't been read to the end yet */
+	private static final List<ExternalEventsQueue> openQueues =
+		new ArrayList<ExternalEventsQueue>();
+
+	static {
+		DTNSim.registerForReset(ExternalEventsQueue.class.getCanonicalName());
+	}
+
 	/**
 	 * Creates a new Queue from a file
-	 * @param filePath Path to the file where the events are read from. If
+	 * @param filePath Path to the file where the events are read from.
+	 * Columnar binary files are recognized from their content. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
 	 * the file is assumed to be a binary file.
 	 * @param nrofPreload How many events to preload
+	 * @see ColumnarEventsReader
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
+		this(filePath, nrofPreload, DEFAULT_NROF_PREFETCH);
+	}
+
+	/**
+	 * Creates a new Queue from a file
+	 * @param filePath Path to the file where the events are read from
+	 * @param nrofPreload How many events to preload
+	 * @param nrofPrefetch How many preload batches to read ahead in a
+	 * background thread (0 = read the batches only when needed)
+	 * @see #ExternalEventsQueue(String, int)
+	 */
+	public ExternalEventsQueue(String filePath, int nrofPreload,
+			int nrofPrefetch) {
 		setNrofPreload(nrofPreload);
+		this.nrofPrefetch = nrofPrefetch;
 		init(filePath);
 	}
 
 	/**
-	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
-	 * and {@link #PATH_SETTING}. The path setting supports value filling.
+	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING},
+	 * {@link #PREFETCH_SETTING} and {@link #PATH_SETTING}. The path setting
+	 * supports value filling.
 	 * @param s The settings
 	 */
 	public ExternalEventsQueue(Settings s) {
@@ -58,12 +94,15 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		this.nrofPrefetch = s.getInt(PREFETCH_SETTING, DEFAULT_NROF_PREFETCH);
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
 
 	/**
-	 * Sets maximum number of events that are read when the next preload occurs
+	 * Sets maximum number of events that are read when the next preload occurs.
+	 * The batches that have already been read ahead (see
+	 * {@link #PREFETCH_SETTING}) keep their old size.
 	 * @param nrof Maximum number of events to read. If less than 1, default
 	 * value ( {@value DEFAULT_NROF_PRELOAD} ) is used.
 	 */
@@ -77,14 +116,31 @@ public class ExternalEventsQueue implements EventQueue {
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (ColumnarEventsReader.isColumnarEeFile(eventsFile)) {
+			this.reader = new ColumnarEventsReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
 
-		this.queue = readEvents(nrofPreload);
+		final ExternalEventsReader eventsReader = this.reader;
+		this.prefetcher = new BatchPrefetcher<List<ExternalEvent>>(
+				new BatchPrefetcher.Source<List<ExternalEvent>>() {
+			public List<ExternalEvent> read() {
+				List<ExternalEvent> events = eventsReader.readEvents(
+						nrofPreload);
+				if (events.size() == 0) {
+					return null;
+				}
+				return events;
+			}
+		}, nrofPrefetch, "ExternalEvents " + eventsFile.getName());
+		openQueues.add(this);
+
+		this.queue = readEvents();
 		this.nextEventIndex = 0;
 	}
 
@@ -117,7 +173,7 @@ public class ExternalEventsQueue implements EventQueue {
 		nextEventIndex++;
 
 		if (nextEventIndex >= queue.size()) { // ran out of events
-			queue = readEvents(nrofPreload);
+			queue = readEvents();
 			nextEventIndex = 0;
 		}
 
@@ -140,24 +196,46 @@ public class ExternalEventsQueue implements EventQueue {
 
 
 	/**
-	 * Read some events from the external events reader
-	 * @param nrof Maximum number of events to read
+	 * Returns the next batch of (at most preload amount of) events from the
+	 * external events reader
 	 * @return A List of events that were read or an empty  list if no events
 	 * could be read
 	 */
-	private List<ExternalEvent> readEvents(int nrof) {
+	private List<ExternalEvent> readEvents() {
 		if (allEventsRead) {
 			return new ArrayList<ExternalEvent>(0);
 		}
 
-		List<ExternalEvent> events = reader.readEvents(nrof);
+		List<ExternalEvent> events = prefetcher.next();
 
-		if (nrof > 0 && events.size() == 0) {
-			reader.close();
-			allEventsRead = true;
+		if (events == null) {
+			close();
+			return new ArrayList<ExternalEvent>(0);
 		}
 
 		return events;
 	}
 
+	/**
+	 * Stops reading events and closes the events file. Called when all the
+	 * events have been read and, for the queues that are still open, when
+	 * the simulation is reset for the next batch run.
+	 */
+	public void close() {
+		allEventsRead = true;
+		prefetcher.close();
+		reader.close();
+		openQueues.remove(this);
+	}
+
+	/**
+	 * Closes all the queues that are still open
+	 */
+	public static void reset() {
+		for (ExternalEventsQueue eeq :
+				new ArrayList<ExternalEventsQueue>(openQueues)) {
+			eeq.close();
+		}
+	}
+
 }
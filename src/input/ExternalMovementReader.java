@@ -6,9 +6,9 @@ package input;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 import util.Tuple;
 
@@ -39,9 +39,8 @@ import core.SettingsError;
 public class ExternalMovementReader {
 	/* Prefix for comment lines (lines starting with this are ignored) */
 	public static final String COMMENT_PREFIX = "#";
-	private Scanner scanner;
+	private LineTokenizer tokenizer;
 	private double lastTimeStamp = -1;
-	private String lastLine;
 	private double minTime;
 	private double maxTime;
 	private double minX;
@@ -50,6 +49,13 @@ public class ExternalMovementReader {
 	private double maxY;
 	private boolean normalize;
 
+	/** true if the next (read ahead, not normalized) tuple is available */
+	private boolean hasNext;
+	private double nextTime;
+	private String nextId;
+	private double nextX;
+	private double nextY;
+
 
 	/**
 	 * Constructor. Creates a new reader that reads the data from a file.
@@ -60,33 +66,30 @@ public class ExternalMovementReader {
 		this.normalize = true;
 		File inFile = new File(inFilePath);
 		try {
-			scanner = new Scanner(inFile);
+			tokenizer = new LineTokenizer(inFile);
 		} catch (FileNotFoundException e) {
 			throw new SettingsError("Couldn't find external movement input " +
 					"file " + inFile);
 		}
 
-		String offsets = scanner.nextLine();
-		Scanner lineScan = null;
+		if (!nextLine()) {
+			throw new SettingsError("No offset line in external movement " +
+					"input file " + inFile);
+		}
 
 		try {
-			lineScan = new Scanner(offsets);
-			minTime = lineScan.nextDouble();
-			maxTime = lineScan.nextDouble();
-			minX = lineScan.nextDouble();
-			maxX = lineScan.nextDouble();
-			minY = lineScan.nextDouble();
-			maxY = lineScan.nextDouble();
+			minTime = tokenizer.nextDouble();
+			maxTime = tokenizer.nextDouble();
+			minX = tokenizer.nextDouble();
+			maxX = tokenizer.nextDouble();
+			minY = tokenizer.nextDouble();
+			maxY = tokenizer.nextDouble();
 		} catch (Exception e) {
-			throw new SettingsError("Invalid offset line '" + offsets + "'");
-		}
-		finally {
-			if (lineScan != null) {
-				lineScan.close();
-			}
+			throw new SettingsError("Invalid offset line '" +
+					tokenizer.getLine() + "'");
 		}
 
-		lastLine = scanner.nextLine();
+		readNext();
 	}
 
 	/**
@@ -108,60 +111,71 @@ public class ExternalMovementReader {
 		ArrayList<Tuple<String, Coord>> moves =
 			new ArrayList<Tuple<String, Coord>>();
 
-		if (!scanner.hasNextLine()) {
+		if (!hasNext) {
 			return moves;
 		}
 
-		Scanner lineScan = new Scanner(lastLine);
-		double time = lineScan.nextDouble();
-		String id = lineScan.next();
-		double x = lineScan.nextDouble();
-		double y = lineScan.nextDouble();
+		double offsetTime = normalize ? minTime : 0;
+		double offsetX = normalize ? minX : 0;
+		double offsetY = normalize ? minY : 0;
 
-		if (normalize) {
-			time -= minTime;
-			x -= minX;
-			y -= minY;
+		lastTimeStamp = nextTime - offsetTime;
+		while (hasNext && nextTime - offsetTime == lastTimeStamp) {
+			moves.add(new Tuple<String, Coord>(nextId,
+					new Coord(nextX - offsetX, nextY - offsetY)));
+			readNext();
 		}
 
-		lastTimeStamp = time;
-
-		while (scanner.hasNextLine() && lastTimeStamp == time) {
-			lastLine = scanner.nextLine();
+		return moves;
+	}
 
-			if (lastLine.trim().length() == 0 ||
-					lastLine.startsWith(COMMENT_PREFIX)) {
+	/**
+	 * Reads the next tuple of the file (skipping empty and comment lines)
+	 * @throws SettingsError if an invalid line was read
+	 */
+	private void readNext() {
+		hasNext = false;
+		while (nextLine()) {
+			if (tokenizer.isBlankLine() ||
+					tokenizer.lineStartsWith(COMMENT_PREFIX.charAt(0))) {
 				continue; /* skip empty and comment lines */
 			}
 
-			// add previous line's tuple
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
-
-			lineScan = new Scanner(lastLine);
-
 			try {
-				time = lineScan.nextDouble();
-				id = lineScan.next();
-				x = lineScan.nextDouble();
-				y = lineScan.nextDouble();
+				nextTime = tokenizer.nextDouble();
+				nextId = tokenizer.next();
+				nextX = tokenizer.nextDouble();
+				nextY = tokenizer.nextDouble();
 			} catch (Exception e) {
-				throw new SettingsError("Invalid line '" + lastLine + "'");
-			} finally {
-				lineScan.close();
-			}
-
-			if (normalize) {
-				time -= minTime;
-				x -= minX;
-				y -= minY;
+				throw new SettingsError("Invalid line '" +
+						tokenizer.getLine() + "'");
 			}
+			hasNext = true;
+			return;
 		}
+		tokenizer.close();
+	}
 
-		if (!scanner.hasNextLine()) {	// add the last tuple of the file
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
+	/**
+	 * Moves the tokenizer to the next line of the file
+	 * @return True if there was a next line
+	 * @throws SettingsError if reading the file failed
+	 */
+	private boolean nextLine() {
+		try {
+			return tokenizer.nextLine();
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external movement input " +
+					"file: " + e.getMessage());
 		}
+	}
 
-		return moves;
+	/**
+	 * Closes the input file. No more movements are read after this.
+	 */
+	public void close() {
+		hasNext = false;
+		tokenizer.close();
 	}
 
 	/**
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <P>Tokenizer for line based text input files (e.g., external events and
+ * movement traces). The file is read through a channel to a large buffer and
+ * the lines are split to whitespace separated tokens straight from the
+ * bytes, so reading and parsing don't create objects per line or per
+ * token. Numbers are parsed without creating strings and string tokens are
+ * returned from a cache when the same token has been seen recently.</P>
+ *
+ * <P>Usage: {@link #nextLine()} moves to the next line, after which the
+ * tokens of the line are read with the <CODE>next...</CODE> methods. The
+ * methods throw a {@link NoSuchElementException} if the line has no more
+ * tokens and a {@link NumberFormatException} if the token is not of the
+ * requested type.</P>
+ */
+public class LineTokenizer {
+	/** initial size of the read buffer */
+	private static final int BUFFER_SIZE = 1 << 20;
+	/** number of entries in the string cache (power of two) */
+	private static final int CACHE_SIZE = 4096;
+	/** largest mantissa that is parsed exactly with the fast path */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	/** exactly representable powers of ten */
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+		1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+		1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private FileChannel channel;
+	private byte[] buffer;
+	/** end of the valid data in the buffer */
+	private int limit;
+	/** true if the whole file has been read to the buffer */
+	private boolean endOfFile;
+	/** start of the current line */
+	private int lineStart;
+	/** end of the current line (excluding the line terminator) */
+	private int lineEnd;
+	/** start of the next line */
+	private int nextLineStart;
+	/** position of the next token on the current line */
+	private int position;
+
+	/** bytes of the cached strings */
+	private byte[][] cacheKeys;
+	private String[] cacheValues;
+
+	/**
+	 * Creates a tokenizer for a file
+	 * @param file The file to read
+	 * @throws FileNotFoundException if the file can't be opened
+	 */
+	public LineTokenizer(File file) throws FileNotFoundException {
+		this.channel = new FileInputStream(file).getChannel();
+		this.buffer = new byte[BUFFER_SIZE];
+		this.limit = 0;
+		this.endOfFile = false;
+		this.lineStart = this.lineEnd = this.nextLineStart = 0;
+		this.position = 0;
+		this.cacheKeys = new byte[CACHE_SIZE][];
+		this.cacheValues = new String[CACHE_SIZE];
+	}
+
+	/**
+	 * Moves to the next line of the file
+	 * @return True if there was a next line, false if the end of the file
+	 * was reached
+	 * @throws IOException if reading the file failed
+	 */
+	public boolean nextLine() throws IOException {
+		int start = nextLineStart;
+		int i = start;
+		while (true) {
+			while (i < limit && buffer[i] != '\n') {
+				i++;
+			}
+			if (i < limit || endOfFile) {
+				break;
+			}
+			/* the line continues past the read data -> read more */
+			int shift = start;
+			fill(start);
+			start -= shift;
+			i -= shift;
+		}
+
+		if (start == limit) {
+			lineStart = lineEnd = position = nextLineStart = limit;
+			return false; // end of file
+		}
+
+		lineStart = position = start;
+		nextLineStart = (i < limit ? i + 1 : i);
+		if (i > start && buffer[i - 1] == '\r') {
+			i--;
+		}
+		lineEnd = i;
+		return true;
+	}
+
+	/**
+	 * Moves the data from the given position to the start of the buffer and
+	 * reads more data after it
+	 */
+	private void fill(int from) throws IOException {
+		int remaining = limit - from;
+		if (remaining == buffer.length) {
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length); // long line
+		} else {
+			System.arraycopy(buffer, from, buffer, 0, remaining);
+		}
+		limit = remaining;
+
+		ByteBuffer bb = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+		int read = channel.read(bb);
+		while (read == 0) {
+			read = channel.read(bb);
+		}
+		if (read < 0) {
+			endOfFile = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	/**
+	 * Returns true if the current line has only whitespace
+	 * @return True for an empty line
+	 */
+	public boolean isBlankLine() {
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (!isSpace(buffer[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the current line starts with the given character
+	 * (e.g., a comment prefix)
+	 * @param c The character
+	 * @return True if the first character of the line is c
+	 */
+	public boolean lineStartsWith(char c) {
+		return lineStart < lineEnd && buffer[lineStart] == c;
+	}
+
+	/**
+	 * Returns the current line as a String (e.g., for error messages)
+	 * @return The current line
+	 */
+	public String getLine() {
+		return new String(buffer, lineStart, lineEnd - lineStart, UTF8);
+	}
+
+	/**
+	 * Returns true if the current line has more tokens
+	 * @return True if there is a next token
+	 */
+	public boolean hasNext() {
+		while (position < lineEnd && isSpace(buffer[position])) {
+			position++;
+		}
+		return position < lineEnd;
+	}
+
+	/**
+	 * Returns true if the next token of the line is an integer (that fits
+	 * in an int)
+	 * @return True if the next token can be read with {@link #nextInt()}
+	 */
+	public boolean hasNextInt() {
+		if (!hasNext()) {
+			return false;
+		}
+		int end = tokenEnd();
+		int i = position;
+		boolean negative = (buffer[i] == '-');
+		if (negative || buffer[i] == '+') {
+			i++;
+		}
+		if (i == end) {
+			return false;
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int d = buffer[i] - '0';
+			if (d < 0 || d > 9) {
+				return false;
+			}
+			value = 10 * value + d;
+			if (value > (long)Integer.MAX_VALUE + 1) {
+				return false;
+			}
+		}
+		return negative || value <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the next token of the line as a String
+	 * @return The token
+	 */
+	public String next() {
+		int start = startToken();
+		int end = tokenEnd();
+		position = end;
+		return toString(start, end);
+	}
+
+	/**
+	 * Returns the next token of the line as an int
+	 * @return The value
+	 */
+	public int nextInt() {
+		if (!hasNextInt()) {
+			throw new NumberFormatException("Not an integer: '" +
+					peekToken() + "'");
+		}
+		int end = tokenEnd();
+		boolean negative = (buffer[position] == '-');
+		if (negative || buffer[position] == '+') {
+			position++;
+		}
+		long value = 0;
+		for (; position < end; position++) {
+			value = 10 * value + (buffer[position] - '0');
+		}
+		return (int)(negative ? -value : value);
+	}
+
+	/**
+	 * Returns the next token of the line as a double
+	 * @return The value
+	 */
+	public double nextDouble() {
+		int start = startToken();
+		int end = tokenEnd();
+		int i = start;
+		boolean negative = (buffer[i] == '-');
+		if (negative || buffer[i] == '+') {
+			i++;
+		}
+
+		long mantissa = 0;
+		int scale = 0;
+		int digits = 0;
+		boolean exact = true;
+		boolean fraction = false;
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b >= '0' && b <= '9') {
+				digits++;
+				if (mantissa >= (MAX_EXACT_MANTISSA - 9) / 10) {
+					exact = false; // too many digits for the fast path
+					break;
+				}
+				mantissa = 10 * mantissa + (b - '0');
+				if (fraction) {
+					scale--;
+				}
+			}
+			else if (b == '.' && !fraction) {
+				fraction = true;
+			}
+			else if ((b == 'e' || b == 'E') && digits > 0 && i + 1 < end) {
+				int exponent = 0;
+				int j = i + 1;
+				boolean negExp = (buffer[j] == '-');
+				if (negExp || buffer[j] == '+') {
+					j++;
+				}
+				if (j == end) {
+					exact = false;
+				}
+				for (; j < end && exact; j++) {
+					int d = buffer[j] - '0';
+					if (d < 0 || d > 9 || exponent > 1000) {
+						exact = false;
+					}
+					exponent = 10 * exponent + d;
+				}
+				scale += (negExp ? -exponent : exponent);
+				i = end;
+				break;
+			}
+			else {
+				exact = false;
+				break;
+			}
+		}
+
+		if (exact && digits > 0 && scale >= -22 && scale <= 22) {
+			position = end;
+			double value = mantissa;
+			if (scale < 0) {
+				value /= POWERS_OF_TEN[-scale];
+			} else {
+				value *= POWERS_OF_TEN[scale];
+			}
+			return (negative ? -value : value);
+		}
+
+		/* not a plain decimal number -> use the library */
+		double value = Double.parseDouble(new String(buffer, start,
+				end - start, UTF8));
+		position = end;
+		return value;
+	}
+
+	/**
+	 * Returns the address part of the next token (the number after an
+	 * optional non-numeric prefix, e.g., 12 for "p12").
+	 * @return The address
+	 * @throws NumberFormatException if the token doesn't end with a number
+	 * or has digits before the non-numeric part
+	 */
+	public int nextAddress() {
+		int start = startToken();
+		int end = tokenEnd();
+		int i = start;
+		while (i < end && (buffer[i] < '0' || buffer[i] > '9')) {
+			i++;
+		}
+		if (i == end) {
+			throw new NumberFormatException("Invalid host ID '" +
+					toString(start, end) + "'");
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int d = buffer[i] - '0';
+			if (d < 0 || d > 9) {
+				throw new NumberFormatException("Invalid host ID '" +
+						toString(start, end) + "'");
+			}
+			value = 10 * value + d;
+			if (value > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Too big address in host " +
+						"ID '" + toString(start, end) + "'");
+			}
+		}
+		position = end;
+		return (int)value;
+	}
+
+	/**
+	 * Closes the file
+	 */
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Skips to the start of the next token
+	 * @return The start of the token
+	 * @throws NoSuchElementException if the line has no more tokens
+	 */
+	private int startToken() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("No more tokens on line '" +
+					getLine() + "'");
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the end of the token that starts at the current position
+	 */
+	private int tokenEnd() {
+		int i = position;
+		while (i < lineEnd && !isSpace(buffer[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the next token without consuming it
+	 */
+	private String peekToken() {
+		return hasNext() ? new String(buffer, position, tokenEnd() - position,
+				UTF8) : "";
+	}
+
+	/**
+	 * Returns a String of the bytes, from the cache if the same bytes have
+	 * been converted recently
+	 */
+	private String toString(int start, int end) {
+		int hash = 0x811C9DC5;
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ buffer[i]) * 0x01000193;
+		}
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+
+		byte[] key = cacheKeys[slot];
+		if (key != null && key.length == end - start) {
+			int i = 0;
+			while (i < key.length && key[i] == buffer[start + i]) {
+				i++;
+			}
+			if (i == key.length) {
+				return cacheValues[slot];
+			}
+		}
+
+		String s = new String(buffer, start, end - start, UTF8);
+		cacheKeys[slot] = Arrays.copyOfRange(buffer, start, end);
+		cacheValues[slot] = s;
+		return s;
+	}
+
+	/**
+	 * Returns true for the whitespace characters that separate tokens
+	 */
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+	}
+}
@@ -4,17 +4,12 @@
  */
 package input;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.lang.Integer;
 import java.lang.NumberFormatException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import core.SimError;
 
@@ -66,13 +61,11 @@ public class StandardEventsReader implements ExternalEventsReader {
 	/** Message identifier to use to refer to all messages ({@value}) */
 	public static final String ALL_MESSAGES_ID = "*";
 
-	//private Scanner scanner;
-	private BufferedReader reader;
+	private LineTokenizer tokenizer;
 
 	public StandardEventsReader(File eventsFile){
 		try {
-			//this.scanner = new Scanner(eventsFile);
-			this.reader = new BufferedReader(new FileReader(eventsFile));
+			this.tokenizer = new LineTokenizer(eventsFile);
 		} catch (FileNotFoundException e) {
 			throw new SimError(e.getMessage(),e);
 		}
@@ -82,29 +75,13 @@ public class StandardEventsReader implements ExternalEventsReader {
 	public List<ExternalEvent> readEvents(int nrof) {
 		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
 		int eventsRead = 0;
-		// skip empty and comment lines
-		Pattern skipPattern = Pattern.compile("(#.*)|(^\\s*$)");
+		LineTokenizer t = this.tokenizer;
 
-		String line;
-		try {
-			line = this.reader.readLine();
-		} catch (IOException e1) {
-			throw new SimError("Reading from external event file failed.");
-		}
-		while (eventsRead < nrof && line != null) {
-			Scanner lineScan = new Scanner(line);
-			if (skipPattern.matcher(line).matches()) {
-				// skip empty and comment lines
-				try {
-					line = this.reader.readLine();
-				} catch (IOException e) {
-					lineScan.close();
-					throw new SimError("Reading from external event file " +
-							"failed.");
-				}
-				continue;
+		while (eventsRead < nrof && nextLine()) {
+			if (t.isBlankLine() || t.lineStartsWith('#')) {
+				continue; // skip empty and comment lines
 			}
-			
+
 			double time;
 			String action;
 			String msgId;
@@ -112,31 +89,31 @@ public class StandardEventsReader implements ExternalEventsReader {
 			int host2Addr;
 
 			try {
-				time = lineScan.nextDouble();
-				action = lineScan.next();
+				time = t.nextDouble();
+				action = t.next();
 
 				if (action.equals(DROP)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
+					msgId = t.next();
+					hostAddr = t.nextAddress();
 					events.add(new MessageDeleteEvent(hostAddr, msgId,
 							time, true));
 				}
 				else if (action.equals(REMOVE)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
+					msgId = t.next();
+					hostAddr = t.nextAddress();
 					events.add(new MessageDeleteEvent(hostAddr, msgId,
 							time, false));
 				}
 				else if (action.equals(CONNECTION)) {
 					String connEventType;
 					boolean isUp;
-					hostAddr = getHostAddress(lineScan.next());
-					host2Addr = getHostAddress(lineScan.next());
-					connEventType = lineScan.next();
+					hostAddr = t.nextAddress();
+					host2Addr = t.nextAddress();
+					connEventType = t.next();
 
 					String interfaceId = null;
-					if (lineScan.hasNext()) {
-						interfaceId = lineScan.next();
+					if (t.hasNext()) {
+						interfaceId = t.next();
 					}
 
 					if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
@@ -156,29 +133,29 @@ public class StandardEventsReader implements ExternalEventsReader {
 					events.add(ce);
 				}
 				else {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
+					msgId = t.next();
+					hostAddr = t.nextAddress();
 
-					host2Addr = getHostAddress(lineScan.next());
+					host2Addr = t.nextAddress();
 
 					if (action.equals(CREATE)){
 						int size = 0;
 
-						if (lineScan.hasNextInt()){
-							size = lineScan.nextInt();
+						if (t.hasNextInt()){
+							size = t.nextInt();
 						}
-						else if (lineScan.hasNext()){
-							size = convertToInteger(lineScan.next());
+						else if (t.hasNext()){
+							size = convertToInteger(t.next());
 						}else{
 							throw new Exception("Invalid number of columns for CREATE event");
 						}
 
 						int respSize = 0;
-						if (lineScan.hasNextInt()) {
-							respSize = lineScan.nextInt();
+						if (t.hasNextInt()) {
+							respSize = t.nextInt();
 						}
-						else if(lineScan.hasNext()) {
-							respSize = convertToInteger(lineScan.next());
+						else if(t.hasNext()) {
+							respSize = convertToInteger(t.next());
 						}
 						events.add(new MessageCreateEvent(hostAddr, host2Addr,
 								msgId, size, respSize, time));
@@ -202,21 +179,11 @@ public class StandardEventsReader implements ExternalEventsReader {
 								msgId, time, stage));
 					}
 				}
-				// discard the newline in the end
-				if (lineScan.hasNextLine()) {
-					lineScan.nextLine(); // TODO: test
-				}
 				eventsRead++;
-				if (eventsRead < nrof) {
-					line = this.reader.readLine();
-				}
 			} catch (Exception e) {
 				e.printStackTrace();
 				throw new SimError("Can't parse external event " +
-						(eventsRead+1) + " from '" + line + "'", e);
-			}
-			finally {
-				lineScan.close();
+						(eventsRead+1) + " from '" + t.getLine() + "'", e);
 			}
 		}
 
@@ -224,32 +191,20 @@ public class StandardEventsReader implements ExternalEventsReader {
 	}
 
 	/**
-	 * Parses a host address from a hostId string (the numeric part after
-	 * optional non-numeric part).
-	 * @param hostId The id to parse the address from
-	 * @return The address
-	 * @throws SimError if no address could be parsed from the id
+	 * Moves the tokenizer to the next line of the file
+	 * @return True if there was a next line
+	 * @throws SimError if reading the file failed
 	 */
-	private int getHostAddress(String hostId) {
-		String addressPart = "";
-		if (hostId.matches("^\\d+$")) {
-			addressPart = hostId; // host id is only the address
-		}
-		else if (hostId.matches("^\\D+\\d+$")) {
-			String [] parts = hostId.split("\\D");
-			addressPart = parts[parts.length-1]; // last occurence is the addr
-		}
-		else {
-			throw new SimError("Invalid host ID '" + hostId + "'");
+	private boolean nextLine() {
+		try {
+			return this.tokenizer.nextLine();
+		} catch (IOException e) {
+			throw new SimError("Reading from external event file failed.", e);
 		}
-
-		return Integer.parseInt(addressPart);
 	}
 
 	public void close() {
-		try {
-			this.reader.close();
-		} catch (IOException e) {}
+		this.tokenizer.close();
 	}
 
 	private int convertToInteger(String str){
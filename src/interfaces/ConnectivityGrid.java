@@ -221,6 +221,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		return this.cells[row][col];
 	}
 
+	/**
+	 * Returns the cell size: everything within one cell's distance is in
+	 * the neighboring cells
+	 * @return The coverage range
+	 */
+	@Override
+	public double getCoverageRange() {
+		return this.cellSize;
+	}
+
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
@@ -251,6 +261,114 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 
+	/**
+	 * Calls the visitor for all interfaces in the neighboring grid cells of
+	 * the given interface. The cells' interface lists are iterated in place
+	 * so no objects are created.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for each near interface
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		if (!ginterfaces.containsKey(ni)) {
+			return;
+		}
+
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+
+		for (int i=row-1; i <= row+1; i++) {
+			GridCell[] cellRow = this.cells[i];
+			for (int j=col-1; j <= col+1; j++) {
+				ArrayList<NetworkInterface> list = cellRow[j].interfaces;
+				for (int k=0, n = list.size(); k < n; k++) {
+					visitor.visit(list.get(k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls the visitor for the interfaces in the neighboring grid cells of
+	 * the given interface as they will be after the interface has been
+	 * moved to the cell of its current location (the move appends the
+	 * interface to the new cell's interfaces).
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for each near interface
+	 * @return True (the grid supports the ahead visits)
+	 */
+	@Override
+	public boolean visitNearInterfacesAhead(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		GridCell oldCell = ginterfaces.get(ni);
+		if (oldCell == null) {
+			return true;
+		}
+
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		GridCell newCell = this.cells[row][col];
+
+		for (int i=row-1; i <= row+1; i++) {
+			GridCell[] cellRow = this.cells[i];
+			for (int j=col-1; j <= col+1; j++) {
+				GridCell cell = cellRow[j];
+				ArrayList<NetworkInterface> list = cell.interfaces;
+				for (int k=0, n = list.size(); k < n; k++) {
+					NetworkInterface other = list.get(k);
+					if (other != ni || cell == newCell) {
+						visitor.visit(other);
+					}
+				}
+				if (cell == newCell && oldCell != newCell) {
+					visitor.visit(ni);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the sum of the modification counts of the neighboring grid
+	 * cells of the interface (including the interface's own move to the
+	 * cell of its current location)
+	 * @param ni The interface whose query's stamp is returned
+	 * @return The stamp of the query
+	 */
+	@Override
+	public long getQueryStamp(NetworkInterface ni) {
+		GridCell oldCell = ginterfaces.get(ni);
+		if (oldCell == null) {
+			return 0;
+		}
+
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		GridCell newCell = this.cells[row][col];
+
+		long stamp = 0;
+		for (int i=row-1; i <= row+1; i++) {
+			GridCell[] cellRow = this.cells[i];
+			for (int j=col-1; j <= col+1; j++) {
+				stamp += cellRow[j].modCount;
+				if (cellRow[j] == oldCell && oldCell != newCell) {
+					stamp++; /* the interface will be removed from it */
+				}
+			}
+		}
+		if (oldCell != newCell) {
+			stamp++; /* the interface will be added to the new cell */
+		}
+		return stamp;
+	}
+
 	/**
 	 * Returns a string representation of the ConnectivityCells object
 	 * @return a string representation of the ConnectivityCells object
@@ -268,6 +386,9 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		/** how many times interfaces have been added to or removed from
+		 * this cell */
+		private int modCount;
 
 		private GridCell() {
 			this.interfaces = new ArrayList<NetworkInterface>(
@@ -288,6 +409,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		 */
 		public void addInterface(NetworkInterface ni) {
 			this.interfaces.add(ni);
+			this.modCount++;
 		}
 
 		/**
@@ -296,6 +418,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		 */
 		public void removeInterface(NetworkInterface ni) {
 			this.interfaces.remove(ni);
+			this.modCount++;
 		}
 
 		/**
@@ -306,6 +429,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		public void moveInterface(NetworkInterface ni, GridCell to) {
 			to.addInterface(ni);
 			boolean removeOk = this.interfaces.remove(ni);
+			this.modCount++;
 			assert removeOk : "interface " + ni +
 				" not found from cell with " + interfaces.toString();
 		}
@@ -5,14 +5,88 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.HashMap;
 
+import core.DTNSim;
 import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.World;
 
 /**
  * A superclass for schemes for optimizing the location of possible contacts
  * with network interfaces of a specific range
  */
 abstract public class ConnectivityOptimizer {
+	/**
+	 * Connectivity optimizer type -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Valid values are
+	 * the class names of the optimizers: {@link ConnectivityGrid},
+	 * {@link PairSweepGrid}, {@link SparseHashGrid}, {@link SortAndSweep}
+	 * and {@link KdTree}. Default value is {@link #DEF_OPTIMIZER}.
+	 */
+	public static final String OPTIMIZER_S = "connectivityOptimizer";
+	/** default value for the optimizer type ({@value}) */
+	public static final String DEF_OPTIMIZER = "ConnectivityGrid";
+
+	private static String optimizerType;
+	/** optimizers (other than ConnectivityGrids) by their keys */
+	private static HashMap<Integer, ConnectivityOptimizer> optimizers;
+
+	static {
+		DTNSim.registerForReset(ConnectivityOptimizer.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		optimizers = new HashMap<Integer, ConnectivityOptimizer>();
+
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		optimizerType = s.getSetting(OPTIMIZER_S, DEF_OPTIMIZER);
+
+		if (!optimizerType.equals(ConnectivityGrid.class.getSimpleName()) &&
+			!optimizerType.equals(PairSweepGrid.class.getSimpleName()) &&
+			!optimizerType.equals(SparseHashGrid.class.getSimpleName()) &&
+			!optimizerType.equals(SortAndSweep.class.getSimpleName()) &&
+			!optimizerType.equals(KdTree.class.getSimpleName())) {
+			throw new SettingsError("Unknown connectivity optimizer \"" +
+					optimizerType + "\" for " +
+					World.OPTIMIZATION_SETTINGS_NS + "." + OPTIMIZER_S);
+		}
+	}
+
+	/**
+	 * Returns the connectivity optimizer of the configured type (see
+	 * {@link #OPTIMIZER_S}) for a specific interface type
+	 * @param key A hash value that separates different interfaces from each
+	 *  other
+	 * @param maxRange Maximum range used by the radio technology using the
+	 *  optimizer
+	 * @return The connectivity optimizer object for the interface type
+	 */
+	public static ConnectivityOptimizer getOptimizer(int key,
+			double maxRange) {
+		if (optimizerType.equals(ConnectivityGrid.class.getSimpleName())) {
+			return ConnectivityGrid.ConnectivityGridFactory(key, maxRange);
+		}
+
+		ConnectivityOptimizer optimizer = optimizers.get(key);
+		if (optimizer == null) {
+			if (optimizerType.equals(PairSweepGrid.class.getSimpleName())) {
+				optimizer = new PairSweepGrid(maxRange);
+			} else if (optimizerType.equals(
+					SparseHashGrid.class.getSimpleName())) {
+				optimizer = new SparseHashGrid(maxRange);
+			} else if (optimizerType.equals(
+					SortAndSweep.class.getSimpleName())) {
+				optimizer = new SortAndSweep(maxRange);
+			} else {
+				optimizer = new KdTree(maxRange);
+			}
+			optimizers.put(key, optimizer);
+		}
+		return optimizer;
+	}
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -40,9 +114,125 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface. The interfaces
+	 * are visited in the same order as {@link #getNearInterfaces(
+	 * NetworkInterface)} would return them. Subclasses should override this
+	 * to visit the interfaces in place without creating new collections.
+	 * The visitor must not add or move interfaces in the optimizer.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for each interface within proximity
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		for (NetworkInterface other : getNearInterfaces(ni)) {
+			visitor.visit(other);
+		}
+	}
+
+	/**
+	 * Returns the coverage range of the near interface queries: all
+	 * interfaces that are at most this far from the queried interface are
+	 * always visited by {@link #visitNearInterfaces(NetworkInterface,
+	 * NearInterfaceVisitor)} (given that the locations of the interfaces are
+	 * up to date). The default implementation returns 0, i.e., no interfaces
+	 * beyond the transmit ranges are guaranteed to be found.
+	 * @return The coverage range
+	 */
+	public double getCoverageRange() {
+		return 0;
+	}
+
+	/**
+	 * Prepares the optimizer for a round of near interface queries, i.e.,
+	 * for the host updates of an update round. The locations of the
+	 * interfaces don't change during the round. The default implementation
+	 * does nothing.
+	 */
+	public void prepareQueries() {
+		/* nothing to prepare */
+	}
+
+	/**
+	 * Calls the visitor for the interfaces that {@link #visitNearInterfaces(
+	 * NetworkInterface, NearInterfaceVisitor)} will visit for the given
+	 * interface, in the same order, once the interface's location has been
+	 * updated with {@link #updateLocation(NetworkInterface)} (and provided
+	 * that the query stamp (see {@link #getQueryStamp(NetworkInterface)})
+	 * hasn't changed in between). Doesn't modify the optimizer, so this
+	 * can be called for many interfaces concurrently as long as no
+	 * interfaces are added or moved meanwhile. The default implementation
+	 * doesn't support the ahead visits.
+	 * @param ni The interface whose near interfaces are visited
+	 * @param visitor The visitor to call for each near interface
+	 * @return True if the interfaces were visited, false if the optimizer
+	 * can't visit them ahead
+	 */
+	public boolean visitNearInterfacesAhead(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		return false;
+	}
+
+	/**
+	 * Returns a stamp of the optimizer state that the near interface query
+	 * of the given interface depends on. The stamp is computed for the
+	 * state after the interface's location has been updated with
+	 * {@link #updateLocation(NetworkInterface)}, so it doesn't change when
+	 * the update is made. If the stamp is the same when the interfaces are
+	 * visited ahead (see {@link #visitNearInterfacesAhead(NetworkInterface,
+	 * NearInterfaceVisitor)}) and when the actual query is made, the query
+	 * visits the same interfaces in the same order. Only optimizers that
+	 * support the ahead visits need to implement this.
+	 * @param ni The interface whose query's stamp is returned
+	 * @return The stamp of the query
+	 */
+	public long getQueryStamp(NetworkInterface ni) {
+		return 0;
+	}
+
+	/**
+	 * Prepares all optimizers for a round of near interface queries (see
+	 * {@link #prepareQueries()})
+	 */
+	public static void prepareAllQueries() {
+		for (ConnectivityOptimizer o : optimizers.values()) {
+			o.prepareQueries();
+		}
+		for (ConnectivityOptimizer o : ConnectivityGrid.gridobjects.values()) {
+			o.prepareQueries();
+		}
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Callback interface for {@link ConnectivityOptimizer#visitNearInterfaces(
+	 * NetworkInterface, NearInterfaceVisitor)}
+	 */
+	public interface NearInterfaceVisitor {
+		/**
+		 * Called for every interface that is near the queried interface
+		 * @param ni The near interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
+
+	/**
+	 * Near interface visitor that can also be given the distance between
+	 * the interfaces when the optimizer already knows it
+	 */
+	public interface NearDistanceVisitor extends NearInterfaceVisitor {
+		/**
+		 * Called instead of {@link #visit(NetworkInterface)} when the
+		 * distance between the current locations of the interfaces is known
+		 * @param ni The near interface
+		 * @param distance Distance between the queried and the near interface
+		 */
+		public void visit(NetworkInterface ni, double distance);
+	}
 }
@@ -4,7 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -95,15 +94,11 @@ public class DistanceCapacityInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		connectToNearInterfaces();
 
 		/* update all connections */
-		for (Connection con : getConnections()) {
-			con.update();
+		for (int i=0, n = this.connections.size(); i < n; i++) {
+			this.connections.get(i).update();
 		}
 	}
 
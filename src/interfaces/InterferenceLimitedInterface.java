@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -98,16 +96,14 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces)
-			connect(i);
+		connectToNearInterfaces();
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
 		numberOfTransmissions = 0;
 		int numberOfActive = 1;
-		for (Connection con : this.connections) {
+		for (int i=0, n = this.connections.size(); i < n; i++) {
+			Connection con = this.connections.get(i);
 			if (con.getMessage() != null) {
 				numberOfTransmissions++;
 			}
@@ -128,8 +124,8 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 						Math.log(1.0*numberOfActive))) /
 							ntrans );
 
-		for (Connection con : getConnections()) {
-			con.update();
+		for (int i=0, n = this.connections.size(); i < n; i++) {
+			this.connections.get(i).update();
 		}
 	}
 
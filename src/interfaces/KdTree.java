@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+/**
+ * <P>
+ * Connectivity optimizer that finds the interface pairs within the maximum
+ * range using a 2-dimensional k-d tree. The tree is rebuilt (in place, into
+ * an index array) at every sweep and then every interface makes a range
+ * query to it. A pair is stored only by the query of its lower indexed
+ * interface, so each pair is reported once.
+ * </P>
+ * <P>
+ * The tree adapts to the node density: crowded spots (e.g., bus stops or
+ * points of interest) are split into small regions and empty areas cost
+ * nothing, so this works well with very non-uniform node distributions.
+ * See {@link PairListOptimizer} for when the sweeps are done.
+ * </P>
+ */
+public class KdTree extends PairListOptimizer {
+	/** subtrees with at most this many interfaces are scanned linearly */
+	private static final int LEAF_SIZE = 8;
+
+	/** interface indexes in the k-d tree order; the tree is implicit: the
+	 * median of each range is the splitting node of that range */
+	private int[] tree;
+
+	/**
+	 * Creates a new k-d tree optimizer
+	 * @param maxRange The maximum radio range of the interfaces
+	 */
+	public KdTree(double maxRange) {
+		super(maxRange);
+		this.tree = new int[0];
+	}
+
+	@Override
+	protected void ensureCapacity(int n) {
+		super.ensureCapacity(n);
+		if (tree.length < n) {
+			tree = new int[n];
+		}
+	}
+
+	/**
+	 * Builds the tree and finds the pairs with range queries
+	 * @param n Number of interfaces
+	 */
+	@Override
+	protected void findPairs(int n) {
+		for (int i=0; i < n; i++) {
+			tree[i] = i;
+		}
+		build(0, n, 0);
+
+		for (int a=0; a < n; a++) {
+			query(a, 0, n, 0);
+		}
+	}
+
+	/**
+	 * Builds the (sub)tree of the given range
+	 * @param lo Start of the range
+	 * @param hi End of the range (exclusive)
+	 * @param depth Depth of the subtree's root (even: split by X, odd: Y)
+	 */
+	private void build(int lo, int hi, int depth) {
+		if (hi - lo <= LEAF_SIZE) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, depth % 2 == 0 ? xs : ys);
+		build(lo, mid, depth + 1);
+		build(mid + 1, hi, depth + 1);
+	}
+
+	/**
+	 * Reorders tree[lo..hi] so that tree[k] has the k:th smallest coordinate
+	 * and smaller (larger) coordinates are before (after) it.
+	 * @param lo First index of the range
+	 * @param hi Last index of the range (inclusive)
+	 * @param k The index to select
+	 * @param coords The coordinates to order by
+	 */
+	private void select(int lo, int hi, int k, double[] coords) {
+		while (lo < hi) {
+			double pivot = coords[tree[(lo + hi) >>> 1]];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (coords[tree[i]] < pivot) {
+					i++;
+				}
+				while (coords[tree[j]] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = tree[i];
+					tree[i] = tree[j];
+					tree[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Finds the interfaces with a larger index than the given interface and
+	 * within the maximum range from it in the (sub)tree of the given range
+	 * @param a Index of the interface
+	 * @param lo Start of the range
+	 * @param hi End of the range (exclusive)
+	 * @param depth Depth of the subtree's root
+	 */
+	private void query(int a, int lo, int hi, int depth) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int k = lo; k < hi; k++) {
+				if (tree[k] > a) {
+					checkPair(a, tree[k]);
+				}
+			}
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		int node = tree[mid];
+		if (node > a) {
+			checkPair(a, node);
+		}
+
+		double[] coords = depth % 2 == 0 ? xs : ys;
+		double diff = coords[a] - coords[node];
+		if (diff <= maxRange) {
+			query(a, lo, mid, depth + 1);
+		}
+		if (diff >= -maxRange) {
+			query(a, mid + 1, hi, depth + 1);
+		}
+	}
+}
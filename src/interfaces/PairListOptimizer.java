@@ -0,0 +1,367 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import core.Coord;
+import core.NetworkInterface;
+
+/**
+ * <P>
+ * Superclass for connectivity optimizers that find all interface pairs
+ * within the maximum range in one go (a "sweep") and answer the near
+ * interface queries from per-interface lists built from those pairs.
+ * Subclasses only implement {@link #findPairs(int)}.
+ * </P>
+ * <P>
+ * The sweep is done before every update round if any interface has moved
+ * since the previous sweep (see {@link #prepareQueries()}), so the queries
+ * of the round only read the near lists. Outside the update rounds the
+ * sweep is done lazily when an interface asks for its near interfaces and
+ * it has moved since the previous sweep (or new interfaces have been
+ * added). The queries must not be made concurrently.
+ * The distances computed in the sweep are given to
+ * {@link ConnectivityOptimizer.NearDistanceVisitor}s for the near interfaces
+ * that haven't moved since, so each pair's distance is computed only once.
+ * All interfaces must have at most the maximum range.
+ * </P>
+ */
+public abstract class PairListOptimizer extends ConnectivityOptimizer {
+	/** maximum range of the interfaces */
+	protected double maxRange;
+	/** all interfaces; the index in this list is the interface's index */
+	protected ArrayList<NetworkInterface> interfaces;
+	/** locations of the interfaces in the latest sweep */
+	protected double[] xs;
+	/** locations of the interfaces in the latest sweep */
+	protected double[] ys;
+
+	private HashMap<NetworkInterface, Integer> indexes;
+	/** number of interfaces in the latest sweep */
+	private int sweptCount;
+	/** start positions of the near lists in the near array (size n+1) */
+	private int[] nearStart;
+	/** indexes of the near interfaces of all interfaces */
+	private int[] near;
+	/** distances of the near interfaces (same positions as in near) */
+	private double[] nearDist;
+	/** scratch array for building the near lists */
+	private int[] fillPos;
+	/** pairs found in the sweep (pairs[2k] and pairs[2k+1] are a pair) */
+	private int[] pairs;
+	/** distances of the pairs (pairDist[k] is the k:th pair's distance) */
+	private double[] pairDist;
+	private int nrofPairs;
+	/** number of sweeps made so far */
+	private int nrofSweeps;
+
+	/**
+	 * Constructor.
+	 * @param maxRange The maximum radio range of the interfaces
+	 */
+	protected PairListOptimizer(double maxRange) {
+		this.maxRange = maxRange;
+		this.interfaces = new ArrayList<NetworkInterface>();
+		this.indexes = new HashMap<NetworkInterface, Integer>();
+		this.sweptCount = -1;
+		this.xs = new double[0];
+		this.ys = new double[0];
+		this.fillPos = new int[0];
+		this.nearStart = new int[1];
+		this.near = new int[0];
+		this.nearDist = new double[0];
+		this.pairs = new int[0];
+		this.pairDist = new double[0];
+	}
+
+	/**
+	 * Finds all pairs of interfaces that are within the maximum range from
+	 * each other and reports each pair exactly once using
+	 * {@link #checkPair(int, int)} (which does the final distance check).
+	 * The locations of the interfaces are in {@link #xs} and {@link #ys}.
+	 * @param n Number of interfaces
+	 */
+	protected abstract void findPairs(int n);
+
+	/**
+	 * Makes sure the per-interface arrays can hold n interfaces. Subclasses
+	 * with their own per-interface arrays should override this (and call
+	 * this method too).
+	 * @param n Number of interfaces
+	 */
+	protected void ensureCapacity(int n) {
+		if (xs.length >= n) {
+			return;
+		}
+		xs = new double[n];
+		ys = new double[n];
+		fillPos = new int[n];
+		nearStart = new int[n + 1];
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already
+	 * present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (indexes.containsKey(ni)) {
+			return;
+		}
+		indexes.put(ni, interfaces.size());
+		interfaces.add(ni);
+	}
+
+	/**
+	 * Adds interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Does nothing; the locations are read in the sweeps
+	 * @param ni The interface that moved
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		/* nothing to do: all locations are re-read in the next sweep */
+	}
+
+	/**
+	 * Returns all interfaces that are within the maximum range of the given
+	 * interface (based on the latest sweep)
+	 * @param ni The interface whose near interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+		visitNearInterfaces(ni, new NearInterfaceVisitor() {
+			public void visit(NetworkInterface other) {
+				niList.add(other);
+			}
+		});
+		return niList;
+	}
+
+	/**
+	 * Calls the visitor for all interfaces that were within the maximum
+	 * range of the given interface in the latest sweep. A new sweep is made
+	 * first if the interface has moved since the latest sweep.
+	 * @param ni The interface whose near interfaces are visited
+	 * @param visitor The visitor to call for each near interface
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		Integer index = indexes.get(ni);
+		if (index == null) {
+			return;
+		}
+
+		sweepIfMoved(index);
+
+		visitNearList(index, visitor);
+	}
+
+	/**
+	 * Makes a new sweep if any interface has moved (or new interfaces have
+	 * been added) since the latest sweep
+	 */
+	@Override
+	public void prepareQueries() {
+		if (sweptCount == interfaces.size()) {
+			int n = 0;
+			while (n < sweptCount && !hasMoved(n)) {
+				n++;
+			}
+			if (n == sweptCount) {
+				return; /* the latest sweep is still valid */
+			}
+		}
+		sweep();
+	}
+
+	/**
+	 * Calls the visitor for all interfaces that were within the maximum
+	 * range of the given interface in the latest sweep if the sweep is
+	 * still valid for the interface
+	 * @param ni The interface whose near interfaces are visited
+	 * @param visitor The visitor to call for each near interface
+	 * @return True if the interfaces were visited, false if the interface
+	 * has moved (or new interfaces have been added) since the latest sweep
+	 */
+	@Override
+	public boolean visitNearInterfacesAhead(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		Integer index = indexes.get(ni);
+		if (index == null) {
+			return true;
+		}
+
+		int idx = index;
+		if (sweptCount != interfaces.size() || hasMoved(idx)) {
+			return false;
+		}
+		visitNearList(idx, visitor);
+		return true;
+	}
+
+	/**
+	 * Calls the visitor for all interfaces in the near list of the latest
+	 * sweep. The distances of the sweep are given to a
+	 * {@link ConnectivityOptimizer.NearDistanceVisitor} for the interfaces
+	 * that haven't moved since the sweep.
+	 * @param idx Index of the queried interface (that hasn't moved since
+	 * the sweep)
+	 * @param visitor The visitor to call for each near interface
+	 */
+	private void visitNearList(int idx, NearInterfaceVisitor visitor) {
+		NearDistanceVisitor distVisitor = null;
+		if (visitor instanceof NearDistanceVisitor) {
+			distVisitor = (NearDistanceVisitor)visitor;
+		}
+		for (int k = nearStart[idx], end = nearStart[idx+1]; k < end; k++) {
+			int other = near[k];
+			if (distVisitor != null && !hasMoved(other)) {
+				distVisitor.visit(interfaces.get(other), nearDist[k]);
+			} else {
+				visitor.visit(interfaces.get(other));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of sweeps made so far: the near lists don't change
+	 * between the sweeps
+	 * @param ni The interface whose query's stamp is returned
+	 * @return The stamp of the query
+	 */
+	@Override
+	public long getQueryStamp(NetworkInterface ni) {
+		return nrofSweeps;
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * Makes a new sweep if the interface with the given index has moved
+	 * (or new interfaces have been added) since the latest sweep.
+	 * @param idx Index of the interface
+	 */
+	private void sweepIfMoved(int idx) {
+		if (sweptCount == interfaces.size() && !hasMoved(idx)) {
+			return; /* latest sweep is still valid for this interface */
+		}
+		sweep();
+	}
+
+	/**
+	 * Returns true if the interface with the given index has moved since
+	 * the latest sweep
+	 * @param idx Index of the interface (that was in the latest sweep)
+	 * @return True if the interface's location has changed
+	 */
+	private boolean hasMoved(int idx) {
+		Coord c = interfaces.get(idx).getLocation();
+		return c.getX() != xs[idx] || c.getY() != ys[idx];
+	}
+
+	/**
+	 * Reads the locations of all interfaces, finds all interface pairs that
+	 * are within the maximum range and creates the per-interface lists of
+	 * near interfaces.
+	 */
+	private void sweep() {
+		int n = interfaces.size();
+		ensureCapacity(n);
+
+		for (int i=0; i < n; i++) {
+			Coord c = interfaces.get(i).getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+		}
+
+		nrofPairs = 0;
+		findPairs(n);
+
+		/* build the near lists from the pairs */
+		for (int i=0; i <= n; i++) {
+			nearStart[i] = 0;
+		}
+		for (int k=0; k < 2 * nrofPairs; k++) {
+			nearStart[pairs[k] + 1]++;
+		}
+		for (int i=0; i < n; i++) {
+			nearStart[i+1] += nearStart[i];
+		}
+		if (near.length < 2 * nrofPairs) {
+			near = new int[4 * nrofPairs];
+			nearDist = new double[4 * nrofPairs];
+		}
+		System.arraycopy(nearStart, 0, fillPos, 0, n);
+		for (int k=0; k < nrofPairs; k++) {
+			int a = pairs[2*k];
+			int b = pairs[2*k+1];
+			nearDist[fillPos[a]] = pairDist[k];
+			near[fillPos[a]++] = b;
+			nearDist[fillPos[b]] = pairDist[k];
+			near[fillPos[b]++] = a;
+		}
+
+		sweptCount = n;
+		nrofSweeps++;
+	}
+
+	/**
+	 * Checks if two interfaces are within the maximum range from each other
+	 * and stores them as a pair, with their distance, if they are.
+	 * @param a Index of the first interface
+	 * @param b Index of the second interface
+	 */
+	protected void checkPair(int a, int b) {
+		double dx = xs[a] - xs[b];
+		double dy = ys[a] - ys[b];
+		double dist2 = dx * dx + dy * dy;
+		if (dist2 > maxRange * maxRange) {
+			return;
+		}
+
+		if (pairs.length < 2 * (nrofPairs + 1)) {
+			int[] newPairs = new int[Math.max(16, pairs.length * 2)];
+			System.arraycopy(pairs, 0, newPairs, 0, 2 * nrofPairs);
+			pairs = newPairs;
+			double[] newDist = new double[pairs.length / 2];
+			System.arraycopy(pairDist, 0, newDist, 0, nrofPairs);
+			pairDist = newDist;
+		}
+		pairs[2 * nrofPairs] = a;
+		pairs[2 * nrofPairs + 1] = b;
+		/* same expression as in Coord.distance() */
+		pairDist[nrofPairs] = Math.sqrt(dist2);
+		nrofPairs++;
+	}
+
+	/**
+	 * Returns a string representation of the object
+	 * @return a string representation of the object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + interfaces.size() +
+			" interfaces, max range=" + this.maxRange;
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.Arrays;
+
+import movement.MovementModel;
+
+import core.DTNSim;
+import core.Settings;
+import core.SettingsError;
+
+/**
+ * <P>
+ * Connectivity optimizer that finds all interface pairs within the maximum
+ * range with a single sweep over an overlay grid. Instead of every interface
+ * querying all nine cells around it (which checks every candidate pair
+ * twice, once from both sides), the sweep checks each cell against itself
+ * and its four "forward" neighbors (east, south-west, south and south-east).
+ * This half neighborhood covers every pair of adjacent cells exactly once,
+ * so every candidate pair's distance is calculated only once per sweep.
+ * </P>
+ * <P>
+ * The cell size is the maximum range. Only the occupied cells are stored
+ * (as runs of the interfaces sorted by their cell index) so the memory use
+ * does not depend on the world size. See {@link PairListOptimizer} for
+ * when the sweeps are done.
+ * </P>
+ */
+public class PairSweepGrid extends PairListOptimizer {
+	private static int worldSizeX;
+	private static int worldSizeY;
+
+	private int rows;
+	private int cols;
+
+	/** cell index (high bits) and interface index (low bits) in order */
+	private long[] sortKeys;
+	/** interface indexes ordered by cell index */
+	private int[] byCell;
+
+	static {
+		DTNSim.registerForReset(PairSweepGrid.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		worldSizeX = worldSize[0];
+		worldSizeY = worldSize[1];
+	}
+
+	/**
+	 * Creates a new pair sweep grid
+	 * @param maxRange The maximum radio range of the interfaces
+	 */
+	public PairSweepGrid(double maxRange) {
+		super(maxRange);
+		this.rows = (int)(worldSizeY / maxRange) + 1;
+		this.cols = (int)(worldSizeX / maxRange) + 1;
+		if ((long)rows * cols > Integer.MAX_VALUE) {
+			throw new SettingsError("Too many cells (" + rows + "x" + cols +
+					") for " + getClass().getSimpleName() + "; use a " +
+					"sparse optimizer for this world size and range");
+		}
+		this.sortKeys = new long[0];
+		this.byCell = new int[0];
+	}
+
+	@Override
+	protected void ensureCapacity(int n) {
+		super.ensureCapacity(n);
+		if (sortKeys.length < n) {
+			sortKeys = new long[n];
+			byCell = new int[n];
+		}
+	}
+
+	/**
+	 * Finds the pairs using the half neighborhood of each occupied cell
+	 * @param n Number of interfaces
+	 */
+	@Override
+	protected void findPairs(int n) {
+		/* sort the interfaces by their cells; the sort key has the cell
+		 * index in the high bits and the interface index in the low bits
+		 * so ties are in the interface order */
+		for (int i=0; i < n; i++) {
+			sortKeys[i] = ((long)cellIndex(xs[i], ys[i]) << 32) | i;
+		}
+		Arrays.sort(sortKeys, 0, n);
+		for (int i=0; i < n; i++) {
+			byCell[i] = (int)sortKeys[i];
+		}
+
+		for (int start = 0; start < n; ) {
+			int cell = cellAt(start);
+			int end = groupEnd(start, n);
+			int row = cell / cols;
+			int col = cell % cols;
+
+			/* pairs within the cell */
+			for (int a = start; a < end; a++) {
+				for (int b = a + 1; b < end; b++) {
+					checkPair(byCell[a], byCell[b]);
+				}
+			}
+			/* pairs with the forward neighbor cells */
+			checkCells(start, end, row, col + 1, n);
+			checkCells(start, end, row + 1, col - 1, n);
+			checkCells(start, end, row + 1, col, n);
+			checkCells(start, end, row + 1, col + 1, n);
+
+			start = end;
+		}
+	}
+
+	/**
+	 * Checks all pairs between a range of interfaces (that are in the same
+	 * cell) and the interfaces of another cell.
+	 * @param start Start index (in byCell) of the first cell's interfaces
+	 * @param end End index (in byCell) of the first cell's interfaces
+	 * @param row Row of the other cell
+	 * @param col Column of the other cell
+	 * @param n Number of interfaces
+	 */
+	private void checkCells(int start, int end, int row, int col, int n) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols) {
+			return;
+		}
+		int other = findCell(row * cols + col, end, n);
+		if (other < 0) {
+			return; /* empty cell */
+		}
+		int otherEnd = groupEnd(other, n);
+		for (int a = start; a < end; a++) {
+			for (int b = other; b < otherEnd; b++) {
+				checkPair(byCell[a], byCell[b]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the cell index of a location. Locations outside the world are
+	 * put to the closest border cell.
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @return The cell index
+	 */
+	private int cellIndex(double x, double y) {
+		int row = (int)(y / maxRange);
+		int col = (int)(x / maxRange);
+		row = Math.max(0, Math.min(rows - 1, row));
+		col = Math.max(0, Math.min(cols - 1, col));
+		return row * cols + col;
+	}
+
+	/**
+	 * Returns the cell index of the interface at the given position of the
+	 * cell ordered array
+	 * @param pos The position in byCell
+	 * @return The cell index
+	 */
+	private int cellAt(int pos) {
+		return (int)(sortKeys[pos] >>> 32);
+	}
+
+	/**
+	 * Returns the end index (in byCell) of the cell group starting at the
+	 * given index
+	 */
+	private int groupEnd(int start, int n) {
+		int cell = cellAt(start);
+		int end = start + 1;
+		while (end < n && cellAt(end) == cell) {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Finds the first index (in byCell, at or after from) of the interfaces
+	 * in the given cell using binary search
+	 * @return The index or -1 if the cell is empty
+	 */
+	private int findCell(int cell, int from, int n) {
+		int lo = from;
+		int hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cellAt(mid) < cell) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		if (lo < n && cellAt(lo) == cell) {
+			return lo;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a string representation of the object
+	 * @return a string representation of the object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.maxRange;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+/**
+ * <P>
+ * Connectivity optimizer that finds the interface pairs within the maximum
+ * range by sorting the interfaces by their X coordinate and sweeping over
+ * the sorted order: only the interfaces whose X coordinates differ at most
+ * the maximum range need to be checked. The order from the previous sweep
+ * is re-sorted with insertion sort, which is linear when the nodes move
+ * only a little between the sweeps.
+ * </P>
+ * <P>
+ * Uses no grid at all so the memory use only depends on the number of
+ * interfaces. Works well for huge sparse worlds and for crowded spots,
+ * as long as the nodes are not all lined up on the same vertical band.
+ * See {@link PairListOptimizer} for when the sweeps are done.
+ * </P>
+ */
+public class SortAndSweep extends PairListOptimizer {
+	/** interface indexes in the order of their X coordinates */
+	private int[] order;
+	/** number of interfaces in the order array */
+	private int orderSize;
+
+	/**
+	 * Creates a new sort and sweep optimizer
+	 * @param maxRange The maximum radio range of the interfaces
+	 */
+	public SortAndSweep(double maxRange) {
+		super(maxRange);
+		this.order = new int[0];
+		this.orderSize = 0;
+	}
+
+	@Override
+	protected void ensureCapacity(int n) {
+		super.ensureCapacity(n);
+		if (order.length < n) {
+			order = new int[n];
+		}
+	}
+
+	/**
+	 * Finds the pairs by sweeping over the interfaces in X order
+	 * @param n Number of interfaces
+	 */
+	@Override
+	protected void findPairs(int n) {
+		if (orderSize != n) {
+			/* new interfaces: sort everything from scratch */
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+			orderSize = n;
+			mergeSort(0, n, new int[n]);
+		}
+
+		/* insertion sort: the order is nearly right after the first sweep */
+		for (int i = 1; i < n; i++) {
+			int idx = order[i];
+			double x = xs[idx];
+			int j = i - 1;
+			while (j >= 0 && xs[order[j]] > x) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = idx;
+		}
+
+		for (int i = 0; i < n; i++) {
+			int a = order[i];
+			double maxX = xs[a] + maxRange;
+			double y = ys[a];
+			for (int j = i + 1; j < n && xs[order[j]] <= maxX; j++) {
+				int b = order[j];
+				if (Math.abs(ys[b] - y) <= maxRange) {
+					checkPair(a, b);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sorts order[from..to) by the X coordinates with merge sort
+	 * @param from Index of the first element to sort
+	 * @param to Index after the last element to sort
+	 * @param tmp Scratch array of at least the size of the order array
+	 */
+	private void mergeSort(int from, int to, int[] tmp) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(from, mid, tmp);
+		mergeSort(mid, to, tmp);
+
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to) {
+			if (xs[order[j]] < xs[order[i]]) {
+				tmp[k++] = order[j++];
+			} else {
+				tmp[k++] = order[i++];
+			}
+		}
+		while (i < mid) {
+			tmp[k++] = order[i++];
+		}
+		while (j < to) {
+			tmp[k++] = order[j++];
+		}
+		System.arraycopy(tmp, from, order, from, to - from);
+	}
+}
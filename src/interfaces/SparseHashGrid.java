@@ -0,0 +1,421 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import core.Coord;
+import core.NetworkInterface;
+
+/**
+ * <P>
+ * Overlay grid like {@link ConnectivityGrid} but only the cells that
+ * contain interfaces exist. The cells are kept in an open addressing hash
+ * table keyed by the cell's row and column, and the cells that the
+ * interfaces have left are removed before the next round of queries (see
+ * {@link #prepareQueries()}). The memory use is thus proportional to the
+ * number of interfaces (not to the world size) and negative coordinates are
+ * supported too.
+ * </P>
+ * <P>
+ * The cell size is the maximum range so the near interfaces are found from
+ * the 3x3 cells around the interface (in the same order as with
+ * {@link ConnectivityGrid}).
+ * </P>
+ */
+public class SparseHashGrid extends ConnectivityOptimizer {
+	/** initial capacity of the cell table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double cellSize;
+	private HashMap<NetworkInterface, Cell> ginterfaces;
+
+	/* open addressing hash table of the cells (linear probing) */
+	private long[] keys;
+	private Cell[] cells;
+	private int nrofCells;
+
+	/**
+	 * Creates a new sparse hash grid
+	 * @param maxRange The maximum radio range of the interfaces
+	 */
+	public SparseHashGrid(double maxRange) {
+		this.cellSize = maxRange;
+		this.ginterfaces = new HashMap<NetworkInterface, Cell>();
+		this.keys = new long[INITIAL_CAPACITY];
+		this.cells = new Cell[INITIAL_CAPACITY];
+		this.nrofCells = 0;
+	}
+
+	/**
+	 * Adds a network interface to the grid (unless it is already present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (ginterfaces.containsKey(ni)) {
+			return;
+		}
+		Cell c = getOrCreateCell(keyOf(ni.getLocation()));
+		c.add(ni);
+		ginterfaces.put(ni, c);
+	}
+
+	/**
+	 * Adds interfaces to the grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Checks and updates (if necessary) interface's position in the grid
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		Cell oldCell = ginterfaces.get(ni);
+		long key = keyOf(ni.getLocation());
+		if (oldCell.key == key) {
+			return;
+		}
+
+		boolean removeOk = oldCell.remove(ni);
+		assert removeOk : "interface " + ni + " not found from its cell";
+
+		Cell newCell = getOrCreateCell(key);
+		newCell.add(ni);
+		ginterfaces.put(ni, newCell);
+	}
+
+	/**
+	 * Removes the cells that have no interfaces. The cells are not removed
+	 * when the interfaces leave them so that their modification counts are
+	 * kept for the query stamps during an update round.
+	 */
+	@Override
+	public void prepareQueries() {
+		int nrofEmpty = 0;
+		for (Cell c : cells) {
+			if (c != null && c.interfaces.isEmpty()) {
+				nrofEmpty++;
+			}
+		}
+		if (nrofEmpty == 0) {
+			return;
+		}
+
+		long[] emptyKeys = new long[nrofEmpty];
+		int k = 0;
+		for (Cell c : cells) {
+			if (c != null && c.interfaces.isEmpty()) {
+				emptyKeys[k++] = c.key;
+			}
+		}
+		for (long key : emptyKeys) {
+			removeCell(key);
+		}
+	}
+
+	/**
+	 * Returns all interfaces that are in the neighboring grid cells of the
+	 * given interface
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+		visitNearInterfaces(ni, new NearInterfaceVisitor() {
+			public void visit(NetworkInterface other) {
+				niList.add(other);
+			}
+		});
+		return niList;
+	}
+
+	/**
+	 * Calls the visitor for all interfaces in the neighboring grid cells of
+	 * the given interface.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for each near interface
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		if (!ginterfaces.containsKey(ni)) {
+			return;
+		}
+
+		Coord c = ni.getLocation();
+		int row = (int)Math.floor(c.getY() / cellSize);
+		int col = (int)Math.floor(c.getX() / cellSize);
+
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				Cell cell = getCell(toKey(i, j));
+				if (cell == null) {
+					continue;
+				}
+				ArrayList<NetworkInterface> list = cell.interfaces;
+				for (int k=0, n = list.size(); k < n; k++) {
+					visitor.visit(list.get(k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls the visitor for the interfaces in the neighboring grid cells of
+	 * the given interface as they will be after the interface has been
+	 * moved to the cell of its current location (the move appends the
+	 * interface to the new cell's interfaces).
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for each near interface
+	 * @return True (the grid supports the ahead visits)
+	 */
+	@Override
+	public boolean visitNearInterfacesAhead(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		Cell oldCell = ginterfaces.get(ni);
+		if (oldCell == null) {
+			return true;
+		}
+
+		Coord c = ni.getLocation();
+		int row = (int)Math.floor(c.getY() / cellSize);
+		int col = (int)Math.floor(c.getX() / cellSize);
+		long newKey = toKey(row, col);
+		boolean moves = oldCell.key != newKey;
+
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				long key = toKey(i, j);
+				Cell cell = getCell(key);
+				if (cell != null) {
+					ArrayList<NetworkInterface> list = cell.interfaces;
+					for (int k=0, n = list.size(); k < n; k++) {
+						NetworkInterface other = list.get(k);
+						if (other != ni || !moves) {
+							visitor.visit(other);
+						}
+					}
+				}
+				if (moves && key == newKey) {
+					visitor.visit(ni);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the sum of the modification counts of the neighboring grid
+	 * cells of the interface (including the interface's own move to the
+	 * cell of its current location)
+	 * @param ni The interface whose query's stamp is returned
+	 * @return The stamp of the query
+	 */
+	@Override
+	public long getQueryStamp(NetworkInterface ni) {
+		Cell oldCell = ginterfaces.get(ni);
+		if (oldCell == null) {
+			return 0;
+		}
+
+		Coord c = ni.getLocation();
+		int row = (int)Math.floor(c.getY() / cellSize);
+		int col = (int)Math.floor(c.getX() / cellSize);
+		boolean moves = oldCell.key != toKey(row, col);
+
+		long stamp = 0;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				Cell cell = getCell(toKey(i, j));
+				if (cell != null) {
+					stamp += cell.modCount;
+					if (cell == oldCell && moves) {
+						stamp++; /* the interface will be removed from it */
+					}
+				}
+			}
+		}
+		if (moves) {
+			stamp++; /* the interface will be added to the new cell */
+		}
+		return stamp;
+	}
+
+	/**
+	 * Returns the cell size: everything within one cell's distance is in
+	 * the neighboring cells
+	 * @return The coverage range
+	 */
+	@Override
+	public double getCoverageRange() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return ginterfaces.keySet();
+	}
+
+	/**
+	 * Returns the cell key of a location
+	 */
+	private long keyOf(Coord c) {
+		return toKey((int)Math.floor(c.getY() / cellSize),
+				(int)Math.floor(c.getX() / cellSize));
+	}
+
+	/**
+	 * Packs a row and a column into a cell key
+	 */
+	private static long toKey(int row, int col) {
+		return ((long)row << 32) | (col & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the slot of a key in the hash table of the given size
+	 */
+	private static int slotOf(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h >>> 32) & mask;
+	}
+
+	/**
+	 * Returns the cell with the given key or null if there is no such cell
+	 */
+	private Cell getCell(long key) {
+		int mask = cells.length - 1;
+		for (int i = slotOf(key, mask); cells[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return cells[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the cell with the given key and creates it if it doesn't exist
+	 */
+	private Cell getOrCreateCell(long key) {
+		Cell c = getCell(key);
+		if (c != null) {
+			return c;
+		}
+		if (2 * (nrofCells + 1) > cells.length) {
+			rehash(cells.length * 2);
+		}
+		c = new Cell(key);
+		insert(c);
+		nrofCells++;
+		return c;
+	}
+
+	/**
+	 * Inserts a new cell to the hash table (that has room for it)
+	 */
+	private void insert(Cell c) {
+		int mask = cells.length - 1;
+		int i = slotOf(c.key, mask);
+		while (cells[i] != null) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = c.key;
+		cells[i] = c;
+	}
+
+	/**
+	 * Removes the cell with the given key from the hash table. Uses
+	 * backward shift deletion so no tombstones are needed.
+	 */
+	private void removeCell(long key) {
+		int mask = cells.length - 1;
+		int i = slotOf(key, mask);
+		while (keys[i] != key || cells[i] == null) {
+			i = (i + 1) & mask;
+		}
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (cells[j] == null) {
+				break;
+			}
+			int home = slotOf(keys[j], mask);
+			/* can the entry at j be moved to the hole at i? */
+			boolean between = (i <= j) ? (i < home && home <= j) :
+				(i < home || home <= j);
+			if (!between) {
+				keys[i] = keys[j];
+				cells[i] = cells[j];
+				i = j;
+			}
+		}
+		cells[i] = null;
+		nrofCells--;
+	}
+
+	/**
+	 * Resizes the hash table
+	 * @param capacity The new capacity (power of two)
+	 */
+	private void rehash(int capacity) {
+		Cell[] oldCells = this.cells;
+		this.keys = new long[capacity];
+		this.cells = new Cell[capacity];
+		for (Cell c : oldCells) {
+			if (c != null) {
+				insert(c);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representation of the object
+	 * @return a string representation of the object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + nrofCells +
+			" cells, cell size=" + this.cellSize;
+	}
+
+	/**
+	 * A single occupied cell of the grid
+	 */
+	private static class Cell {
+		/** how large array is initially chosen */
+		private static final int EXPECTED_INTERFACE_COUNT = 5;
+		private final long key;
+		private final ArrayList<NetworkInterface> interfaces;
+		/** how many times interfaces have been added to or removed from
+		 * this cell */
+		private int modCount;
+
+		private Cell(long key) {
+			this.key = key;
+			this.interfaces = new ArrayList<NetworkInterface>(
+					EXPECTED_INTERFACE_COUNT);
+		}
+
+		private void add(NetworkInterface ni) {
+			interfaces.add(ni);
+			modCount++;
+		}
+
+		private boolean remove(NetworkInterface ni) {
+			modCount++;
+			return interfaces.remove(ni);
+		}
+	}
+}
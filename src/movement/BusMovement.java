@@ -73,6 +73,15 @@ public class BusMovement extends MapRouteMovement {
 		return path;
 	}
 
+	/**
+	 * Bus movement is coordinated by the shared {@link BusControlSystem}
+	 * so buses are always moved in the serial lane.
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	@Override
 	public BusMovement replicate() {
 		return new BusMovement(this);
@@ -73,7 +73,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			probTakeOtherBus = settings.getDouble(PROBABILITY_TAKE_OTHER_BUS);
 		}
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = createPathFinder(null);
 		takeBus = true;
 	}
 
@@ -162,6 +162,15 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		return 0;
 	}
 
+	/**
+	 * Travellers are coordinated by the shared {@link BusControlSystem}
+	 * so they are always moved in the serial lane.
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new BusTravellerMovement(this);
@@ -72,7 +72,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public EveningActivityMovement(Settings settings) {
 		super(settings);
 		super.backAllowed = false;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = createPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 
 		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
@@ -222,6 +222,16 @@ public class EveningActivityMovement extends MapBasedMovement
 		}
 	}
 
+	/**
+	 * Evening activity groups are coordinated by the shared
+	 * {@link EveningActivityControlSystem} so these nodes are always moved
+	 * in the serial lane.
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new EveningActivityMovement(this);
@@ -80,6 +80,28 @@ public abstract class ExtendedMovementModel extends MovementModel {
 		return ((MovementModel)currentMovementModel).generateWaitTime();
 	}
 
+	/**
+	 * Returns the parallel safety of the movement model currently in use
+	 * @see MovementModel#isParallelSafe()
+	 */
+	@Override
+	public boolean isParallelSafe() {
+		return currentMovementModel == null ||
+			((MovementModel)currentMovementModel).isParallelSafe();
+	}
+
+	/**
+	 * Returns false because the new orders given on a path request can
+	 * switch to a movement model whose state is shared with other hosts
+	 * @return false (subclasses whose movement models are all parallel
+	 * safe may override this)
+	 * @see MovementModel#isParallelPathSafe()
+	 */
+	@Override
+	public boolean isParallelPathSafe() {
+		return false;
+	}
+
 	/**
 	 * Method is called between each getPath() request when the current MM is
 	 * ready (isReady() method returns true). Subclasses should implement all
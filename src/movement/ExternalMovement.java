@@ -4,8 +4,12 @@
  */
 package movement;
 
+import input.BatchPrefetcher;
+import input.BinaryMovementTrace;
 import input.ExternalMovementReader;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,7 +24,10 @@ import core.Settings;
 import core.SimClock;
 
 /**
- * Movement model that uses external data of node locations.
+ * Movement model that uses external data of node locations. The data is
+ * read either from a text trace (see {@link ExternalMovementReader}) or from
+ * a binary trace (see {@link BinaryMovementTrace}) where each node reads
+ * its own samples from the file only when they are needed.
  */
 public class ExternalMovement extends MovementModel {
 	/** Namespace for settings */
@@ -29,10 +36,23 @@ public class ExternalMovement extends MovementModel {
 	public static final String MOVEMENT_FILE_S = "file";
 	/** number of preloaded intervals per preload run -setting id ({@value})*/
 	public static final String NROF_PRELOAD_S = "nrofPreload";
+	/** number of time intervals to read ahead in a background thread
+	 * -setting id ({@value}). Default is two preload runs' worth and 0
+	 * reads the intervals only when needed. */
+	public static final String NROF_PREFETCH_S = "nrofPrefetch";
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
 	private static ExternalMovementReader reader;
+	/** reads the time instances of the reader ahead in the background */
+	private static BatchPrefetcher<Tuple<Double, List<Tuple<String, Coord>>>>
+		prefetcher;
+	/** binary trace or null if reading a text trace */
+	private static BinaryMovementTrace trace;
+	/** index of the last time instance of the binary trace preloaded */
+	private static int traceTimeIndex;
+	/** index of the binary trace node for the next new model */
+	private static int nextTraceNode;
 	private static String inputFileName;
 
 	/** mapping of external id to movement model */
@@ -65,6 +85,11 @@ public class ExternalMovement extends MovementModel {
 	/** is this node active */
 	private boolean isActive;
 
+	/** samples of this node in the binary trace (or null) */
+	private BinaryMovementTrace.NodeTrace nodeTrace;
+	/** index of the next sample of the node trace to add */
+	private int nextSample;
+
 	static {
 		DTNSim.registerForReset(ExternalMovement.class.getCanonicalName());
 		reset();
@@ -82,20 +107,55 @@ public class ExternalMovement extends MovementModel {
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
 			idMapping = new HashMap<String, ExternalMovement>();
 			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
-
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
 
-			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
 			if (s.contains(NROF_PRELOAD_S)) {
 				nrofPreload = s.getInt(NROF_PRELOAD_S);
 				if (nrofPreload <= 0) {
 					nrofPreload = 1;
 				}
 			}
+			int nrofPrefetch = s.getInt(NROF_PREFETCH_S,
+					2 * (int)nrofPreload);
+			samplingInterval = -1;
+			lastPreloadTime = -1;
+
+			File inputFile = new File(inputFileName);
+			if (BinaryMovementTrace.isBinaryMovementTrace(inputFile)) {
+				trace = new BinaryMovementTrace(inputFile);
+				initTime = (trace.getNrofTimes() > 0 ? trace.getTime(0) : -1);
+				traceTimeIndex = 0;
+				nextTraceNode = 0;
+				return;
+			}
+
+			final ExternalMovementReader traceReader =
+				new ExternalMovementReader(inputFileName);
+			reader = traceReader;
+			prefetcher = new BatchPrefetcher
+				<Tuple<Double, List<Tuple<String, Coord>>>>(
+				new BatchPrefetcher.Source
+					<Tuple<Double, List<Tuple<String, Coord>>>>() {
+				public Tuple<Double, List<Tuple<String, Coord>>> read() {
+					List<Tuple<String, Coord>> list =
+						traceReader.readNextMovements();
+					if (list.size() == 0) {
+						return null;
+					}
+					return new Tuple<Double, List<Tuple<String, Coord>>>(
+							traceReader.getLastTimeStamp(), list);
+				}
+			}, nrofPrefetch, "ExternalMovement " + inputFileName);
+
+			Tuple<Double, List<Tuple<String, Coord>>> first =
+				prefetcher.next();
+			if (first != null) {
+				initLocations = first.getValue();
+				initTime = first.getKey();
+			}
+			else {
+				initLocations = new ArrayList<Tuple<String, Coord>>();
+				initTime = -1;
+			}
 		}
 	}
 
@@ -110,7 +170,17 @@ public class ExternalMovement extends MovementModel {
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 
-		if (initLocations.size() > 0) { // we have location data left
+		if (trace != null && nextTraceNode < trace.getNrofNodes()) {
+			// the node's samples are read from the trace when needed
+			this.nodeTrace = trace.getNode(nextTraceNode++);
+			this.intialLocation = this.latestLocation =
+				nodeTrace.getLocation(0);
+			this.nextSample = 1;
+			this.latestPathStartTime = initTime;
+			isActive = true;
+		}
+		else if (trace == null && initLocations.size() > 0) {
+			// we have location data left
 			// gets a new location from the list
 			Tuple<String, Coord> initLoc = initLocations.remove(0);
 			this.intialLocation = this.latestLocation = initLoc.getValue();
@@ -129,14 +199,17 @@ public class ExternalMovement extends MovementModel {
 
 	/**
 	 * Checks if more paths should be preloaded and preloads them if
-	 * needed.
+	 * needed. The preloading depends only on the simulation time, so all
+	 * the models see the same preloaded paths during a movement round
+	 * regardless of which one's host asks for a path first (and the paths
+	 * can be asked concurrently).
 	 */
-	private static void checkPathNeed() {
+	private static synchronized void checkPathNeed() {
 		if (samplingInterval == -1) { // first preload
 			lastPreloadTime = readMorePaths();
 		}
 
-		if (!Double.isNaN(lastPreloadTime) && SimClock.getTime() >=
+		while (!Double.isNaN(lastPreloadTime) && SimClock.getTime() >=
 				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
 			for (int i=0; i < nrofPreload &&
 					!Double.isNaN(lastPreloadTime); i++) {
@@ -155,6 +228,23 @@ public class ExternalMovement extends MovementModel {
 		return isActive;
 	}
 
+	/**
+	 * Adds the samples of the node's binary trace that are in the preloaded
+	 * time instances
+	 */
+	private void addTraceLocations() {
+		if (nodeTrace == null) {
+			return;
+		}
+		double preloaded = trace.getTime(traceTimeIndex);
+		while (nextSample < nodeTrace.size() &&
+				nodeTrace.getTime(nextSample) <= preloaded) {
+			addLocation(nodeTrace.getLocation(nextSample),
+					nodeTrace.getTime(nextSample));
+			nextSample++;
+		}
+	}
+
 	/**
 	 * Adds a new location with a time to this model's move pattern. If the
 	 * node stayed stationary during the update, the current path is put to the
@@ -193,6 +283,19 @@ public class ExternalMovement extends MovementModel {
 	 */
 	@Override
 	public double nextPathAvailable() {
+		if (samplingInterval != -1) { // not before all the models exist
+			checkPathNeed();
+		}
+		return nextPathTime();
+	}
+
+	/**
+	 * Returns the time when the next path is available from the paths
+	 * that are preloaded
+	 * @return The sim time when node should ask the next time for a path
+	 */
+	private double nextPathTime() {
+		addTraceLocations();
 		if (pathQueue.size() == 0) {
 			return latestPathStartTime;
 		}
@@ -207,7 +310,7 @@ public class ExternalMovement extends MovementModel {
 
 		checkPathNeed(); // check if we should preload more paths
 
-		if (SimClock.getTime() < this.nextPathAvailable()) {
+		if (SimClock.getTime() < nextPathTime()) {
 			return null;
 		}
 
@@ -224,11 +327,17 @@ public class ExternalMovement extends MovementModel {
 
 	@Override
 	public int getMaxX() {
+		if (trace != null) {
+			return (int)(trace.getMaxX() - trace.getMinX()) + 1;
+		}
 		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
+		if (trace != null) {
+			return (int)(trace.getMaxY() - trace.getMinY()) + 1;
+		}
 		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
 	}
 
@@ -238,14 +347,42 @@ public class ExternalMovement extends MovementModel {
 		return new ExternalMovement(this);
 	}
 
+	/**
+	 * Returns true because the shared trace is read only when the paths
+	 * are preloaded (which is synchronized) and the models draw no random
+	 * numbers
+	 * @return true
+	 */
+	@Override
+	public boolean isParallelPathSafe() {
+		return true;
+	}
+
 	/**
 	 * Reads paths for the next time instance from the reader
 	 * @return The time stamp of the reading or Double.NaN if no movements
 	 * were read.
 	 */
 	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+		if (trace != null) {
+			/* the models add their own samples up to this time instance */
+			if (traceTimeIndex + 1 >= trace.getNrofTimes()) {
+				return Double.NaN;
+			}
+			double time = trace.getTime(++traceTimeIndex);
+			if (samplingInterval == -1) {
+				samplingInterval = time - initTime;
+			}
+			return time;
+		}
+
+		Tuple<Double, List<Tuple<String, Coord>>> movements =
+			prefetcher.next();
+		if (movements == null) {
+			return Double.NaN;
+		}
+		List<Tuple<String, Coord>> list = movements.getValue();
+		double time = movements.getKey();
 
 		if (samplingInterval == -1) {
 			samplingInterval = time - initTime;
@@ -259,12 +396,7 @@ public class ExternalMovement extends MovementModel {
 			}
 		}
 
-		if (list.size() > 0) {
-			return time;
-		}
-		else {
-			return Double.NaN;
-		}
+		return time;
 	}
 
 	/**
@@ -272,6 +404,15 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public static void reset() {
 		idMapping = null;
+		trace = null;
+		if (prefetcher != null) {
+			prefetcher.close();
+			prefetcher = null;
+		}
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
 	}
 
 }
@@ -159,4 +159,14 @@ public class ExternalPathMovement extends MovementModel {
 		else
 			return Double.MAX_VALUE;
 	}
+
+	/**
+	 * Returns false because a new path can move the host to the start of
+	 * the path (see {@link DTNHost#setLocation(Coord)})
+	 * @return false
+	 */
+	@Override
+	public boolean isParallelPathSafe() {
+		return false;
+	}
 }
@@ -17,9 +17,11 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 
+import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.DTNSim;
 import core.Settings;
 import core.SettingsError;
 import core.SimError;
@@ -55,8 +57,17 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	public static final String MAP_SELECT_S = "okMaps";
 
+	/**
+	 * Per node group setting for using A* (with the euclidean distance as
+	 * the heuristic) in the shortest path searches of the models that
+	 * use them ({@value}). Default is false (plain Dijkstra's algorithm).
+	 */
+	public static final String ASTAR_S = "aStar";
+
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
+	/** should the shortest path searches use A* */
+	private boolean aStar;
 
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
@@ -65,6 +76,10 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	/** names of the previously cached map's files (for hit comparison) */
 	private static List<String> cachedMapFiles = null;
 
+	static {
+		DTNSim.registerForReset(MapBasedMovement.class.getCanonicalName());
+	}
+
 	/**
 	 * Creates a new MapBasedMovement based on a Settings object's settings.
 	 * @param settings The Settings object where the settings are read from
@@ -73,6 +88,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		super(settings);
 		map = readMap();
 		readOkMapNodeTypes(settings);
+		aStar = settings.getBoolean(ASTAR_S, false);
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -90,6 +106,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		map = newMap;
 		this.nrofMapFilesRead = nrofMaps;
 		readOkMapNodeTypes(settings);
+		aStar = settings.getBoolean(ASTAR_S, false);
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -129,6 +146,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	protected MapBasedMovement(MapBasedMovement mbm) {
 		super(mbm);
 		this.okMapNodeTypes = mbm.okMapNodeTypes;
+		this.aStar = mbm.aStar;
 		this.map = mbm.map;
 		this.minPathLength = mbm.minPathLength;
 		this.maxPathLength = mbm.maxPathLength;
@@ -177,6 +195,18 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return okMapNodeTypes;
 	}
 
+	/**
+	 * Creates a shortest path finder for this movement model (that uses A*
+	 * if {@link #ASTAR_S} is set). The finder can be shared between the
+	 * replicated models.
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @return A new path finder
+	 */
+	protected DijkstraPathFinder createPathFinder(int[] okMapNodes) {
+		return new DijkstraPathFinder(okMapNodes, aStar);
+	}
+
 	@Override
 	public Path getPath() {
 		Path p = new Path(generateSpeed());
@@ -429,4 +459,14 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return true;
 	}
 
+	/**
+	 * Clears the map cache. The map nodes of a run get their indexes from
+	 * zero (see {@link MapNode#getIndex()}), so a map can't be shared with
+	 * the next run.
+	 */
+	public static void reset() {
+		cachedMap = null;
+		cachedMapFiles = null;
+	}
+
 }
@@ -44,9 +44,30 @@ public abstract class MovementModel {
 	public static final String WORLD_SIZE = "worldSize";
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
+	/**
+	 * Should each host's movement model draw its random numbers from its own
+	 * generator -setting id ({@value}). Boolean (true/false) variable.
+	 * Default = false. The generators are seeded with the {@link #RNG_SEED}
+	 * and the host's address, and they are used for the new paths of the
+	 * hosts. With own generators new paths can also be requested in the
+	 * parallel movement lanes (see {@link core.World#PARALLEL_MOVEMENT_S})
+	 * and the movement is the same regardless of how many threads move the
+	 * hosts.
+	 */
+	public static final String HOST_RNG_S = "hostRng";
 
 	/** common rng for all movement models in the simulation */
 	protected static Random rng;
+	/** {@link #rng} as a generator whose numbers can come from the hosts'
+	 * own generators */
+	private static SelectableRandom sharedRng;
+	/** seed of the rng */
+	private static int rngSeed;
+	/** do the models have their own generators */
+	private static boolean hostRngs;
+
+	/** own random number generator of the host (or null if not in use) */
+	private Random hostRng;
 
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -221,6 +242,33 @@ public abstract class MovementModel {
 	 */
 	public void setHost(DTNHost host) {
 		this.host = host;
+		if (hostRngs) {
+			this.hostRng = new Random(((long)rngSeed << 32) ^
+					host.getAddress());
+		}
+	}
+
+	/**
+	 * Makes the random numbers of {@link #rng} come from this model's own
+	 * generator (if the models have their own generators, see
+	 * {@link #HOST_RNG_S}) in the calling thread until
+	 * {@link #deselectRng()} is called.
+	 */
+	public void selectRng() {
+		if (this.hostRng != null) {
+			sharedRng.select(this.hostRng);
+		}
+	}
+
+	/**
+	 * Makes the random numbers of {@link #rng} come from the common sequence
+	 * again in the calling thread
+	 * @see #selectRng()
+	 */
+	public void deselectRng() {
+		if (this.hostRng != null) {
+			sharedRng.select(null);
+		}
 	}
 
 	/**
@@ -241,6 +289,34 @@ public abstract class MovementModel {
 		return SimClock.getTime() + generateWaitTime();
 	}
 
+	/**
+	 * Returns true if the host using this movement model can be moved
+	 * along its current path concurrently with other hosts (see
+	 * {@link core.World#PARALLEL_MOVEMENT_S}). New paths are requested
+	 * concurrently only if also {@link #isParallelPathSafe()} is true.
+	 * Models whose movement state is shared with other hosts' models (e.g.,
+	 * through a control system) should return false so that their hosts are
+	 * always moved in the serial lane.
+	 * @return true (subclasses may override this)
+	 */
+	public boolean isParallelSafe() {
+		return true;
+	}
+
+	/**
+	 * Returns true if new paths can be requested from this model
+	 * ({@link #getPath()} and {@link #nextPathAvailable()}) concurrently
+	 * with other hosts' movement. The requests may only modify the state of
+	 * this model (shared read-only data, like maps, is fine) and draw their
+	 * random numbers from {@link #rng}, which gives the numbers of the
+	 * host's own generator.
+	 * @return true if the model is {@link #isParallelSafe() parallel safe}
+	 * and it has its own random number generator (see {@link #HOST_RNG_S})
+	 */
+	public boolean isParallelPathSafe() {
+		return this.hostRng != null && isParallelSafe();
+	}
+
 	/**
 	 * Sets the module communication bus for this movement model
 	 * @param comBus The communications bus to set
@@ -277,11 +353,96 @@ public abstract class MovementModel {
 	public static void reset() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
 		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			rngSeed = s.getInt(RNG_SEED);
 		}
 		else {
-			rng = new Random(0);
+			rngSeed = 0;
+		}
+		hostRngs = s.getBoolean(HOST_RNG_S, false);
+		sharedRng = new SelectableRandom(rngSeed);
+		rng = sharedRng;
+	}
+
+	/**
+	 * Random number generator that gives the numbers of the generator that
+	 * is selected for the calling thread or, if none is selected, of its
+	 * own sequence.
+	 */
+	@SuppressWarnings("serial")
+	private static class SelectableRandom extends Random {
+		/** generators selected by the threads */
+		private final ThreadLocal<Random> selected = new ThreadLocal<Random>();
+
+		private SelectableRandom(long seed) {
+			super(seed);
+		}
+
+		/**
+		 * Selects the generator of the calling thread
+		 * @param r The generator or null for the own sequence
+		 */
+		private void select(Random r) {
+			selected.set(r);
+		}
+
+		/**
+		 * Returns the selected generator of the calling thread or null if
+		 * the own sequence should be used
+		 */
+		private Random current() {
+			return hostRngs ? selected.get() : null;
+		}
+
+		@Override
+		public int nextInt() {
+			Random r = current();
+			return r != null ? r.nextInt() : super.nextInt();
+		}
+
+		@Override
+		public int nextInt(int bound) {
+			Random r = current();
+			return r != null ? r.nextInt(bound) : super.nextInt(bound);
+		}
+
+		@Override
+		public long nextLong() {
+			Random r = current();
+			return r != null ? r.nextLong() : super.nextLong();
+		}
+
+		@Override
+		public boolean nextBoolean() {
+			Random r = current();
+			return r != null ? r.nextBoolean() : super.nextBoolean();
+		}
+
+		@Override
+		public float nextFloat() {
+			Random r = current();
+			return r != null ? r.nextFloat() : super.nextFloat();
+		}
+
+		@Override
+		public double nextDouble() {
+			Random r = current();
+			return r != null ? r.nextDouble() : super.nextDouble();
+		}
+
+		@Override
+		public double nextGaussian() {
+			Random r = current();
+			return r != null ? r.nextGaussian() : super.nextGaussian();
+		}
+
+		@Override
+		public void nextBytes(byte[] bytes) {
+			Random r = current();
+			if (r != null) {
+				r.nextBytes(bytes);
+			} else {
+				super.nextBytes(bytes);
+			}
 		}
 	}
 
@@ -4,35 +4,49 @@
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
+
+import core.DTNSim;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Implementation of the Dijkstra's shortest path algorithm. Optionally, the
+ * search can be done with A* using the euclidean distance to the destination
+ * as the heuristic, which finds an equally short path while visiting fewer
+ * nodes.
+ * <P>
+ * The state of a search is kept in arrays indexed by the map nodes'
+ * indexes. The arrays are per thread and reused between the searches, so
+ * a finder can be shared and used from several threads at the same time,
+ * and a search doesn't create objects except for the returned path.
+ * The node indexes start again from zero in every simulation run, so the
+ * states of the earlier runs are dropped on {@link #reset()}.
+ * </P>
  */
 public class DijkstraPathFinder {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+
+	/** Search state of each thread */
+	private static final ThreadLocal<SearchState> searchState =
+		new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState();
+		}
+	};
+	/** number of resets; search states of earlier runs are cleared */
+	private static volatile int runNumber = 0;
+
+	static {
+		DTNSim.registerForReset(DijkstraPathFinder.class.getCanonicalName());
+	}
 
 	private int [] okMapNodes;
+	/** true if the search uses A* instead of plain Dijkstra's algorithm */
+	private boolean aStar;
 
 	/**
 	 * Constructor.
@@ -40,27 +54,20 @@ public class DijkstraPathFinder {
 	 * all nodes are OK
 	 */
 	public DijkstraPathFinder(int [] okMapNodes) {
-		super();
-		this.okMapNodes = okMapNodes;
+		this(okMapNodes, false);
 	}
 
 	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * Constructor.
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @param aStar If true, the search is done with A* (using the euclidean
+	 * distance as the heuristic)
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
-
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
-
-		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+	public DijkstraPathFinder(int [] okMapNodes, boolean aStar) {
+		super();
+		this.okMapNodes = okMapNodes;
+		this.aStar = aStar;
 	}
 
 	/**
@@ -71,49 +78,62 @@ public class DijkstraPathFinder {
 	 * a list of MapNodes or an empty list if such path is not available
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
-		List<MapNode> path = new LinkedList<MapNode>();
-
 		if (from.compareTo(to) == 0) { // source and destination are the same
+			List<MapNode> path = new ArrayList<MapNode>(1);
 			path.add(from); // return a list containing only source node
 			return path;
 		}
 
-		initWith(from);
+		assert (okMapNodes != null ? from.isType(okMapNodes) : true);
+
+		SearchState s = searchState.get();
+		if (s.runNumber != runNumber) { // state of an earlier run
+			s = new SearchState();
+			searchState.set(s);
+		}
+		s.reset();
+		s.update(from, 0, estimate(from, to));
 		MapNode node = null;
 
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
+		// always take the node with shortest (estimated) distance
+		while ((node = s.poll()) != null) {
 			if (node == to) {
 				break; // we found the destination -> no need to search further
 			}
 
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
+			relax(s, node, to); // add/update neighbor nodes' distances
 		}
 
-		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to);
-			MapNode prev = prevNodes.get(to);
-			while (prev != from) {
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
-			}
+		if (node != to) { // such path wasn't available
+			return new ArrayList<MapNode>(0);
+		}
 
-			path.add(0, from); // finally put the source node to first node
+		int length = 1;
+		for (int i = to.getIndex(); i != from.getIndex(); i = s.prev[i]) {
+			length++;
+		}
+		List<MapNode> path = new ArrayList<MapNode>(length);
+		for (int i = to.getIndex(); i != from.getIndex(); i = s.prev[i]) {
+			path.add(s.nodes[i]);
 		}
+		path.add(from);
+		Collections.reverse(path);
 
 		return path;
 	}
 
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * @param s The search state
 	 * @param node The node whose neighbors are relaxed
+	 * @param to The destination of the search
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
+	private void relax(SearchState s, MapNode node, MapNode to) {
+		double nodeDist = s.dist[node.getIndex()];
+		for (MapNode n : node.getNeighborArray()) {
+			int i = n.getIndex();
+			s.ensureCapacity(i);
+			if (s.isVisited(i)) {
 				continue; // skip visited nodes
 			}
 
@@ -124,22 +144,22 @@ public class DijkstraPathFinder {
 			// n node's distance from path's source node
 			double nDist = nodeDist + getDistance(node, n);
 
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
+			if (s.getDistance(i) > nDist) { // stored distance > found dist?
+				s.prev[i] = node.getIndex();
+				s.update(n, nDist, nDist + estimate(n, to));
 			}
 		}
 	}
 
 	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
+	 * Returns the estimated distance from a node to the destination (the
+	 * heuristic of A*) or 0 for plain Dijkstra's algorithm
+	 * @param n The node
+	 * @param to The destination
+	 * @return The estimate
 	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private double estimate(MapNode n, MapNode to) {
+		return aStar ? getDistance(n, to) : 0;
 	}
 
 	/**
@@ -153,76 +173,191 @@ public class DijkstraPathFinder {
 	}
 
 	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
+	 * Drops the search states of the earlier runs (which refer to their
+	 * maps' nodes). The states of other threads are replaced on their next
+	 * search.
 	 */
-	private class DistanceComparator implements Comparator<MapNode> {
+	public static void reset() {
+		runNumber++;
+		searchState.remove();
+	}
+
+	/**
+	 * State of a search: distances, previous nodes and the priority queue
+	 * (a binary heap of node indexes) of the nodes. The values of a node are
+	 * valid only if the node's stamp is the stamp of the current search,
+	 * so the state is reset by changing the stamp.
+	 */
+	private static class SearchState {
+		/** position of a node that is not in the queue */
+		private static final int NOT_QUEUED = -1;
+		/** position of a visited node (where the shortest path is known) */
+		private static final int VISITED = -2;
+
+		/** the run this state is for */
+		private final int runNumber;
+		/** stamp of the current search */
+		private int stamp;
+		/** stamps of the searches where the nodes were last seen */
+		private int[] stamps;
+		/** nodes' distances from the source node */
+		private double[] dist;
+		/** nodes' priorities in the queue (distance + estimate) */
+		private double[] keys;
+		/** indexes of the previous nodes on the shortest paths */
+		private int[] prev;
+		/** positions of the nodes in the heap (or NOT_QUEUED/VISITED) */
+		private int[] positions;
+		/** the nodes by their index */
+		private MapNode[] nodes;
+		/** the heap of node indexes */
+		private int[] heap;
+		private int heapSize;
+
+		private SearchState() {
+			this.runNumber = DijkstraPathFinder.runNumber;
+			this.stamp = 0;
+			this.stamps = new int[0];
+			this.dist = new double[0];
+			this.keys = new double[0];
+			this.prev = new int[0];
+			this.positions = new int[0];
+			this.nodes = new MapNode[0];
+			this.heap = new int[0];
+		}
 
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * Starts a new search
 		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
+		private void reset() {
+			heapSize = 0;
+			stamp++;
+			if (stamp == 0) { // wrapped around -> clear the old stamps
+				Arrays.fill(stamps, 0);
+				stamp = 1;
 			}
-			else {
-				return node1.compareTo(node2);
+		}
+
+		/**
+		 * Makes sure that the arrays have room for the given node index
+		 */
+		private void ensureCapacity(int index) {
+			if (index < stamps.length) {
+				return;
 			}
+			int length = Math.max(index + 1, 2 * stamps.length);
+			stamps = Arrays.copyOf(stamps, length);
+			dist = Arrays.copyOf(dist, length);
+			keys = Arrays.copyOf(keys, length);
+			prev = Arrays.copyOf(prev, length);
+			positions = Arrays.copyOf(positions, length);
+			nodes = Arrays.copyOf(nodes, length);
+			heap = Arrays.copyOf(heap, length);
 		}
-	}
 
-	/**
-	 * Simple Map implementation for storing distances.
-	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
+		/**
+		 * Returns the distance of a node from the source node
+		 */
+		private double getDistance(int i) {
+			return stamps[i] == stamp ? dist[i] : INFINITY;
+		}
 
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Returns true if the shortest path to a node is known
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>();
+		private boolean isVisited(int i) {
+			return stamps[i] == stamp && positions[i] == VISITED;
 		}
 
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Sets the distance of a node and adds it to the queue or moves it
+		 * to its new place in the queue
 		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		private void update(MapNode n, double distance, double key) {
+			int i = n.getIndex();
+			ensureCapacity(i);
+			if (stamps[i] != stamp) {
+				stamps[i] = stamp;
+				positions[i] = NOT_QUEUED;
+				nodes[i] = n;
 			}
-			else {
-				return INFINITY;
+			dist[i] = distance;
+			keys[i] = key;
+
+			if (positions[i] == NOT_QUEUED) {
+				heap[heapSize] = i;
+				positions[i] = heapSize;
+				heapSize++;
 			}
+			siftUp(positions[i]); // the key can only decrease
 		}
 
 		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
+		 * Removes the node with the smallest key from the queue and marks it
+		 * visited
+		 * @return The node or null if the queue is empty
 		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
+		private MapNode poll() {
+			if (heapSize == 0) {
+				return null;
+			}
+			int first = heap[0];
+			heapSize--;
+			if (heapSize > 0) {
+				heap[0] = heap[heapSize];
+				positions[heap[0]] = 0;
+				siftDown(0);
+			}
+			positions[first] = VISITED;
+			return nodes[first];
 		}
 
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Returns true if node i should be taken from the queue before
+		 * node j (smaller key or the same key and smaller location)
 		 */
-		public String toString() {
-			return map.toString();
+		private boolean before(int i, int j) {
+			if (keys[i] != keys[j]) {
+				return keys[i] < keys[j];
+			}
+			return nodes[i].compareTo(nodes[j]) < 0;
+		}
+
+		private void siftUp(int k) {
+			int node = heap[k];
+			while (k > 0) {
+				int parent = (k - 1) / 2;
+				if (!before(node, heap[parent])) {
+					break;
+				}
+				heap[k] = heap[parent];
+				positions[heap[k]] = k;
+				k = parent;
+			}
+			heap[k] = node;
+			positions[node] = k;
+		}
+
+		private void siftDown(int k) {
+			int node = heap[k];
+			while (true) {
+				int child = 2 * k + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && before(heap[child + 1],
+						heap[child])) {
+					child++;
+				}
+				if (!before(heap[child], node)) {
+					break;
+				}
+				heap[k] = heap[child];
+				positions[heap[k]] = k;
+				k = child;
+			}
+			heap[k] = node;
+			positions[node] = k;
 		}
 	}
 }
@@ -6,8 +6,10 @@ package movement.map;
 
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import core.Coord;
+import core.DTNSim;
 import core.SettingsError;
 
 /**
@@ -20,11 +22,21 @@ public class MapNode implements Comparable<MapNode> {
 	/** Biggest valid type of a node: {@value} */
 	public static final int MAX_TYPE = 31;
 
+	/** index for the next created node */
+	private static final AtomicInteger nextIndex = new AtomicInteger();
+
+	static {
+		DTNSim.registerForReset(MapNode.class.getCanonicalName());
+	}
 
 	private Coord location;
 	private Vector<MapNode> neighbors;
+	/** the neighbors in an array (for iterating without locking) */
+	private MapNode[] neighborArray;
 	// bit mask of map node's types or 0 if no type's are defined
 	private int type;
+	/** unique index of the node */
+	private final int index;
 
 	/**
 	 * Constructor. Creates a map node to a location.
@@ -33,6 +45,8 @@ public class MapNode implements Comparable<MapNode> {
 	public MapNode(Coord location) {
 		this.location = location;
 		this.neighbors = new Vector<MapNode>();
+		this.neighborArray = new MapNode[0];
+		this.index = nextIndex.getAndIncrement();
 		type = 0;
 	}
 
@@ -108,6 +122,7 @@ public class MapNode implements Comparable<MapNode> {
 	private void addToList(MapNode node) {
 		if (!this.neighbors.contains(node) && node != this) {
 			this.neighbors.add(node);
+			this.neighborArray = neighbors.toArray(new MapNode[0]);
 		}
 	}
 
@@ -127,6 +142,25 @@ public class MapNode implements Comparable<MapNode> {
 		return neighbors;
 	}
 
+	/**
+	 * Returns the neighbors of this node in an array. The array must not be
+	 * modified.
+	 * @return the neighbors in an array
+	 */
+	MapNode[] getNeighborArray() {
+		return neighborArray;
+	}
+
+	/**
+	 * Returns the index of the node. Each node of a simulation run has a
+	 * different, small index, so the indexes can be used for indexing arrays
+	 * with nodes. The indexes start from zero again after {@link #reset()}.
+	 * @return the index of the node
+	 */
+	public int getIndex() {
+		return index;
+	}
+
 	/**
 	 * Returns a String representation of the map node
 	 * @return a String representation of the map node
@@ -143,4 +177,12 @@ public class MapNode implements Comparable<MapNode> {
 		return this.getLocation().compareTo((o).getLocation());
 	}
 
+	/**
+	 * Resets the node indexes so that the nodes of the next run get small
+	 * indexes again
+	 */
+	public static void reset() {
+		nextIndex.set(0);
+	}
+
 }
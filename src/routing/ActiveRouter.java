@@ -5,14 +5,16 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
 import routing.util.EnergyModel;
+import routing.util.ForwardingCandidates;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
+import util.TimingWheel;
 import util.Tuple;
 
 import core.Connection;
@@ -39,12 +41,28 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
-	/** how often TTL check (discarding old messages) is performed */
+	/**
+	 * how often TTL check (discarding old messages) was performed
+	 * @deprecated Expired messages are now dropped on every update using
+	 * an expiry wheel and this value is not used any more
+	 */
+	@Deprecated
 	public static int TTL_CHECK_INTERVAL = 60;
+	/** length of the expiry wheel's tick (seconds) */
+	private static final double EXPIRY_TICK = 1.0;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
-	/** sim time when the last TTL check was done */
-	private double lastTtlCheck;
+	/** buffered messages by their expiry times. Messages that leave the
+	 * buffer before they expire are not removed from the wheel but skipped
+	 * when their expiry time comes, so the wheel keeps them referenced
+	 * until then (at most for the messages' TTL). */
+	private TimingWheel<Message> expiryWheel;
+	/** list for collecting the expired messages */
+	private ArrayList<Message> expired;
+	/** reusable forwarding candidates */
+	private ForwardingCandidates candidates;
+	/** order of forwarding candidates: bigger score first */
+	private ForwardingCandidates.Order scoreOrder;
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
@@ -83,7 +101,20 @@ public abstract class ActiveRouter extends MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
-		this.lastTtlCheck = 0;
+		this.expiryWheel = new TimingWheel<Message>(EXPIRY_TICK);
+		this.expired = new ArrayList<Message>();
+		this.candidates = new ForwardingCandidates();
+		this.scoreOrder = new ForwardingCandidates.Order() {
+			public int compare(ForwardingCandidates c, int i, int j) {
+				double s1 = c.getScore(i);
+				double s2 = c.getScore(j);
+				if (s1 == s2) {
+					/* equal scores -> let queue mode decide */
+					return compareByQueueMode(c.getMessage(i), c.getMessage(j));
+				}
+				return (s1 > s2 ? -1 : 1);
+			}
+		};
 	}
 
 	/**
@@ -237,7 +268,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
+		if ( hasMessage(m.getIntId()) || isDeliveredMessage(m) ||
 				super.isBlacklistedMessage(m.getId())) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -278,6 +309,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		long freeBuffer = this.getFreeBufferSize();
 		/* delete messages from the buffer until there's enough space */
 		while (freeBuffer < size) {
+			/* the drop order is iterated again for every message since the
+			   iteration must end before the message is deleted */
 			Message m = getNextMessageToRemove(true); // don't remove msgs being sent
 
 			if (m == null) {
@@ -293,16 +326,36 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Adds the message to the buffer and, if the message has a finite TTL,
+	 * to the expiry wheel.
+	 */
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		if (m.getExpiryTime() != Double.MAX_VALUE) {
+			expiryWheel.add(m.getExpiryTime(), m);
+		}
+	}
+
+	/**
+	 * Drops messages whose TTL has run out. Messages that are being sent are
+	 * dropped once the sending has finished.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl();
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		expiryWheel.advance(SimClock.getTime(), expired);
+		for (int i=0, n=expired.size(); i<n; i++) {
+			Message m = expired.get(i);
+			if (getMessage(m.getId()) != m) {
+				continue; /* message has already been removed */
 			}
+			if (isSending(m.getId())) {
+				/* try again on the next update */
+				expiryWheel.add(m.getExpiryTime(), m);
+				continue;
+			}
+			deleteMessage(m.getId(), true);
 		}
+		expired.clear();
 	}
 
 	/**
@@ -318,33 +371,28 @@ public abstract class ActiveRouter extends MessageRouter {
 
 
 	/**
-	 * Returns the oldest (by receive time) message in the message buffer
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * Returns the next message to drop from the message buffer as defined by
+	 * the drop policy (by default the oldest message by receive time) that is
+	 * not being sent if excludeMsgBeingSent is true.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
-	 * being sent from the oldest message check (i.e. if oldest message is
+	 * being sent from the check (i.e. if oldest message is
 	 * being sent, the second oldest message is returned)
-	 * @return The oldest message or null if no message could be returned
+	 * @return The message or null if no message could be returned
 	 * (no messages in buffer or all messages in buffer are being sent and
 	 * exludeMsgBeingSent is true)
+	 * @see MessageRouter#DROP_POLICY_S
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-
+		Iterator<Message> it = getMessagesInDropOrder();
+		while (it.hasNext()) {
+			Message m = it.next();
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+			return m;
 		}
 
-		return oldest;
+		return null;
 	}
 
 	/**
@@ -372,6 +420,48 @@ public abstract class ActiveRouter extends MessageRouter {
 		return forTuples;
 	}
 
+	/**
+	 * Returns an empty set of forwarding candidates for collecting the
+	 * message-connection pairs to try. The same instance is returned on every
+	 * call, so the candidates must be tried before asking for new ones.
+	 * @return The (cleared) forwarding candidates
+	 */
+	protected ForwardingCandidates getForwardingCandidates() {
+		this.candidates.clear();
+		return this.candidates;
+	}
+
+	/**
+	 * Sorts the forwarding candidates so that the ones with the biggest
+	 * score are tried first. Candidates with equal scores are ordered using
+	 * the queue mode.
+	 * @param candidates The candidates to sort
+	 */
+	protected void sortByScore(ForwardingCandidates candidates) {
+		candidates.sort(this.scoreOrder);
+	}
+
+	/**
+	 * Tries to send the messages of the forwarding candidates through the
+	 * candidates' connections in the order of the candidates until one of
+	 * the connections starts transferring or all the candidates have been
+	 * tried.
+	 * @param candidates The candidates to try
+	 * @return The connection that accepted a message or null if none of the
+	 * connections accepted the message that was meant for them.
+	 */
+	protected Connection tryForwardingCandidates(
+			ForwardingCandidates candidates) {
+		for (int i = candidates.next(); i >= 0; i = candidates.next()) {
+			Connection con = candidates.getConnection(i);
+			if (startTransfer(candidates.getMessage(i), con) == RCV_OK) {
+				return con;
+			}
+		}
+
+		return null;
+	}
+
 	/**
 	 * Tries to send messages for the connections that are mentioned
 	 * in the Tuples in the order they are in the list until one of
@@ -480,12 +570,22 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		@SuppressWarnings(value = "unchecked")
-		Tuple<Message, Connection> t =
-			tryMessagesForConnected(sortByQueueMode(getMessagesForConnected()));
+		ForwardingCandidates deliverable = getForwardingCandidates();
+		if (getNrofMessages() > 0) {
+			for (Message m : getMessageCollection()) {
+				for (int i = 0, n = connections.size(); i < n; i++) {
+					Connection con = connections.get(i);
+					if (m.getTo() == con.getOtherNode(getHost())) {
+						deliverable.add(m, con, 0);
+					}
+				}
+			}
+		}
+		sortByQueueMode(deliverable);
 
-		if (t != null) {
-			return t.getValue(); // started transfer
+		Connection started = tryForwardingCandidates(deliverable);
+		if (started != null) {
+			return started; // started transfer
 		}
 
 		// didn't start transfer to any node -> ask messages from connected
@@ -622,12 +722,8 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 
-		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL &&
-				sendingConnections.size() == 0) {
-			dropExpiredMessages();
-			lastTtlCheck = SimClock.getTime();
-		}
+		/* drop the messages whose TTL has run out */
+		dropExpiredMessages();
 
 		if (energy != null) {
 			/* TODO: add support for other interfaces */
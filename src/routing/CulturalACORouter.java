@@ -5,13 +5,12 @@ import routing.culturalACOUtility.Centrality;
 import routing.culturalACOUtility.Duration;
 import routing.culturalACOUtility.Pheromone;
 import routing.culturalACOUtility.SWindowCentrality;
+import routing.util.ForwardingCandidates;
 import routing.util.RoutingInfo;
-import util.Tuple;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,13 +30,26 @@ public class CulturalACORouter extends ActiveRouter {
 
     /** Cultural ACO router's setting namespace ({@value})*/
     public static final String CULTURALACO_NS = "CulturalACORouter";
+    /** Message property key for the type of an ant ({@value}) */
+    public static final String ANT_TYPE_PROPERTY = "antType";
+    /** Message property slot of {@link #ANT_TYPE_PROPERTY} */
+    private static final int ANT_TYPE_SLOT =
+            Message.getPropertySlot(ANT_TYPE_PROPERTY);
 
     protected Map<DTNHost, Double> startTimestamps;
     protected Map<DTNHost, List<Duration>> connHistory;
 
     protected Centrality centrality;
     protected Map<DTNHost, Double> betweenness;
+    /** The largest value in the betweenness map */
+    protected double maxBetweenness;
+    /** Global centrality cached for the current simulation time */
+    private double cachedCentrality;
+    /** Simulation time of the cached centrality (NaN if not valid) */
+    private double centralityTime;
     protected Pheromone pheromoneTable;
+    /** Forwarding values of the connected hosts (reused between updates) */
+    private Candidates candidates;
 
     public enum antTypes { FORWARD, BACKWARD }
     public enum searchStatus { EXPLORATION, EXPLOITATION }
@@ -78,15 +90,21 @@ public class CulturalACORouter extends ActiveRouter {
         super(proto);
         this.centrality = proto.centrality.replicate();
         this.betweenness = new HashMap<DTNHost, Double>();
+        this.maxBetweenness = 0;
+        this.centralityTime = Double.NaN;
         this.pheromoneTable = proto.pheromoneTable;
+        this.candidates = new Candidates();
         startTimestamps = new HashMap<DTNHost, Double>();
         connHistory = new HashMap<DTNHost, List<Duration>>();
     }
 
     // Method untuk update betweenness
     public void updateBetweenness(DTNHost thisHost) {
-
-        betweenness.put(thisHost, betweenness.getOrDefault(thisHost, 0.0) + 1.0);
+        double value = betweenness.getOrDefault(thisHost, 0.0) + 1.0;
+        betweenness.put(thisHost, value);
+        if (value > maxBetweenness) {
+            maxBetweenness = value;
+        }
     }
 
     /**
@@ -100,16 +118,30 @@ public class CulturalACORouter extends ActiveRouter {
      * Mendapatkan nilai betweenness ternormalisasi (0-1)
      */
     private double getNormalizedBetweenness(DTNHost thisHost) {
-        if (betweenness.isEmpty()) return 0;
-        double max = Collections.max(betweenness.values());
-        return max > 0 ? betweenness.getOrDefault(thisHost, 0.0) / max : 0;
+        if (maxBetweenness <= 0) return 0;
+        return betweenness.getOrDefault(thisHost, 0.0) / maxBetweenness;
+    }
+
+    /**
+     * Returns the global centrality of this router's host. The value is
+     * computed once per simulation time and again only if the connection
+     * history changes.
+     * @return The global centrality
+     */
+    protected double getGlobalCentrality() {
+        double now = SimClock.getTime();
+        if (now != centralityTime) {
+            cachedCentrality = this.centrality.getGlobalCentrality(connHistory);
+            centralityTime = now;
+        }
+        return cachedCentrality;
     }
 
     private double getUtility(DTNHost thisHost) {
         double normalizedBetweenness = getNormalizedBetweenness(thisHost);
 
         // Dapatkan centrality
-        double globalCentrality = this.centrality.getGlobalCentrality(connHistory);
+        double globalCentrality = getGlobalCentrality();
 
         // Hitung weighted utility
         double utility = normalizedBetweenness + globalCentrality;
@@ -122,12 +154,12 @@ public class CulturalACORouter extends ActiveRouter {
 
         if(msg.getTo() == getHost()){
         pheromoneTable.createPheromoneTable(msg);
-        msg.updateProperty("antType", antTypes.BACKWARD);
+        msg.updateProperty(ANT_TYPE_SLOT, antTypes.BACKWARD);
         }
 
-        if (msg.getProperty("antType") !=null) {
-//            System.out.println(msg.getProperty("antType"));
-            if (msg.getProperty("antType").equals(antTypes.values()[1])) {
+        Object antType = msg.getProperty(ANT_TYPE_SLOT);
+        if (antType !=null) {
+            if (antType.equals(antTypes.values()[1])) {
                 updateBetweenness(getHost());
                 //update pheromone
 
@@ -160,13 +192,16 @@ public class CulturalACORouter extends ActiveRouter {
             {
                 history = new LinkedList<Duration>();
                 connHistory.put(other, history);
+                centralityTime = Double.NaN;
             }
             else
                 history = connHistory.get(other);
 
             // add this connection to the list
-            if(etime - time > 0)
+            if(etime - time > 0) {
                 history.add(new Duration(time, etime));
+                centralityTime = Double.NaN;
+            }
 
             startTimestamps.remove(other);
         }
@@ -200,15 +235,15 @@ public class CulturalACORouter extends ActiveRouter {
     /**
      * Tries to send all other messages to all connected hosts ordered by
      * their utility
-     * @return The return value of {@link #tryMessagesForConnected(List)}
+     * @return The return value of
+     * {@link #tryForwardingCandidates(ForwardingCandidates)}
      */
 
-    private Tuple<Message, Connection> tryOtherMessages() {
-        List<Tuple<Message, Connection>> messages =
-                new ArrayList<Tuple<Message, Connection>>();
+    private Connection tryOtherMessages() {
+        ForwardingCandidates forwarding = getForwardingCandidates();
 
         Collection<Message> msgCollection = getMessageCollection();
-        Map<DTNHost, Double> candidates = new HashMap<>();
+        candidates.clear();
 
 		/* for all connected hosts collect all messages that have a higher
 		   probability of delivery by the other host */
@@ -221,69 +256,96 @@ public class CulturalACORouter extends ActiveRouter {
             }
 
             for (Message m : msgCollection) {
-                if (othRouter.hasMessage(m.getId())) {
+                if (othRouter.hasMessage(m.getIntId())) {
                     continue; // skip messages that the other one has
                 }
 
                 double pheromone = pheromoneTable.getPheromone(other, m);
                 double utility = getUtility(other);
-                candidates.put(other, alpha*pheromone + beta*utility);
+                DTNHost bestForwarder = candidates.put(other,
+                        alpha*pheromone + beta*utility);
 
-                /*DTNHost bestForwarder = candidates.isEmpty() ? null :
-                        candidates.entrySet().stream()
-                                .max(Map.Entry.comparingByValue())
-                                .get().getKey();*/
-
-                DTNHost bestForwarder = Collections.max(
-                        candidates.entrySet(),
-                        Map.Entry.comparingByValue()).getKey();
-
-                if (bestForwarder.equals(other) && othRouter.getUtility(m.getTo()) > getUtility(m.getTo())) {
+                if (!bestForwarder.equals(other)) {
+                    continue;
+                }
+                double othUtility = othRouter.getUtility(m.getTo());
+                if (othUtility > getUtility(m.getTo())) {
                     // the other node has higher probability of delivery
-                    messages.add(new Tuple<Message, Connection>(m,con));
+                    forwarding.add(m, con, othUtility);
                 }
             }
         }
 
-        if (messages.size() == 0) {
+        if (forwarding.size() == 0) {
             return null;
         }
 
-        // sort the message-connection tuples
-        Collections.sort(messages, new CulturalACORouter.TupleComparator());
-        return tryMessagesForConnected(messages);	// try to send messages
+        // bigger utility by the other host should come first
+        sortByScore(forwarding);
+        return tryForwardingCandidates(forwarding);	// try to send messages
     }
 
     /**
-     * Comparator for Message-Connection-Tuples that orders the tuples by
-     * their delivery probability by the host on the other side of the
-     * connection (GRTRMax)
+     * Latest forwarding values of the connected hosts with a running
+     * maximum. The maximum is searched again only when the value of the
+     * current best host decreases. Of equal values the host that got its
+     * value first is the best. The hosts' positions are looked up by their
+     * addresses.
      */
-    private class TupleComparator implements Comparator
-            <Tuple<Message, Connection>> {
-
-        public int compare(Tuple<Message, Connection> tuple1,
-                           Tuple<Message, Connection> tuple2) {
-            // delivery probability of tuple1's message with tuple1's connection
-            double p1 = ((CulturalACORouter)tuple1.getValue().
-                    getOtherNode(getHost()).getRouter()).getUtility(
-                    tuple1.getKey().getTo());
-            // -"- tuple2...
-            double p2 = ((CulturalACORouter)tuple2.getValue().
-                    getOtherNode(getHost()).getRouter()).getUtility(
-                    tuple2.getKey().getTo());
-
-            // bigger probability should come first
-            if (p2-p1 == 0) {
-                /* equal probabilities -> let queue mode decide */
-                return compareByQueueMode(tuple1.getKey(), tuple2.getKey());
+    private static class Candidates {
+        private final List<DTNHost> hosts = new ArrayList<DTNHost>();
+        private double[] values = new double[4];
+        /** positions of the hosts plus one by their addresses (0 = none) */
+        private int[] positions = new int[0];
+        private int best = -1;
+
+        /**
+         * Sets the value of a host
+         * @param host The host
+         * @param value The new value
+         * @return The host with the largest value
+         */
+        public DTNHost put(DTNHost host, double value) {
+            int address = host.getAddress();
+            if (address >= positions.length) {
+                positions = Arrays.copyOf(positions,
+                        Math.max(address + 1, 2 * positions.length));
+            }
+            int i = positions[address] - 1;
+            if (i < 0) {
+                i = hosts.size();
+                hosts.add(host);
+                positions[address] = i + 1;
+                if (i == values.length) {
+                    values = Arrays.copyOf(values, 2 * i);
+                }
             }
-            else if (p2-p1 < 0) {
-                return -1;
+            double old = values[i];
+            values[i] = value;
+
+            if (best < 0 || value > values[best]) {
+                best = i;
+            } else if (i == best && value < old) {
+                best = 0;
+                for (int j = 1, n = hosts.size(); j < n; j++) {
+                    if (values[j] > values[best]) {
+                        best = j;
+                    }
+                }
             }
-            else {
-                return 1;
+            return hosts.get(best);
+        }
+
+        /**
+         * Removes all hosts and their values
+         */
+        public void clear() {
+            for (int i = 0, n = hosts.size(); i < n; i++) {
+                positions[hosts.get(i).getAddress()] = 0;
+                values[i] = 0;
             }
+            hosts.clear();
+            best = -1;
         }
     }
 
@@ -9,15 +9,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
+import routing.maxprop.MeetingProbabilityTable;
+import routing.util.ForwardingCandidates;
 import routing.util.RoutingInfo;
-import util.Tuple;
+import util.IdSet;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -48,17 +47,24 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private MeetingProbabilitySet probs;
 	/** meeting probabilities of all hosts from this host's point of view
 	 * mapped using host's network address */
-	private Map<Integer, MeetingProbabilitySet> allProbs;
+	private MeetingProbabilityTable allProbs;
+	/** versions of the other hosts' meeting probability tables at the last
+	 * exchange, mapped using host's network address */
+	private Map<Integer, Long> allProbsVersions;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** Integer IDs of the messages that are known to have reached the
+	 * final dst */
+	private IdSet ackedMessageIds;
+	/** versions of the other hosts' ACKed message ID sets at the last
+	 * exchange, mapped using host's network address */
+	private Map<Integer, Long> ackedVersions;
+	/** true if the buffer may have ACKed messages that were not deleted at
+	 * the last exchange */
+	private boolean ackedInBuffer;
+	/** true if the costs calculated so far are valid. This should be set to
+	 * false always when the meeting probabilities change (a host is met) */
+	private boolean costsValid;
 
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -120,9 +126,12 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		this.timescale = r.timescale;
 		this.probs = new MeetingProbabilitySet(
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
-		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
-		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.allProbs = new MeetingProbabilityTable();
+		this.allProbsVersions = new HashMap<Integer, Long>();
+		this.dijkstra = new MaxPropDijkstra(this.allProbs.getSets());
+		this.ackedMessageIds = new IdSet();
+		this.ackedVersions = new HashMap<Integer, Long>();
+		this.ackedInBuffer = false;
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
 	}
@@ -145,7 +154,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.costsValid = false; // invalidate old cost estimates
 
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -167,22 +176,26 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				}
 
 				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
-				deleteAckedMessages();
-				otherRouter.deleteAckedMessages();
+				this.deleteAckedMessages(this.syncAcks(otherRouter));
+				otherRouter.deleteAckedMessages(otherRouter.syncAcks(this));
+				this.ackedVersions.put(otherHost.getAddress(),
+						otherRouter.ackedMessageIds.getVersion());
 
 				/* update both meeting probabilities */
 				probs.updateMeetingProbFor(otherHost.getAddress());
 				otherRouter.probs.updateMeetingProbFor(getHost().getAddress());
 
 				/* exchange the transitive probabilities */
-				this.updateTransitiveProbs(otherRouter.allProbs);
-				otherRouter.updateTransitiveProbs(this.allProbs);
+				this.updateTransitiveProbs(otherRouter);
+				otherRouter.updateTransitiveProbs(this);
 				this.allProbs.put(otherHost.getAddress(),
 						otherRouter.probs.replicate());
 				otherRouter.allProbs.put(getHost().getAddress(),
 						this.probs.replicate());
+				this.allProbsVersions.put(otherHost.getAddress(),
+						otherRouter.allProbs.getVersion());
+				otherRouter.allProbsVersions.put(getHost().getAddress(),
+						this.allProbs.getVersion());
 			}
 		}
 		else {
@@ -193,18 +206,14 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 
 	/**
 	 * Updates transitive probability values by replacing the current
-	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
-	 * @param p Mapping of the values of the other host
+	 * MeetingProbabilitySets with the sets of the other host if the given
+	 * sets have more recent updates. Only the sets that the other host has
+	 * got after the previous exchange with it are looked at.
+	 * @param other The router of the other host
 	 */
-	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
-		for (Map.Entry<Integer, MeetingProbabilitySet> e : p.entrySet()) {
-			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey());
-			if (myMps == null ||
-				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
-			}
-		}
+	private void updateTransitiveProbs(MaxPropRouterWithEstimation other) {
+		Long since = this.allProbsVersions.get(other.getHost().getAddress());
+		this.allProbs.updateFrom(other.allProbs, since == null ? 0 : since);
 	}
 
 	/**
@@ -319,24 +328,68 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		probs.setAlpha(alpha);
 	}
 
+	/**
+	 * Adds the ACKed message IDs of the other router to this router's set.
+	 * Only the IDs added to the other set after the previous exchange with
+	 * it are looked at.
+	 * @param other The other router
+	 * @return The IDs that were new to this router
+	 */
+	private int[] syncAcks(MaxPropRouterWithEstimation other) {
+		Integer address = other.getHost().getAddress();
+		Long since = this.ackedVersions.get(address);
+		int[] newIds = this.ackedMessageIds.addAll(other.ackedMessageIds,
+				since == null ? 0 : since);
+		this.ackedVersions.put(address, other.ackedMessageIds.getVersion());
+		return newIds;
+	}
+
 	/**
 	 * Deletes the messages from the message buffer that are known to be ACKed
+	 * @param newIds IDs that were just ACKed. Messages ACKed earlier are
+	 * looked for only if some of them may have been left in the buffer.
 	 */
-	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+	private void deleteAckedMessages(int[] newIds) {
+		if (this.ackedInBuffer) {
+			this.ackedInBuffer = false;
+			Message[] messages = getMessageCollection().toArray(
+					new Message[0]);
+			for (Message m : messages) {
+				if (this.ackedMessageIds.contains(m.getIntId())) {
+					deleteAckedMessage(m);
+				}
+			}
+			return;
+		}
+
+		for (int id : newIds) {
+			Message m = getMessage(id);
+			if (m != null) {
+				deleteAckedMessage(m);
 			}
 		}
 	}
 
+	/**
+	 * Deletes an ACKed message from the buffer unless it is being sent
+	 * @param m The message
+	 */
+	private void deleteAckedMessage(Message m) {
+		if (isSending(m.getId())) {
+			this.ackedInBuffer = true; // try again at the next exchange
+		} else {
+			this.deleteMessage(m.getId(), false);
+		}
+	}
+
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(m.getIntId());
+		} else if (this.ackedMessageIds.contains(m.getIntId())) {
+			this.ackedInBuffer = true;
 		}
 		return m;
 	}
@@ -352,7 +405,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m.getIntId()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
@@ -388,7 +441,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 
 	/**
 	 * Returns the next message that should be dropped, according to MaxProp's
-	 * message ordering scheme (see MaxPropTupleComparator).
+	 * message ordering scheme (see MaxPropCandidateOrder).
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the next-to-be-dropped check (i.e., if next message to
 	 * drop is being sent, the following message is returned)
@@ -398,19 +451,22 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
 		Collection<Message> messages = this.getMessageCollection();
-		List<Message> validMessages = new ArrayList<Message>();
+		MaxPropComparator comparator =
+			new MaxPropComparator(this.calcThreshold());
+		Message last = null;
 
+		/* the last message in the MaxProp order (of equal ones the one
+		 * that comes last in the collection) */
 		for (Message m : messages) {
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			validMessages.add(m);
+			if (last == null || comparator.compare(m, last) >= 0) {
+				last = m;
+			}
 		}
 
-		Collections.sort(validMessages,
-				new MaxPropComparator(this.calcThreshold()));
-
-		return validMessages.get(validMessages.size()-1); // return last message
+		return last;
 	}
 
 	@Override
@@ -431,8 +487,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host,
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. Paths are calculated only as far as
+	 * needed and reused until the meeting probabilities change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or
@@ -440,39 +496,25 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+		if (!this.costsValid) {
+			/* cached costs are invalid -> calculate new costs when asked */
 			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-
-			/* calculate paths only to nodes we have messages to
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			this.dijkstra.invalidate();
+			this.costsValid = true;
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		return dijkstra.getCost(from.getAddress(), to.getAddress());
 	}
 
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
 	 * hop counts and their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * @return The return value of
+	 * {@link #tryForwardingCandidates(ForwardingCandidates)}
 	 */
-	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages =
-			new ArrayList<Tuple<Message, Connection>>();
+	private Connection tryOtherMessages() {
+		ForwardingCandidates candidates = getForwardingCandidates();
+		int threshold = calcThreshold();
 
 		Collection<Message> msgCollection = getMessageCollection();
 
@@ -489,22 +531,23 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+				if (othRouter.hasMessage(m.getIntId()) ||
+						m.hasPassed(other)) {
 					continue;
 				}
-				messages.add(new Tuple<Message, Connection>(m,con));
+				candidates.add(m, con, m.getHopCount() < threshold ? 0 :
+					getCost(other, m.getTo()));
 			}
 		}
 
-		if (messages.size() == 0) {
+		if (candidates.size() == 0) {
 			return null;
 		}
 
-		/* sort the message-connection tuples according to the criteria
-		 * defined in MaxPropTupleComparator */
-		Collections.sort(messages, new MaxPropTupleComparator(calcThreshold()));
-		return tryMessagesForConnected(messages);
+		/* sort the candidates according to the criteria defined in
+		 * MaxPropCandidateOrder */
+		candidates.sort(new MaxPropCandidateOrder(threshold));
+		return tryForwardingCandidates(candidates);
 	}
 
 	/**
@@ -586,19 +629,6 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			this.from1 = this.from2 = getHost();
 		}
 
-		/**
-		 * Constructor.
-		 * @param treshold Messages with the hop count smaller than this
-		 * value are transferred first (and ordered by the hop count)
-		 * @param from1 The host where the cost of msg1 is calculated from
-		 * @param from2 The host where the cost of msg2 is calculated from
-		 */
-		public MaxPropComparator(int treshold, DTNHost from1, DTNHost from2) {
-			this.threshold = treshold;
-			this.from1 = from1;
-			this.from2 = from2;
-		}
-
 		/**
 		 * Compares two messages and returns -1 if the first given message
 		 * should be first in order, 1 if the second message should be first
@@ -659,32 +689,50 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Message-Connection tuple comparator for the MaxProp routing
-	 * module. Uses MaxPropComparator on the messages of the tuples
-	 * setting the "from" host for that message to be the one in the connection
-	 * tuple (i.e., path is calculated starting from the host on the other end
-	 * of the connection).
+	 * Order of the forwarding candidates for the MaxProp routing module.
+	 * Orders the candidates the same way as {@link MaxPropComparator} with
+	 * the "from" host of each message being the host on the other end of the
+	 * candidate's connection (i.e., path is calculated starting from that
+	 * host). The costs of the paths are the candidates' scores (calculated
+	 * only for the messages that have at least the threshold hop count).
+	 * Unlike with the comparator, the same message offered through two
+	 * connections is ordered by the costs, so the order stays consistent.
 	 */
-	private class MaxPropTupleComparator
-			implements Comparator <Tuple<Message, Connection>>  {
+	private class MaxPropCandidateOrder implements ForwardingCandidates.Order {
 		private int threshold;
 
-		public MaxPropTupleComparator(int threshold) {
+		public MaxPropCandidateOrder(int threshold) {
 			this.threshold = threshold;
 		}
 
-		/**
-		 * Compares two message-connection tuples using the
-		 * {@link MaxPropComparator#compare(Message, Message)}.
-		 */
-		public int compare(Tuple<Message, Connection> tuple1,
-				Tuple<Message, Connection> tuple2) {
-			MaxPropComparator comp;
-			DTNHost from1 = tuple1.getValue().getOtherNode(getHost());
-			DTNHost from2 = tuple2.getValue().getOtherNode(getHost());
-
-			comp = new MaxPropComparator(threshold, from1, from2);
-			return comp.compare(tuple1.getKey(), tuple2.getKey());
+		public int compare(ForwardingCandidates c, int i, int j) {
+			Message msg1 = c.getMessage(i);
+			Message msg2 = c.getMessage(j);
+			int hopc1 = msg1.getHopCount();
+			int hopc2 = msg2.getHopCount();
+
+			/* messages below the threshold first, ordered by hop count */
+			if (hopc1 < threshold && hopc2 >= threshold) {
+				return -1;
+			}
+			else if (hopc2 < threshold && hopc1 >= threshold) {
+				return 1;
+			}
+			if (hopc1 < threshold && hopc2 < threshold) {
+				return hopc1 - hopc2;
+			}
+
+			/* the one with lower cost first; hop count and queue mode
+			 * break ties */
+			double p1 = c.getScore(i);
+			double p2 = c.getScore(j);
+			if (p1 == p2) {
+				if (hopc1 == hopc2) {
+					return compareByQueueMode(msg1, msg2);
+				}
+				return hopc1 - hopc2;
+			}
+			return (p1 < p2 ? -1 : 1);
 		}
 	}
 
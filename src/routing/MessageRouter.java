@@ -4,10 +4,12 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -20,7 +22,10 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import routing.util.ForwardingCandidates;
+import routing.util.MessageBuffer;
 import routing.util.RoutingInfo;
+import util.IdSet;
 import util.Tuple;
 
 /**
@@ -46,6 +51,14 @@ public abstract class MessageRouter {
 	 * </UL>
 	 */
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
+	/**
+	 * Message buffer drop policy -setting id ({@value}). Defines which
+	 * messages are dropped first when the buffer is full. Valid values are
+	 * FIFO (oldest received first; default), LIFO (most recently received
+	 * first), LARGEST (largest first) and TTL (the one whose TTL runs out
+	 * first). See {@link MessageBuffer}.
+	 */
+	public static final String DROP_POLICY_S = "dropPolicy";
 
 	/** Setting value for random queue mode */
 	public static final int Q_MODE_RANDOM = 1;
@@ -85,14 +98,18 @@ public abstract class MessageRouter {
 	public static final int MAX_TTL_VALUE = 35791394;
 
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred */
+	private ArrayList<Message> incomingMessages;
+	/** The previous hops of the messages being transferred */
+	private ArrayList<DTNHost> incomingFrom;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages;
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	private MessageBuffer messages;
+	/** The integer IDs of the messages this router has received as the
+	 * final recipient */
+	private IdSet deliveredMessages;
+	/** The integer IDs of the messages that Applications on this router have
+	 * blacklisted */
+	private IdSet blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -101,6 +118,10 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** Order of forwarding candidates by the queue mode */
+	private ForwardingCandidates.Order queueModeOrder;
+	/** Name of the message buffer drop policy */
+	private String dropPolicy;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
@@ -149,6 +170,12 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
+
+		this.dropPolicy = s.getSetting(DROP_POLICY_S, null);
+		if (dropPolicy != null && !MessageBuffer.isValidPolicy(dropPolicy)) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(DROP_POLICY_S));
+		}
 	}
 
 	/**
@@ -159,12 +186,18 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.incomingMessages = new ArrayList<Message>(1);
+		this.incomingFrom = new ArrayList<DTNHost>(1);
+		this.messages = new MessageBuffer(this.dropPolicy);
+		this.deliveredMessages = new IdSet();
+		this.blacklistedMessages = new IdSet();
 		this.mListeners = mListeners;
 		this.host = host;
+		this.queueModeOrder = new ForwardingCandidates.Order() {
+			public int compare(ForwardingCandidates c, int i, int j) {
+				return compareByQueueMode(c.getMessage(i), c.getMessage(j));
+			}
+		};
 	}
 
 	/**
@@ -175,6 +208,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.dropPolicy = r.dropPolicy;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -209,7 +243,17 @@ public abstract class MessageRouter {
 	 * @return The message
 	 */
 	protected Message getMessage(String id) {
-		return this.messages.get(id);
+		return this.messages.get(Message.getIntId(id));
+	}
+
+	/**
+	 * Returns a message by integer ID.
+	 * @param intId Integer ID of the message
+	 * @return The message or null if it is not in the buffer
+	 * @see Message#getIntId()
+	 */
+	protected Message getMessage(int intId) {
+		return this.messages.get(intId);
 	}
 
 	/**
@@ -218,7 +262,18 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	public boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(Message.getIntId(id));
+	}
+
+	/**
+	 * Checks if this router has a message with certain integer id buffered.
+	 * Faster than {@link #hasMessage(String)} if the integer id is at hand.
+	 * @param intId Integer identifier of the message
+	 * @return True if the router has message with this id, false if not
+	 * @see Message#getIntId()
+	 */
+	public boolean hasMessage(int intId) {
+		return this.messages.contains(intId);
 	}
 
 	/**
@@ -230,7 +285,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.contains(m.getIntId()));
 	}
 
 	/**
@@ -243,7 +298,7 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		return this.blacklistedMessages.contains(Message.getIntId(id));
 	}
 
 	/**
@@ -252,10 +307,12 @@ public abstract class MessageRouter {
 	 * could be deleted (or added) while iterating through the collection, a
 	 * copy of the collection should be made to avoid concurrent modification
 	 * exceptions.
+	 * The collection is a read-only view: messages can't be removed through
+	 * it or its iterators.
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
 	}
 
 	/**
@@ -282,17 +339,20 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public long getFreeBufferSize() {
-		long occupancy = 0;
-
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
+		return this.getBufferSize() - this.messages.getOccupancy();
+	}
 
-		return this.getBufferSize() - occupancy;
+	/**
+	 * Returns the buffered messages in the order they should be dropped
+	 * in (as defined by the {@link #DROP_POLICY_S} setting)
+	 * @return Iterator over the messages, next message to drop first
+	 */
+	protected Iterator<Message> getMessagesInDropOrder() {
+		return this.messages.dropOrder();
 	}
 
 	/**
@@ -391,11 +451,11 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.add(incoming.getIntId());
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.add(incoming.getIntId());
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -413,7 +473,29 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int i = indexOfIncoming(m.getIntId(), from);
+		if (i >= 0) {
+			this.incomingMessages.set(i, m);
+		} else {
+			this.incomingMessages.add(m);
+			this.incomingFrom.add(from);
+		}
+	}
+
+	/**
+	 * Returns the index of a message in the incoming messages buffer
+	 * @param intId Integer ID of the message
+	 * @param from The previous hop of the message or null for any host
+	 * @return The index or -1 if there is no such message
+	 */
+	private int indexOfIncoming(int intId, DTNHost from) {
+		for (int i = 0, n = incomingMessages.size(); i < n; i++) {
+			if (incomingMessages.get(i).getIntId() == intId &&
+					(from == null || incomingFrom.get(i) == from)) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	/**
@@ -424,7 +506,12 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int i = indexOfIncoming(Message.getIntId(id), from);
+		if (i < 0) {
+			return null;
+		}
+		this.incomingFrom.remove(i);
+		return this.incomingMessages.remove(i);
 	}
 
 	/**
@@ -434,7 +521,7 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		return indexOfIncoming(Message.getIntId(id), null) >= 0;
 	}
 
 	/**
@@ -445,7 +532,7 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -460,7 +547,7 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
-		Message m = this.messages.remove(id);
+		Message m = this.messages.remove(Message.getIntId(id));
 		return m;
 	}
 
@@ -564,6 +651,26 @@ public abstract class MessageRouter {
 		return list;
 	}
 
+	/**
+	 * Sorts/shuffles the given forwarding candidates according to the current
+	 * sending queue mode. The resulting order is the same that
+	 * {@link #sortByQueueMode(List)} gives for a list of the candidates.
+	 * @param candidates The candidates to sort or shuffle
+	 */
+	protected void sortByQueueMode(ForwardingCandidates candidates) {
+		switch (sendQueueMode) {
+		case Q_MODE_RANDOM:
+			candidates.shuffle(SimClock.getIntTime());
+			break;
+		case Q_MODE_FIFO:
+			candidates.sort(queueModeOrder);
+			break;
+		/* add more queue modes here */
+		default:
+			throw new SimError("Unknown queue mode " + sendQueueMode);
+		}
+	}
+
 	/**
 	 * Gives the order of the two given messages as defined by the current
 	 * queue mode
@@ -611,14 +718,10 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 
-		for (Message m : this.incomingMessages.values()) {
+		for (Message m : this.incomingMessages) {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 
-		for (Message m : this.deliveredMessages.values()) {
-			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
-		}
-
 		for (Connection c : host.getConnections()) {
 			cons.addMoreInfo(new RoutingInfo(c));
 		}
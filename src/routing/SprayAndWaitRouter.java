@@ -28,6 +28,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	/** Message property key */
 	public static final String MSG_COUNT_PROPERTY = SPRAYANDWAIT_NS + "." +
 		"copies";
+	/** Message property slot of {@link #MSG_COUNT_PROPERTY} */
+	protected static final int MSG_COUNT_SLOT =
+		Message.getPropertySlot(MSG_COUNT_PROPERTY);
 
 	protected int initialNrofCopies;
 	protected boolean isBinary;
@@ -58,9 +61,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message msg = super.messageTransferred(id, from);
-		Integer nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		int nrofCopies = msg.getInt(MSG_COUNT_SLOT);
 
-		assert nrofCopies != null : "Not a SnW message: " + msg;
+		assert msg.hasProperty(MSG_COUNT_SLOT) : "Not a SnW message: " + msg;
 
 		if (isBinary) {
 			/* in binary S'n'W the receiving node gets floor(n/2) copies */
@@ -71,7 +74,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 			nrofCopies = 1;
 		}
 
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setInt(MSG_COUNT_SLOT, nrofCopies);
 		return msg;
 	}
 
@@ -80,7 +83,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		makeRoomForNewMessage(msg.getSize());
 
 		msg.setTtl(this.msgTtl);
-		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
+		msg.addInt(MSG_COUNT_SLOT, initialNrofCopies);
 		addToMessages(msg, true);
 		return true;
 	}
@@ -116,10 +119,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		List<Message> list = new ArrayList<Message>();
 
 		for (Message m : getMessageCollection()) {
-			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
-			assert nrofCopies != null : "SnW message " + m + " didn't have " +
-				"nrof copies property!";
-			if (nrofCopies > 1) {
+			assert m.hasProperty(MSG_COUNT_SLOT) : "SnW message " + m +
+				" didn't have nrof copies property!";
+			if (m.getInt(MSG_COUNT_SLOT) > 1) {
 				list.add(m);
 			}
 		}
@@ -136,7 +138,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	 */
 	@Override
 	protected void transferDone(Connection con) {
-		Integer nrofCopies;
+		int nrofCopies;
 		String msgId = con.getMessage().getId();
 		/* get this router's copy of the message */
 		Message msg = getMessage(msgId);
@@ -146,7 +148,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 
 		/* reduce the amount of copies left */
-		nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		nrofCopies = msg.getInt(MSG_COUNT_SLOT);
 		if (isBinary) {
 			/* in binary S'n'W the sending node keeps ceil(n/2) copies */
 			nrofCopies = (int)Math.ceil(nrofCopies/2.0);
@@ -154,7 +156,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		else {
 			nrofCopies--;
 		}
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setInt(MSG_COUNT_SLOT, nrofCopies);
 	}
 
 	@Override
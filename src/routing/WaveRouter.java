@@ -4,8 +4,8 @@
  */
 package routing;
 
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import routing.util.RoutingInfo;
@@ -80,14 +80,15 @@ public class WaveRouter extends ActiveRouter {
 	}
 
 	/**
-	 * Returns the oldest message that has been already sent forward
+	 * Returns the next message to drop (by the drop policy) that has been
+	 * already sent forward
 	 */
 	@Override
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
+		Iterator<Message> it = getMessagesInDropOrder();
 
-		for (Message m : messages) {
+		while (it.hasNext()) {
+			Message m = it.next();
 			Double custodyStartTime = this.custodyMessages.get(m.getId());
 			if (custodyStartTime != null) {
 				if (SimClock.getTime() >
@@ -103,15 +104,10 @@ public class WaveRouter extends ActiveRouter {
 				continue; /* skip the message(s) that router is sending */
 			}
 
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+			return m;
 		}
 
-		return oldest;
+		return null;
 	}
 
 	@Override
@@ -4,54 +4,146 @@ import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
+import core.SettingsError;
+import core.SimClock;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 public class Pheromone {
-    protected Map<DTNHost, Map<DTNHost, Double>> pheromoneTable;
+    /** Message property key for the destination of a backward ant */
+    public static final String DESTINATION_PROPERTY = "destination";
+    /** Message property key for the path length of a backward ant */
+    public static final String PATH_LENGTH_PROPERTY = "pathLength";
+    /** Message property slots of the keys above */
+    private static final int DESTINATION_SLOT =
+            Message.getPropertySlot(DESTINATION_PROPERTY);
+    private static final int PATH_LENGTH_SLOT =
+            Message.getPropertySlot(PATH_LENGTH_PROPERTY);
+
+    /**
+     * Pheromone values indexed by the destination's and the peer's
+     * address. A row is created when the first backward ant of the
+     * destination is created and grows up to the largest peer address.
+     */
+    protected double[][] pheromoneTable;
+    /** Simulation times when the values of the table were last set */
+    protected double[][] lastTouched;
 
     public static final String EVAPORATION_RATE_SETTINGS = "evaporationRate";   // Bobot evaporasi Pheromone
+    /**
+     * Length of the evaporation time unit in seconds -setting id
+     * ({@value}). Pheromone evaporates {@link #EVAPORATION_RATE_SETTINGS}
+     * of its value in every time unit. Default is
+     * {@link #DEF_EVAPORATION_TIME_UNIT}.
+     */
+    public static final String EVAPORATION_TIME_UNIT_SETTINGS =
+            "evaporationTimeUnit";
+    /** Default evaporation time unit ({@value}) */
+    public static final double DEF_EVAPORATION_TIME_UNIT = 30;
 
     protected static double EVAPORATION_RATE = 0.1;
+    protected double evaporationTimeUnit;
 
     public Pheromone(Settings s) {
-        pheromoneTable = new HashMap<DTNHost, Map<DTNHost, Double>>();
+        pheromoneTable = new double[0][];
+        lastTouched = new double[0][];
         if(s.contains(EVAPORATION_RATE_SETTINGS)){
             EVAPORATION_RATE =s.getDouble(EVAPORATION_RATE_SETTINGS);
         }
+        evaporationTimeUnit = s.getDouble(EVAPORATION_TIME_UNIT_SETTINGS,
+                DEF_EVAPORATION_TIME_UNIT);
+        if (evaporationTimeUnit <= 0) {
+            throw new SettingsError("Invalid value (" + evaporationTimeUnit +
+                    ") for setting " + EVAPORATION_TIME_UNIT_SETTINGS +
+                    ": the time unit must be positive");
+        }
     }
 
     public void createPheromoneTable(Message m) {
-        m.addProperty("destination", m.getTo());
-        m.addProperty("pathLength", (double) m.getHopCount());
-        pheromoneTable.putIfAbsent((DTNHost) m.getProperty("destination"), new HashMap<>());
+        m.addProperty(DESTINATION_PROPERTY, m.getTo());
+        m.addDouble(PATH_LENGTH_SLOT, m.getHopCount());
+        int dest = m.getTo().getAddress();
+        if (dest >= pheromoneTable.length) {
+            double[][] newTable = new double[dest + 1][];
+            double[][] newTouched = new double[dest + 1][];
+            System.arraycopy(pheromoneTable, 0, newTable, 0,
+                    pheromoneTable.length);
+            System.arraycopy(lastTouched, 0, newTouched, 0,
+                    lastTouched.length);
+            pheromoneTable = newTable;
+            lastTouched = newTouched;
+        }
+        if (pheromoneTable[dest] == null) {
+            pheromoneTable[dest] = new double[0];
+            lastTouched[dest] = new double[0];
+        }
     }
 
     public double getPheromone(DTNHost peer, Message m) {
-        if(m.getProperty("destination")==null){
+        DTNHost dest = (DTNHost) m.getProperty(DESTINATION_SLOT);
+        if(dest==null){
+            return 0.0;
+        }
+        return evaporated(dest.getAddress(), peer.getAddress());
+    }
+
+    /**
+     * Returns the current (evaporated) pheromone value of a table entry.
+     * The values are stored as they were when last set and the evaporation
+     * since then is applied when they are read.
+     * @param dest Address of the destination
+     * @param peer Address of the peer
+     * @return The pheromone value (0 for unknown destinations and peers)
+     */
+    private double evaporated(int dest, int peer) {
+        if (dest >= pheromoneTable.length || pheromoneTable[dest] == null) {
             return 0.0;
         }
-        return pheromoneTable.get((DTNHost) m.getProperty("destination")).getOrDefault(peer, 0.0);
+        double[] row = pheromoneTable[dest];
+        if (peer >= row.length || row[peer] == 0) {
+            return 0.0;
+        }
+        double timeDiff = (SimClock.getTime() - lastTouched[dest][peer]) /
+                evaporationTimeUnit;
+        if (timeDiff == 0) {
+            return row[peer];
+        }
+        return row[peer] * Math.pow(1 - EVAPORATION_RATE, timeDiff);
     }
 
     public void updatePheromone(DTNHost thisHost, DTNHost from, Message m) {
-        for(Connection con : thisHost.getConnections()) {
-            DTNHost neighbor = con.getOtherNode(thisHost);
-            if(m.getProperty("pathLength")==null){
-                return;
-            } else{
-                double pathLength = (Double) m.getProperty("pathLength");
-                //sSystem.out.println(pathLength);
-                //if(pheromoneTable.get((DTNHost) m.getProperty("destination")).containsValue(neighbor)) {}
-                //if(pheromoneTable.get(neighbor).containsKey(m.getProperty("destination"))) {}
-                double currentPheromone = getPheromone(neighbor, m);
-                double newPheromone = (1 - EVAPORATION_RATE)*(currentPheromone +  (1.0/pathLength));
-                if(neighbor.equals(from)) {
-                    pheromoneTable.get((DTNHost) m.getProperty("destination")).put(neighbor, newPheromone);
-            }
+        if (!m.hasProperty(PATH_LENGTH_SLOT)) {
+            return;
+        }
+        int dest = ((DTNHost) m.getProperty(DESTINATION_SLOT)).getAddress();
+        double deposit = 1.0 / m.getDouble(PATH_LENGTH_SLOT);
 
+        List<Connection> connections = thisHost.getConnections();
+        for (int i = 0, n = connections.size(); i < n; i++) {
+            if (connections.get(i).getOtherNode(thisHost) != from) {
+                continue;
             }
+            int p = from.getAddress();
+            double current = evaporated(dest, p);
+            ensureColumn(dest, p);
+            pheromoneTable[dest][p] = current + deposit;
+            lastTouched[dest][p] = SimClock.getTime();
+        }
+    }
+
+    /**
+     * Makes sure the destination's rows have a column for the peer address
+     */
+    private void ensureColumn(int dest, int peer) {
+        double[] row = pheromoneTable[dest];
+        if (peer >= row.length) {
+            int size = Math.max(peer + 1, 2 * row.length);
+            double[] newRow = new double[size];
+            double[] newTouched = new double[size];
+            System.arraycopy(row, 0, newRow, 0, row.length);
+            System.arraycopy(lastTouched[dest], 0, newTouched, 0, row.length);
+            pheromoneTable[dest] = newRow;
+            lastTouched[dest] = newTouched;
         }
     }
 }
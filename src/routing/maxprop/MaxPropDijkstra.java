@@ -4,35 +4,31 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The searches are done lazily: a search from a source node goes on only
+ * as far as needed to find the costs asked so far and is continued from the
+ * same state when a cost to a farther node is asked. The searches stay valid
+ * until {@link #invalidate()} is called (i.e., until the meeting
+ * probabilities change).
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
+	/** Searches from the source nodes since the last invalidation */
+	private Map<Integer, Search> searches;
+	/** Searches that can be reused */
+	private List<Search> freeSearches;
 
 	/**
 	 * Constructor.
@@ -41,184 +37,252 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.searches = new HashMap<Integer, Search>();
+		this.freeSearches = new ArrayList<Search>();
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
+	 * Discards the results of the searches so far. Must be called when the
+	 * meeting probabilities have changed.
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+	public void invalidate() {
+		freeSearches.addAll(searches.values());
+		searches.clear();
 	}
 
 	/**
-	 * Calculates total costs to the given set of target nodes. The cost to
+	 * Calculates the total cost from a node to another. The cost to
 	 * a node is the sum of complements of probabilities that all the links
 	 * come up as the next contact of the nodes.
 	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @return The cost or Double.MAX_VALUE if there is no known path
+	 */
+	public double getCost(int from, int to) {
+		Search s = searches.get(from);
+		if (s == null) {
+			if (freeSearches.isEmpty()) {
+				s = new Search();
+			} else {
+				s = freeSearches.remove(freeSearches.size() - 1);
+			}
+			s.initWith(from);
+			searches.put(from, s);
+		}
+		return s.costTo(to);
+	}
+
+	/**
+	 * Calculates total costs to the given set of target nodes.
+	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
-	 * @return A map of (destination node, cost) tuples
+	 * @return A map of (destination node, cost) tuples for the nodes that
+	 * have a known path
+	 * @see #getCost(int, int)
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-
-		initWith(from);
-		Integer node = null;
-
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
+		for (Integer node : to) {
+			double cost = getCost(from, node);
+			if (cost != INFINITY) {
+				distMap.put(node, cost);
 			}
-
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
 		}
-
 		return distMap;
 	}
 
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * State of a search from one source node. All arrays are indexed by
+	 * node addresses, except the heap of unvisited nodes.
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	private class Search {
+		/** distances from the source node */
+		private double[] dist;
+		/** nodes whose shortest distance is known */
+		private boolean[] visited;
+		/** binary min-heap of the unvisited nodes discovered so far */
+		private int[] heap;
+		private int heapSize;
+		/** indexes of the nodes in the heap (-1 if not in the heap) */
+		private int[] heapIndex;
+		/** nodes whose distance has been set (for resetting) */
+		private int[] touched;
+		private int nrofTouched;
 
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
+		private Search() {
+			this.dist = new double[0];
+			this.visited = new boolean[0];
+			this.heapIndex = new int[0];
+			this.heap = new int[16];
+			this.touched = new int[16];
 		}
 
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
+		/**
+		 * Initializes a new search with the first hop router node
+		 * @param firstHop The first hop router node
+		 */
+		private void initWith(int firstHop) {
+			for (int i = 0; i < nrofTouched; i++) {
+				int n = touched[i];
+				dist[n] = INFINITY;
+				visited[n] = false;
+				heapIndex[n] = -1;
 			}
+			nrofTouched = 0;
+			heapSize = 0;
 
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-
-			if (distancesFromStart.get(n) > nDist) {
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
-			}
+			setDistance(firstHop, 0);
 		}
-	}
-
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-
-	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
-	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
-	}
-
-	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
 
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * Returns the cost to a node. Continues the search until the node
+		 * is visited or there are no more nodes to visit.
 		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
+		private double costTo(int node) {
+			if (node < visited.length && visited[node]) {
+				return dist[node];
+			}
 
-			if (dist1 > dist2) {
-				return 1;
+			// always take the node with shortest distance
+			while (heapSize > 0) {
+				int n = poll();
+				visited[n] = true; // mark the node as visited
+				relax(n);          // add/update neighbor nodes' distances
+				if (n == node) {
+					return dist[n];
+				}
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			return INFINITY; // no path
+		}
+
+		/**
+		 * Relaxes the neighbors of a node (updates the shortest distances).
+		 * @param node The node whose neighbors are relaxed
+		 */
+		private void relax(int node) {
+			MeetingProbabilitySet mps = probs.get(node);
+			if (mps == null) {
+				return; // node's neighbors are not known
 			}
-			else {
-				return node1.compareTo(node2);
+			double nodeDist = dist[node];
+
+			for (int i = 0, size = mps.size(); i < size; i++) {
+				int n = mps.getNodeAt(i);
+				ensureCapacity(n);
+				if (visited[n]) {
+					continue; // skip visited nodes
+				}
+
+				// n node's distance from path's source node; the distance
+				// between the nodes is the complement of the meeting prob.
+				double nDist = nodeDist + (1 - mps.getProbAt(i));
+
+				if (dist[n] > nDist) {
+					// stored distance > found dist -> update
+					setDistance(n, nDist);
+				}
 			}
 		}
-	}
-
-	/**
-	 * Simple Map implementation for storing distances.
-	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
 
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Sets the distance from source node to a node and moves the node
+		 * to its place in the heap
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
+		private void setDistance(int n, double distance) {
+			ensureCapacity(n);
+			if (heapIndex[n] < 0) {
+				if (dist[n] == INFINITY) {
+					if (nrofTouched == touched.length) {
+						touched = Arrays.copyOf(touched, 2 * nrofTouched);
+					}
+					touched[nrofTouched++] = n;
+				}
+				if (heapSize == heap.length) {
+					heap = Arrays.copyOf(heap, 2 * heapSize);
+				}
+				heapIndex[n] = heapSize;
+				heap[heapSize++] = n;
+			}
+			dist[n] = distance;
+			siftUp(heapIndex[n]); // distances only decrease
 		}
 
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Removes and returns the unvisited node with the shortest distance
 		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
+		private int poll() {
+			int first = heap[0];
+			heapIndex[first] = -1;
+			heapSize--;
+			if (heapSize > 0) {
+				heap[0] = heap[heapSize];
+				heapIndex[heap[0]] = 0;
+				siftDown(0);
 			}
+			return first;
 		}
 
 		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
+		 * Returns true if node1 should be visited before node2: it has a
+		 * shorter distance or, with equal distances, a smaller address
 		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		private boolean before(int node1, int node2) {
+			double dist1 = dist[node1];
+			double dist2 = dist[node2];
+			return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
+		}
+
+		private void siftUp(int i) {
+			int node = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!before(node, heap[parent])) {
+					break;
+				}
+				heap[i] = heap[parent];
+				heapIndex[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = node;
+			heapIndex[node] = i;
+		}
+
+		private void siftDown(int i) {
+			int node = heap[i];
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && before(heap[child + 1],
+						heap[child])) {
+					child++;
+				}
+				if (!before(heap[child], node)) {
+					break;
+				}
+				heap[i] = heap[child];
+				heapIndex[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = node;
+			heapIndex[node] = i;
 		}
 
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Makes the node arrays big enough for the given node
 		 */
-		public String toString() {
-			return map.toString();
+		private void ensureCapacity(int node) {
+			if (node < dist.length) {
+				return;
+			}
+			int oldLength = dist.length;
+			int length = Math.max(node + 1, 2 * oldLength);
+			dist = Arrays.copyOf(dist, length);
+			Arrays.fill(dist, oldLength, length, INFINITY);
+			visited = Arrays.copyOf(visited, length);
+			heapIndex = Arrays.copyOf(heapIndex, length);
+			Arrays.fill(heapIndex, oldLength, length, -1);
 		}
 	}
 }
@@ -4,6 +4,8 @@
  */
 package routing.maxprop;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,12 +16,24 @@ import static core.Constants.DEBUG;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * router module. The probabilities are stored in parallel arrays sorted by
+ * the node indexes. Replicates share the arrays until either of them is
+ * changed, so a replicate can be used as a cheap snapshot of the set.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** initial capacity of the arrays */
+	private static final int INITIAL_CAPACITY = 8;
+	/** indexes of the nodes that have a probability (ascending) */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * of the nodes in the same order */
+	private double[] probs;
+	/** number of nodes in the set */
+	private int size;
+	/** true if the arrays may be shared with replicates and must be copied
+	 * before changing */
+	private boolean shared;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
@@ -34,17 +48,32 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-	this.probs = new HashMap<Integer, Double>();
 	this.maxSetSize = INFINITE_SET_SIZE;
         } else {
-	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
         }
+		this.nodes = new int[INITIAL_CAPACITY];
+		this.probs = new double[INITIAL_CAPACITY];
+		this.size = 0;
+		this.shared = false;
 		this.lastUpdateTime = 0;
 	}
 
+	/**
+	 * Copy constructor. The new set shares the arrays of the given set.
+	 * @param mps The set to copy
+	 */
+	private MeetingProbabilitySet(MeetingProbabilitySet mps) {
+		this.alpha = mps.alpha;
+		this.maxSetSize = mps.maxSetSize;
+		this.nodes = mps.nodes;
+		this.probs = mps.probs;
+		this.size = mps.size;
+		this.shared = true;
+		this.lastUpdateTime = mps.lastUpdateTime;
+	}
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping and infinite set size
@@ -62,7 +91,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
 
@@ -75,38 +104,37 @@ public class MeetingProbabilitySet {
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
+        int smallest = -1;
         double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
 
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
 
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
+		for (int i = 0; i < size; i++) {
+			probs[i] = probs[i] / (1+alpha);
+            if (probs[i] < smallestValue) {
+                smallest = i;
+                smallestValue = probs[i];
             }
-
 		}
 
-        if (probs.size() >= maxSetSize) {
-            if (DEBUG) core.Debug.p("Probsize: " + probs.size() + " dropping " +
-					probs.remove(smallestEntry.getKey()));
+        if (size >= maxSetSize) {
+            if (DEBUG) core.Debug.p("Probsize: " + size + " dropping " +
+					remove(smallest));
         }
 	}
 
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		put(index, iet);
 	}
 
 	/**
@@ -115,8 +143,9 @@ public class MeetingProbabilitySet {
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int i = Arrays.binarySearch(nodes, 0, size, index);
+		if (i >= 0) {
+			return probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -125,11 +154,43 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the number of nodes that have a probability value
+	 * @return The number of nodes in the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of the i:th node (in ascending order) of the set
+	 * @param i Position of the node (0 &le; i &lt; {@link #size()})
+	 * @return The node index
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the probability of the i:th node of the set
+	 * @param i Position of the node (0 &le; i &lt; {@link #size()})
+	 * @return The probability value
+	 * @see #getNodeAt(int)
+	 */
+	public double getProbAt(int i) {
+		return this.probs[i];
+	}
+
+	/**
+	 * Returns the probabilities of this probability set as a map. The map is
+	 * a read-only copy: later changes of the set are not seen in it.
+	 * @return The probabilities mapped by node indexes
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i = 0; i < size; i++) {
+			map.put(nodes[i], probs[i]);
+		}
+		return Collections.unmodifiableMap(map);
 	}
 
 	/**
@@ -148,20 +209,64 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a replicate of the probability set. The replicate shares the
+	 * values with this set until either one is changed, so replicating is
+	 * cheap.
+	 * @return a replicate of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
-		MeetingProbabilitySet replica = new MeetingProbabilitySet(
-				this.maxSetSize, alpha);
+		this.shared = true;
+		return new MeetingProbabilitySet(this);
+	}
 
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
+	/**
+	 * Sets the probability of a node index
+	 */
+	private void put(int index, double value) {
+		int i = Arrays.binarySearch(nodes, 0, size, index);
+		if (i >= 0) {
+			makeWritable(size);
+			probs[i] = value;
+			return;
 		}
 
-		replica.lastUpdateTime = this.lastUpdateTime;
-		return replica;
+		i = -(i + 1);
+		makeWritable(size + 1);
+		System.arraycopy(nodes, i, nodes, i + 1, size - i);
+		System.arraycopy(probs, i, probs, i + 1, size - i);
+		nodes[i] = index;
+		probs[i] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the i:th node from the set
+	 * @return The index of the removed node
+	 */
+	private int remove(int i) {
+		makeWritable(size);
+		int index = nodes[i];
+		System.arraycopy(nodes, i + 1, nodes, i, size - i - 1);
+		System.arraycopy(probs, i + 1, probs, i, size - i - 1);
+		size--;
+		return index;
+	}
+
+	/**
+	 * Makes sure the arrays are not shared and have room for the given
+	 * number of nodes
+	 */
+	private void makeWritable(int capacity) {
+		if (!shared && capacity <= nodes.length) {
+			return;
+		}
+		int length = nodes.length;
+		while (length < capacity) {
+			length *= 2;
+		}
+		nodes = Arrays.copyOf(nodes, length);
+		probs = Arrays.copyOf(probs, length);
+		shared = false;
 	}
 
 	/**
@@ -170,6 +275,11 @@ public class MeetingProbabilitySet {
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		StringBuilder sb = new StringBuilder("probs: {");
+		for (int i = 0; i < size; i++) {
+			sb.append(i > 0 ? ", " : "").append(nodes[i]).append('=').
+				append(probs[i]);
+		}
+		return sb.append('}').toString();
 	}
 }
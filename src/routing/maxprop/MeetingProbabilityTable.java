@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.maxprop;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The meeting probability sets of all hosts from one host's point of view,
+ * mapped using the hosts' network addresses. The table keeps a log of the
+ * order the sets were stored in, so the sets that another table got after
+ * the previous exchange with it can be found without going through all of
+ * them.
+ */
+public class MeetingProbabilityTable {
+	/** the sets mapped using host's network address */
+	private Map<Integer, MeetingProbabilitySet> sets;
+	/** addresses of the stored sets in the order they were stored */
+	private int[] logAddresses;
+	/** versions of the table after each stored set */
+	private long[] logVersions;
+	private int logSize;
+	/** the version grows every time a set is stored */
+	private long version;
+
+	/**
+	 * Creates a new, empty table
+	 */
+	public MeetingProbabilityTable() {
+		this.sets = new HashMap<Integer, MeetingProbabilitySet>();
+		this.logAddresses = new int[16];
+		this.logVersions = new long[16];
+		this.logSize = 0;
+		this.version = 0;
+	}
+
+	/**
+	 * Returns the set of a host
+	 * @param address Address of the host
+	 * @return The set or null if the table has no set for the host
+	 */
+	public MeetingProbabilitySet get(int address) {
+		return this.sets.get(address);
+	}
+
+	/**
+	 * Stores the set of a host. The set is stored as is, so it should not be
+	 * changed afterwards unless the changes should be seen in the table.
+	 * @param address Address of the host
+	 * @param set The set
+	 */
+	public void put(int address, MeetingProbabilitySet set) {
+		this.sets.put(address, set);
+		this.version++;
+
+		if (logSize == logAddresses.length) {
+			compactLog();
+		}
+		logAddresses[logSize] = address;
+		logVersions[logSize] = version;
+		logSize++;
+	}
+
+	/**
+	 * Returns the sets of the table as a read-only map
+	 * @return The sets mapped using host's network address
+	 */
+	public Map<Integer, MeetingProbabilitySet> getSets() {
+		return Collections.unmodifiableMap(this.sets);
+	}
+
+	/**
+	 * Returns the version of the table. The version grows every time a set
+	 * is stored.
+	 * @return The version
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Updates the table with the sets of another table: the sets of this
+	 * table are replaced with the sets of the other table that have more
+	 * recent updates. Only the sets that the other table got after the given
+	 * version of it are looked at. The sets are shared as replicates, so no
+	 * probabilities are copied.
+	 * @param other The other table
+	 * @param sinceVersion Version of the other table whose sets this table
+	 * has already been updated with, or 0 to look at all the sets
+	 */
+	public void updateFrom(MeetingProbabilityTable other, long sinceVersion) {
+		/* first log entry after the given version */
+		int i = Arrays.binarySearch(other.logVersions, 0, other.logSize,
+				sinceVersion + 1);
+		if (i < 0) {
+			i = -(i + 1);
+		}
+
+		for (int n = other.logSize; i < n; i++) {
+			int address = other.logAddresses[i];
+			MeetingProbabilitySet otherMps = other.sets.get(address);
+			MeetingProbabilitySet myMps = this.sets.get(address);
+			if (myMps == null ||
+				otherMps.getLastUpdateTime() > myMps.getLastUpdateTime() ) {
+				this.put(address, otherMps.replicate());
+			}
+		}
+	}
+
+	/**
+	 * Removes the log entries of the addresses that have been stored again
+	 * later and makes room for new entries
+	 */
+	private void compactLog() {
+		Map<Integer, Integer> last = new HashMap<Integer, Integer>();
+		for (int i = 0; i < logSize; i++) {
+			last.put(logAddresses[i], i);
+		}
+
+		int kept = 0;
+		for (int i = 0; i < logSize; i++) {
+			if (last.get(logAddresses[i]) == i) {
+				logAddresses[kept] = logAddresses[i];
+				logVersions[kept] = logVersions[i];
+				kept++;
+			}
+		}
+		logSize = kept;
+
+		if (2 * logSize > logAddresses.length) {
+			logAddresses = Arrays.copyOf(logAddresses, 2 * logAddresses.length);
+			logVersions = Arrays.copyOf(logVersions, 2 * logVersions.length);
+		}
+	}
+}
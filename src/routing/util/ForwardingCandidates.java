@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import core.Connection;
+import core.Message;
+
+/**
+ * <P>Reusable set of forwarding candidates (message-connection pairs) that a
+ * router tries in order until a transfer starts. Each candidate can have a
+ * score (e.g., the delivery predictability of the host on the other end of
+ * the connection) that is computed once when the candidate is added, so the
+ * ordering doesn't have to ask the metrics again at every comparison.</P>
+ *
+ * <P>The candidates are not sorted up front. Sorting builds a heap and the
+ * candidates are taken out of it one at a time with {@link #next()}, so only
+ * the candidates that are actually tried get ordered. The candidates that
+ * the order considers equal come out in the order they were added (as with
+ * a stable sort).</P>
+ *
+ * <P>The arrays are kept between uses, so an instance should be reused by
+ * calling {@link #clear()} instead of creating a new one.</P>
+ */
+public class ForwardingCandidates {
+	/** initial capacity of the arrays */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Order in which the candidates should be tried
+	 */
+	public interface Order {
+		/**
+		 * Compares two candidates
+		 * @param c The candidates
+		 * @param i Index of the first candidate
+		 * @param j Index of the second candidate
+		 * @return Negative value if the first candidate should be tried
+		 * first, positive if the second one should be tried first, or 0 if
+		 * the order isn't defined
+		 */
+		public int compare(ForwardingCandidates c, int i, int j);
+	}
+
+	private Message[] messages;
+	private Connection[] connections;
+	private double[] scores;
+	private int size;
+
+	/** candidate indexes in the order they are returned (or a heap) */
+	private int[] queue;
+	/** number of candidates left in the queue */
+	private int queued;
+	/** position of the next candidate in the queue (when not a heap) */
+	private int position;
+	/** order of the heap or null if the queue is in its final order */
+	private Order order;
+	private Random rng;
+
+	/**
+	 * Creates a new, empty set of candidates
+	 */
+	public ForwardingCandidates() {
+		this.messages = new Message[INITIAL_CAPACITY];
+		this.connections = new Connection[INITIAL_CAPACITY];
+		this.scores = new double[INITIAL_CAPACITY];
+		this.queue = new int[INITIAL_CAPACITY];
+		this.rng = new Random();
+		this.size = 0;
+	}
+
+	/**
+	 * Removes all the candidates
+	 */
+	public void clear() {
+		Arrays.fill(messages, 0, size, null);
+		Arrays.fill(connections, 0, size, null);
+		this.size = 0;
+		this.queued = 0;
+		this.position = 0;
+		this.order = null;
+	}
+
+	/**
+	 * Adds a candidate. Candidates are tried in the order they were added
+	 * unless they are sorted or shuffled after adding them.
+	 * @param m The message to send
+	 * @param con The connection to send the message through
+	 * @param score Score of the candidate for the order of the candidates
+	 */
+	public void add(Message m, Connection con, double score) {
+		if (size == messages.length) {
+			int length = 2 * size;
+			messages = Arrays.copyOf(messages, length);
+			connections = Arrays.copyOf(connections, length);
+			scores = Arrays.copyOf(scores, length);
+			queue = Arrays.copyOf(queue, length);
+		}
+		messages[size] = m;
+		connections[size] = con;
+		scores[size] = score;
+		queue[size] = size;
+		size++;
+		queued = size;
+	}
+
+	/**
+	 * Returns the number of candidates
+	 * @return The number of candidates
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the message of a candidate
+	 * @param i Index of the candidate
+	 * @return The message
+	 */
+	public Message getMessage(int i) {
+		return this.messages[i];
+	}
+
+	/**
+	 * Returns the connection of a candidate
+	 * @param i Index of the candidate
+	 * @return The connection
+	 */
+	public Connection getConnection(int i) {
+		return this.connections[i];
+	}
+
+	/**
+	 * Returns the score of a candidate
+	 * @param i Index of the candidate
+	 * @return The score
+	 */
+	public double getScore(int i) {
+		return this.scores[i];
+	}
+
+	/**
+	 * Sorts the candidates to the given order. The sorting is done only as
+	 * far as the candidates are asked with {@link #next()}.
+	 * @param order The order
+	 */
+	public void sort(Order order) {
+		this.order = order;
+		this.position = 0;
+		for (int i = queued / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Shuffles the candidates. The result is the same as with
+	 * <CODE>Collections.shuffle(list, new Random(seed))</CODE> for a list
+	 * of the candidates.
+	 * @param seed Seed for the random number generator
+	 */
+	public void shuffle(long seed) {
+		this.order = null;
+		this.position = 0;
+		rng.setSeed(seed);
+		for (int i = queued; i > 1; i--) {
+			int j = rng.nextInt(i);
+			int tmp = queue[i - 1];
+			queue[i - 1] = queue[j];
+			queue[j] = tmp;
+		}
+	}
+
+	/**
+	 * Returns the index of the next candidate to try
+	 * @return The index of the candidate or -1 if all the candidates have
+	 * been returned
+	 */
+	public int next() {
+		if (order == null) {
+			return position < queued ? queue[position++] : -1;
+		}
+		if (queued == 0) {
+			return -1;
+		}
+		int first = queue[0];
+		queued--;
+		if (queued > 0) {
+			queue[0] = queue[queued];
+			siftDown(0);
+		}
+		return first;
+	}
+
+	/**
+	 * Returns true if candidate i should be tried before candidate j
+	 */
+	private boolean before(int i, int j) {
+		int c = order.compare(this, i, j);
+		return c < 0 || (c == 0 && i < j);
+	}
+
+	private void siftDown(int k) {
+		int node = queue[k];
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= queued) {
+				break;
+			}
+			if (child + 1 < queued && before(queue[child + 1], queue[child])) {
+				child++;
+			}
+			if (!before(queue[child], node)) {
+				break;
+			}
+			queue[k] = queue[child];
+			k = child;
+		}
+		queue[k] = node;
+	}
+}
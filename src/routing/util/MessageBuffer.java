@@ -0,0 +1,265 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import util.IntHashMap;
+import core.Message;
+import core.SettingsError;
+
+/**
+ * <P>Message buffer of a router. Keeps track of the total size of the
+ * buffered messages and keeps the messages ordered by a drop policy, so that
+ * the occupancy is available in constant time and the next message to drop
+ * is found in logarithmic time.</P>
+ * <P>Supported drop policies are
+ * <UL>
+ * <LI/> FIFO : oldest received message is dropped first (default)
+ * <LI/> LIFO : most recently received message is dropped first
+ * <LI/> LARGEST : largest message is dropped first
+ * <LI/> TTL : message whose TTL runs out first is dropped first
+ * </UL>
+ * Messages with equal values are dropped in the order they were added.</P>
+ */
+public class MessageBuffer {
+	/** Drop policy value for FIFO ({@value}) */
+	public static final String DROP_FIFO = "FIFO";
+	/** Drop policy value for LIFO ({@value}) */
+	public static final String DROP_LIFO = "LIFO";
+	/** Drop policy value for largest first ({@value}) */
+	public static final String DROP_LARGEST = "LARGEST";
+	/** Drop policy value for earliest TTL expiry first ({@value}) */
+	public static final String DROP_TTL = "TTL";
+
+	private static final int FIFO = 0;
+	private static final int LIFO = 1;
+	private static final int LARGEST = 2;
+	private static final int TTL = 3;
+
+	private final int policy;
+	/** the buffered messages' entries with integer message ID keys */
+	private final IntHashMap<Entry> entries;
+	/** the entries in the drop order */
+	private final TreeSet<Entry> dropOrder;
+	/** view of the messages in the buffer */
+	private final Collection<Message> messageView;
+	/** sum of the sizes of the buffered messages */
+	private long occupancy;
+	/** sequence number for the next added message */
+	private long nextSeq;
+
+	/**
+	 * Creates a new, empty buffer
+	 * @param dropPolicy Name of the drop policy (one of the DROP_ values,
+	 * case insensitive), or null for the default (FIFO) policy
+	 * @throws SettingsError if the drop policy name is not valid
+	 */
+	public MessageBuffer(String dropPolicy) {
+		this.policy = (dropPolicy == null ? FIFO : policyOf(dropPolicy));
+		if (this.policy < 0) {
+			throw new SettingsError("Unknown drop policy '" + dropPolicy +
+					"'");
+		}
+		this.entries = new IntHashMap<Entry>();
+		this.dropOrder = new TreeSet<Entry>();
+		this.occupancy = 0;
+		this.nextSeq = 0;
+
+		this.messageView = new AbstractCollection<Message>() {
+			public Iterator<Message> iterator() {
+				final Iterator<Entry> it = entries.values().iterator();
+				return new Iterator<Message>() {
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					public Message next() {
+						return it.next().message;
+					}
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			public int size() {
+				return entries.size();
+			}
+		};
+	}
+
+	/**
+	 * Returns true if the given string is a valid drop policy name
+	 * @param name The name to check
+	 * @return True if the name is valid, false if not
+	 */
+	public static boolean isValidPolicy(String name) {
+		return policyOf(name) >= 0;
+	}
+
+	/**
+	 * Returns the policy constant for a drop policy name or -1 if the name
+	 * is not valid
+	 */
+	private static int policyOf(String name) {
+		String policy = name.trim().toUpperCase();
+		if (policy.equals(DROP_FIFO)) {
+			return FIFO;
+		} else if (policy.equals(DROP_LIFO)) {
+			return LIFO;
+		} else if (policy.equals(DROP_LARGEST)) {
+			return LARGEST;
+		} else if (policy.equals(DROP_TTL)) {
+			return TTL;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a message to the buffer. A message with the same ID is replaced.
+	 * The message's size, receive time or TTL must not be changed while it
+	 * is in the buffer.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		Entry e = new Entry(m, dropKey(m), nextSeq++);
+		Entry old = entries.put(m.getIntId(), e);
+		if (old != null) {
+			dropOrder.remove(old);
+			occupancy -= old.message.getSize();
+		}
+		dropOrder.add(e);
+		occupancy += m.getSize();
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param id Integer ID of the message to remove
+	 * @return The removed message or null if there was no such message
+	 * @see Message#getIntId()
+	 */
+	public Message remove(int id) {
+		Entry e = entries.remove(id);
+		if (e == null) {
+			return null;
+		}
+		dropOrder.remove(e);
+		occupancy -= e.message.getSize();
+		return e.message;
+	}
+
+	/**
+	 * Returns a message by ID
+	 * @param id Integer ID of the message
+	 * @return The message or null if there is no such message
+	 */
+	public Message get(int id) {
+		Entry e = entries.get(id);
+		return e == null ? null : e.message;
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID
+	 * @param id Integer ID of the message
+	 * @return True if the message is in the buffer
+	 */
+	public boolean contains(int id) {
+		return entries.containsKey(id);
+	}
+
+	/**
+	 * Returns an unmodifiable view of the messages in the buffer. The
+	 * iterators of the view don't support removing; the routers and reports
+	 * only read the messages through it and remove them by ID. Messages must
+	 * not be added or removed while the view is iterated (the iterators throw
+	 * a ConcurrentModificationException), so a caller that deletes messages
+	 * while going through them should iterate a copy of the view.
+	 * @return The messages
+	 */
+	public Collection<Message> getMessages() {
+		return this.messageView;
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the sum of the sizes of the buffered messages
+	 * @return The occupancy in bytes
+	 */
+	public long getOccupancy() {
+		return this.occupancy;
+	}
+
+	/**
+	 * Returns the messages in the drop order of the policy (the next message
+	 * to drop first). Messages must not be added or removed while the
+	 * iterator is used (it throws a ConcurrentModificationException), so a
+	 * caller that drops messages should take the message to drop and stop
+	 * iterating before removing it.
+	 * @return Iterator over the messages in the drop order
+	 */
+	public Iterator<Message> dropOrder() {
+		final Iterator<Entry> it = dropOrder.iterator();
+		return new Iterator<Message>() {
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+			public Message next() {
+				return it.next().message;
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Returns the value that orders the message by the drop policy
+	 * (smaller values are dropped first)
+	 */
+	private double dropKey(Message m) {
+		switch (policy) {
+		case LIFO:
+			return -m.getReceiveTime();
+		case LARGEST:
+			return -m.getSize();
+		case TTL:
+			return m.getExpiryTime();
+		default:
+			return m.getReceiveTime();
+		}
+	}
+
+	/**
+	 * A message with its drop order key
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private final Message message;
+		private final double key;
+		private final long seq;
+
+		private Entry(Message message, double key, long seq) {
+			this.message = message;
+			this.key = key;
+			this.seq = seq;
+		}
+
+		public int compareTo(Entry other) {
+			if (this.key != other.key) {
+				return this.key < other.key ? -1 : 1;
+			}
+			return this.seq < other.seq ? -1 : (this.seq > other.seq ? 1 : 0);
+		}
+	}
+}
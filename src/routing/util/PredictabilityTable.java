@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+
+/**
+ * Table of delivery predictabilities (e.g., PRoPHET's P values) indexed by
+ * the network addresses of the hosts. All the values age at the same rate,
+ * so the table stores them relative to a common scale factor: ageing
+ * multiplies only the scale factor and a value is read by multiplying the
+ * stored value with it. When the scale factor gets very small, it is folded
+ * into the stored values to keep them from overflowing.
+ */
+public class PredictabilityTable {
+	/** smallest scale factor before it is folded into the values */
+	private static final double MIN_SCALE = 1e-100;
+
+	/** stored values (value divided by the scale) indexed by address */
+	private double[] values;
+	/** hosts of the addresses that have a value */
+	private DTNHost[] hostsByAddress;
+	/** hosts that have a value in the order they got it */
+	private DTNHost[] hosts;
+	private int size;
+	/** common multiplier of all the stored values */
+	private double scale;
+
+	/**
+	 * Creates a new, empty table
+	 */
+	public PredictabilityTable() {
+		this.values = new double[0];
+		this.hostsByAddress = new DTNHost[0];
+		this.hosts = new DTNHost[8];
+		this.size = 0;
+		this.scale = 1;
+	}
+
+	/**
+	 * Returns the value of a host
+	 * @param host The host
+	 * @return The value or 0 if the host has no value
+	 */
+	public double get(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= values.length) {
+			return 0;
+		}
+		return values[address] * scale;
+	}
+
+	/**
+	 * Sets the value of a host
+	 * @param host The host
+	 * @param value The new value
+	 */
+	public void put(DTNHost host, double value) {
+		int address = host.getAddress();
+		if (address >= values.length) {
+			int length = Math.max(address + 1, 2 * values.length);
+			values = Arrays.copyOf(values, length);
+			hostsByAddress = Arrays.copyOf(hostsByAddress, length);
+		}
+		if (hostsByAddress[address] == null) {
+			if (size == hosts.length) {
+				hosts = Arrays.copyOf(hosts, 2 * size);
+			}
+			hosts[size++] = host;
+			hostsByAddress[address] = host;
+		}
+		values[address] = value / scale;
+	}
+
+	/**
+	 * Multiplies all the values of the table
+	 * @param mult The multiplier (e.g., <CODE>GAMMA ^ k</CODE>)
+	 */
+	public void age(double mult) {
+		scale *= mult;
+		if (scale < MIN_SCALE) {
+			for (int i = 0; i < size; i++) {
+				values[hosts[i].getAddress()] *= scale;
+			}
+			scale = 1;
+		}
+	}
+
+	/**
+	 * Returns the number of hosts that have a value
+	 * @return The number of hosts in the table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the i:th host of the table
+	 * @param i Position of the host (0 &le; i &lt; {@link #size()})
+	 * @return The host
+	 */
+	public DTNHost getHostAt(int i) {
+		return this.hosts[i];
+	}
+
+	/**
+	 * Returns the value of the i:th host of the table
+	 * @param i Position of the host (0 &le; i &lt; {@link #size()})
+	 * @return The value
+	 * @see #getHostAt(int)
+	 */
+	public double getValueAt(int i) {
+		return values[hosts[i].getAddress()] * scale;
+	}
+}
@@ -26,6 +26,8 @@ public class AllTests {
 		suite.addTestSuite(WorldTest.class);
 		suite.addTestSuite(ConnectionTest.class);
 		suite.addTestSuite(ExternalMovementReaderTest.class);
+		suite.addTestSuite(LineTokenizerTest.class);
+		suite.addTestSuite(BinaryMovementTraceTest.class);
 		suite.addTestSuite(ExternalMovementTest.class);
 		suite.addTestSuite(WKTReaderTest.class);
 		suite.addTestSuite(WKTPointReaderTest.class);
@@ -36,6 +38,7 @@ public class AllTests {
 		suite.addTestSuite(AdjacencyGraphvizReportTest.class);
 		suite.addTestSuite(MessageGraphvizReportTest.class);
 		suite.addTestSuite(ExternalEventsQueueTest.class);
+		suite.addTestSuite(BatchPrefetcherTest.class);
 		suite.addTestSuite(ContactTimesReportTest.class);
 		suite.addTestSuite(TotalContactTimeReportTest.class);
 		suite.addTestSuite(EpidemicRouterTest.class);
@@ -48,8 +51,15 @@ public class AllTests {
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
+		suite.addTestSuite(TimingWheelTest.class);
+		suite.addTestSuite(PheromoneTest.class);
+		suite.addTestSuite(CulturalACORouterTest.class);
+		suite.addTestSuite(IdSetTest.class);
+		suite.addTestSuite(ForwardingCandidatesTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(ConnectivityOptimizerTest.class);
 		//$JUnit-END$
 		return suite;
 	}
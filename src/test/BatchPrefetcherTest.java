@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.BatchPrefetcher;
+import junit.framework.TestCase;
+
+/**
+ * Tests for reading batches ahead in a background thread
+ */
+public class BatchPrefetcherTest extends TestCase {
+
+	/**
+	 * Source of batches 0, 1, ..., that fails at the given batch
+	 */
+	private static class CountingSource
+		implements BatchPrefetcher.Source<Integer> {
+		private int nrofBatches;
+		private int failAt;
+		private int next;
+
+		private CountingSource(int nrofBatches, int failAt) {
+			this.nrofBatches = nrofBatches;
+			this.failAt = failAt;
+			this.next = 0;
+		}
+
+		public Integer read() {
+			if (next == failAt) {
+				throw new IllegalStateException("batch " + next);
+			}
+			return next < nrofBatches ? next++ : null;
+		}
+	}
+
+	public void testOrder() {
+		for (int ahead = 0; ahead < 4; ahead++) {
+			BatchPrefetcher<Integer> p = new BatchPrefetcher<Integer>(
+					new CountingSource(100, -1), ahead, "test");
+			for (int i = 0; i < 100; i++) {
+				assertEquals(i, p.next().intValue());
+			}
+			assertNull(p.next());
+			assertNull(p.next());
+		}
+	}
+
+	public void testErrorInPlace() {
+		for (int ahead = 0; ahead < 3; ahead++) {
+			BatchPrefetcher<Integer> p = new BatchPrefetcher<Integer>(
+					new CountingSource(10, 5), ahead, "test");
+			for (int i = 0; i < 5; i++) {
+				assertEquals(i, p.next().intValue());
+			}
+			try {
+				p.next();
+				fail("No exception from the failing batch");
+			} catch (IllegalStateException e) {
+				assertEquals("batch 5", e.getMessage());
+			}
+		}
+	}
+
+	public void testClose() {
+		CountingSource source = new CountingSource(Integer.MAX_VALUE, -1);
+		BatchPrefetcher<Integer> p = new BatchPrefetcher<Integer>(
+				source, 2, "closeTest");
+		assertEquals(0, p.next().intValue());
+		p.close();
+		assertNull(p.next());
+
+		/* the reader thread has stopped and doesn't read any more */
+		assertFalse(isThreadAlive("closeTest"));
+		int read = source.next;
+		p.close();
+		assertEquals(read, source.next);
+	}
+
+	/**
+	 * Returns true if a thread with the given name is alive
+	 */
+	static boolean isThreadAlive(String name) {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals(name) && t.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
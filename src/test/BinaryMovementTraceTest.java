@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.BinaryMovementTrace;
+
+import java.io.File;
+import java.io.PrintWriter;
+
+import junit.framework.TestCase;
+import core.Coord;
+
+/**
+ * Tests for converting and reading binary movement traces
+ */
+public class BinaryMovementTraceTest extends TestCase {
+	private static final String INPUT =
+		"5 35 0 100 -10 50\n"+
+		"# comment\n" +
+		"15 a 10 10\n"+
+		"15 b 10 20\n" +
+		"25 b 20 20\n" +
+		"25 x 20 10\n" +
+		"\n"+
+		"25 a 30 30\n" +
+		"35 a 30 20\n";
+
+	private BinaryMovementTrace trace;
+	private File binFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		File textFile = File.createTempFile("BMTTest", ".txt");
+		textFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(textFile);
+		pw.print(INPUT);
+		pw.close();
+
+		binFile = File.createTempFile("BMTTest",
+				BinaryMovementTrace.BINARY_EXT);
+		binFile.deleteOnExit();
+		BinaryMovementTrace.convert(textFile, binFile);
+
+		assertTrue(BinaryMovementTrace.isBinaryMovementTrace(binFile));
+		assertFalse(BinaryMovementTrace.isBinaryMovementTrace(textFile));
+		trace = new BinaryMovementTrace(binFile);
+	}
+
+	public void testIndex() {
+		assertEquals(3, trace.getNrofTimes());
+		assertEquals(10.0, trace.getTime(0));
+		assertEquals(20.0, trace.getTime(1));
+		assertEquals(30.0, trace.getTime(2));
+
+		assertEquals(5.0, trace.getMinTime());
+		assertEquals(35.0, trace.getMaxTime());
+		assertEquals(0.0, trace.getMinX());
+		assertEquals(100.0, trace.getMaxX());
+		assertEquals(-10.0, trace.getMinY());
+		assertEquals(50.0, trace.getMaxY());
+
+		/* only the nodes of the first time instance */
+		assertEquals(2, trace.getNrofNodes());
+		assertEquals("a", trace.getNodeId(0));
+		assertEquals("b", trace.getNodeId(1));
+	}
+
+	public void testSamples() {
+		BinaryMovementTrace.NodeTrace a = trace.getNode(0);
+		assertEquals(3, a.size());
+		assertEquals(10.0, a.getTime(0));
+		assertEquals(new Coord(10, 20), a.getLocation(0));
+		assertEquals(20.0, a.getTime(1));
+		assertEquals(new Coord(30, 40), a.getLocation(1));
+		assertEquals(30.0, a.getTime(2));
+		assertEquals(new Coord(30, 30), a.getLocation(2));
+
+		BinaryMovementTrace.NodeTrace b = trace.getNode(1);
+		assertEquals(2, b.size());
+		assertEquals(new Coord(10, 30), b.getLocation(0));
+		assertEquals(20.0, b.getTime(1));
+		assertEquals(new Coord(20, 30), b.getLocation(1));
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.KdTree;
+import interfaces.PairListOptimizer;
+import interfaces.PairSweepGrid;
+import interfaces.SortAndSweep;
+import interfaces.SparseHashGrid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the connectivity optimizers
+ */
+public class ConnectivityOptimizerTest extends TestCase {
+	private static final double RANGE = 10;
+	private static final int NROF_HOSTS = 300;
+	private static final int WORLD_SIZE = 1000;
+
+	private List<DTNHost> hosts;
+	private Random rng;
+	private TestUtils utils;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		PairSweepGrid.reset();
+		ConnectivityGrid.reset();
+		this.utils = new TestUtils(null, null, ts);
+		this.rng = new Random(1);
+		this.hosts = new ArrayList<DTNHost>();
+
+		/* a cluster in the corner and the rest spread around */
+		for (int i=0; i < NROF_HOSTS; i++) {
+			Coord loc;
+			if (i < NROF_HOSTS / 3) {
+				loc = new Coord(rng.nextDouble() * 3 * RANGE,
+						rng.nextDouble() * 3 * RANGE);
+			} else {
+				loc = new Coord(rng.nextDouble() * WORLD_SIZE,
+						rng.nextDouble() * WORLD_SIZE);
+			}
+			hosts.add(utils.createHost(loc));
+		}
+	}
+
+	private ConnectivityOptimizer[] createOptimizers() {
+		ConnectivityOptimizer[] opts = new ConnectivityOptimizer[] {
+			new PairSweepGrid(RANGE), new SparseHashGrid(RANGE),
+			new SortAndSweep(RANGE), new KdTree(RANGE)};
+		for (ConnectivityOptimizer o : opts) {
+			for (DTNHost h : hosts) {
+				o.addInterface(h.getInterfaces().get(0));
+			}
+		}
+		return opts;
+	}
+
+	public void testNearInterfaces() {
+		for (ConnectivityOptimizer o : createOptimizers()) {
+			assertNearInterfaces(o);
+		}
+	}
+
+	public void testNearInterfacesAfterMove() {
+		ConnectivityOptimizer[] opts = createOptimizers();
+		for (ConnectivityOptimizer o : opts) {
+			assertNearInterfaces(o);
+		}
+		for (DTNHost h : hosts) {
+			h.setLocation(new Coord(rng.nextDouble() * WORLD_SIZE / 10,
+					rng.nextDouble() * WORLD_SIZE / 10));
+		}
+		for (ConnectivityOptimizer o : opts) {
+			for (DTNHost h : hosts) {
+				o.updateLocation(h.getInterfaces().get(0));
+			}
+			assertNearInterfaces(o);
+		}
+	}
+
+	public void testSameInterfaceOnlyOnce() {
+		for (ConnectivityOptimizer o : createOptimizers()) {
+			o.addInterface(hosts.get(0).getInterfaces().get(0));
+			assertEquals(o.toString(), NROF_HOSTS,
+					o.getAllInterfaces().size());
+		}
+	}
+
+	/**
+	 * Asserts that all interfaces within the range are returned as near
+	 * interfaces exactly once (interfaces further away are accepted
+	 * from the grids that don't check the distances).
+	 */
+	private void assertNearInterfaces(ConnectivityOptimizer o) {
+		for (DTNHost h : hosts) {
+			NetworkInterface ni = h.getInterfaces().get(0);
+			Set<NetworkInterface> expected = new HashSet<NetworkInterface>();
+			for (DTNHost other : hosts) {
+				if (other != h && other.getLocation().distance(
+						h.getLocation()) <= RANGE) {
+					expected.add(other.getInterfaces().get(0));
+				}
+			}
+
+			List<NetworkInterface> near = new ArrayList<NetworkInterface>(
+					o.getNearInterfaces(ni));
+			Set<NetworkInterface> nearSet =
+				new HashSet<NetworkInterface>(near);
+			assertEquals(o + ": duplicates for " + h, near.size(),
+					nearSet.size());
+			if (o instanceof PairListOptimizer) {
+				assertEquals(o + ": near interfaces of " + h, expected,
+						nearSet);
+			} else {
+				assertTrue(o + ": near interfaces of " + h,
+						nearSet.containsAll(expected));
+			}
+		}
+	}
+
+	public void testVisitNearInterfaces() {
+		ConnectivityGrid grid = ConnectivityGrid.ConnectivityGridFactory(1,
+				RANGE);
+		grid.addInterfaces(getInterfaces(hosts));
+		assertVisitedAsNear(grid, hosts, true);
+		for (ConnectivityOptimizer o : createOptimizers()) {
+			assertVisitedAsNear(o, hosts, false);
+		}
+	}
+
+	public void testVisitGridCellBorders() {
+		ConnectivityGrid grid = ConnectivityGrid.ConnectivityGridFactory(1,
+				RANGE);
+		double cell = grid.getCoverageRange();
+		double e = 0.001;
+		double max = WORLD_SIZE;
+		/* hosts at, and just before, the cell borders and world edges */
+		double[][] locs = {{0,0}, {cell,cell}, {cell-e,cell}, {cell,cell-e},
+				{cell-e,cell-e}, {2*cell,0}, {2*cell-e,0}, {0,2*cell},
+				{3*cell,3*cell}, {3*cell-e,3*cell+e}, {max,max},
+				{max-e,max}, {max-cell,max-cell}, {max-cell-e,max},
+				{0,max}, {max,0}};
+		List<DTNHost> borderHosts = new ArrayList<DTNHost>();
+		for (double[] loc : locs) {
+			borderHosts.add(utils.createHost(new Coord(loc[0], loc[1])));
+		}
+		grid.addInterfaces(getInterfaces(borderHosts));
+		assertVisitedAsNear(grid, borderHosts, true);
+
+		/* all hosts within the coverage range are visited */
+		for (DTNHost h : borderHosts) {
+			List<NetworkInterface> visited =
+				visitNear(grid, h.getInterfaces().get(0));
+			for (DTNHost other : borderHosts) {
+				if (other.getLocation().distance(h.getLocation()) <= cell) {
+					assertTrue(other + " not visited from " + h,
+							visited.contains(other.getInterfaces().get(0)));
+				}
+			}
+		}
+
+		/* move the hosts over the borders */
+		for (DTNHost h : borderHosts) {
+			Coord c = h.getLocation();
+			h.setLocation(new Coord(Math.max(0, c.getX() - 2 * e),
+					Math.min(max, c.getY() + 2 * e)));
+			grid.updateLocation(h.getInterfaces().get(0));
+		}
+		assertVisitedAsNear(grid, borderHosts, true);
+	}
+
+	public void testNearDistances() {
+		for (ConnectivityOptimizer o : createOptimizers()) {
+			if (!(o instanceof PairListOptimizer)) {
+				continue;
+			}
+			assertEquals(0, assertNearDistances(o, null));
+
+			/* the distance isn't given for the interface that has moved
+			 * after the latest sweep */
+			DTNHost moved = hosts.get(0);
+			Coord c = moved.getLocation();
+			moved.setLocation(new Coord(c.getX() + 1, c.getY() + 1));
+			o.updateLocation(moved.getInterfaces().get(0));
+			assertTrue(assertNearDistances(o, moved) > 0);
+		}
+	}
+
+	/**
+	 * Asserts that the distances given to a distance visitor are the exact
+	 * distances of the interfaces and that only the moved host's interface
+	 * is visited without a distance. The hosts are queried in reverse order
+	 * so the moved host (the first one) causes a new sweep only at the end.
+	 * @return Number of visits without a distance
+	 */
+	private int assertNearDistances(ConnectivityOptimizer o,
+			final DTNHost moved) {
+		final int[] nrofVisits = new int[2];
+		for (int i = hosts.size() - 1; i >= 0; i--) {
+			final DTNHost h = hosts.get(i);
+			final NetworkInterface ni = h.getInterfaces().get(0);
+			int nrofBefore = nrofVisits[0] + nrofVisits[1];
+			o.visitNearInterfaces(ni,
+					new ConnectivityOptimizer.NearDistanceVisitor() {
+				public void visit(NetworkInterface other) {
+					nrofVisits[0]++;
+					assertSame(h + " visited without a distance",
+							moved, other.getHost());
+				}
+				public void visit(NetworkInterface other, double distance) {
+					nrofVisits[1]++;
+					assertEquals(h.getLocation().distance(
+							other.getLocation()), distance, 0.0);
+				}
+			});
+			assertEquals(o + ": near interfaces of " + h,
+					o.getNearInterfaces(ni).size(),
+					nrofVisits[0] + nrofVisits[1] - nrofBefore);
+		}
+		return nrofVisits[0];
+	}
+
+	private List<NetworkInterface> getInterfaces(List<DTNHost> hostList) {
+		List<NetworkInterface> list = new ArrayList<NetworkInterface>();
+		for (DTNHost h : hostList) {
+			list.add(h.getInterfaces().get(0));
+		}
+		return list;
+	}
+
+	private List<NetworkInterface> visitNear(ConnectivityOptimizer o,
+			NetworkInterface ni) {
+		final List<NetworkInterface> visited =
+			new ArrayList<NetworkInterface>();
+		o.visitNearInterfaces(ni,
+				new ConnectivityOptimizer.NearInterfaceVisitor() {
+			public void visit(NetworkInterface other) {
+				visited.add(other);
+			}
+		});
+		return visited;
+	}
+
+	/**
+	 * Asserts that the visitor sees the same interfaces as
+	 * getNearInterfaces returns (in the same order if inOrder is true)
+	 */
+	private void assertVisitedAsNear(ConnectivityOptimizer o,
+			List<DTNHost> hostList, boolean inOrder) {
+		for (DTNHost h : hostList) {
+			NetworkInterface ni = h.getInterfaces().get(0);
+			List<NetworkInterface> near = new ArrayList<NetworkInterface>(
+					o.getNearInterfaces(ni));
+			List<NetworkInterface> visited = visitNear(o, ni);
+			if (!inOrder) {
+				Comparator<NetworkInterface> byAddress =
+					new Comparator<NetworkInterface>() {
+					public int compare(NetworkInterface a,
+							NetworkInterface b) {
+						return a.getHost().getAddress() -
+							b.getHost().getAddress();
+					}
+				};
+				Collections.sort(near, byAddress);
+				Collections.sort(visited, byAddress);
+			}
+			assertEquals(o + ": visited from " + h, near, visited);
+		}
+	}
+}
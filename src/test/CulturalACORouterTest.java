@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.List;
+import java.util.Map;
+
+import routing.CulturalACORouter;
+import routing.MessageRouter;
+import routing.culturalACOUtility.Centrality;
+import routing.culturalACOUtility.CommunityDetection;
+import routing.culturalACOUtility.Duration;
+import core.DTNHost;
+import core.Settings;
+
+/**
+ * Tests for the CulturalACO router
+ */
+public class CulturalACORouterTest extends AbstractRouterTest {
+
+	@Override
+	public void setUp() throws Exception {
+		ts.setNameSpace(null);
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		ts.putSetting(CulturalACORouter.CENTRALITY_ALG_SETTING,
+				HistoryCentrality.class.getName());
+		setRouterProto(new CheckedRouter(ts));
+		super.setUp();
+	}
+
+	/**
+	 * Centrality that is the number of contacts in the contact history. The
+	 * value is computed on every call and the calls are counted.
+	 */
+	public static class HistoryCentrality implements Centrality {
+		private int nrofComputations;
+
+		public HistoryCentrality(Settings s) { }
+
+		public double getGlobalCentrality(
+				Map<DTNHost, List<Duration>> connHistory) {
+			nrofComputations++;
+			int contacts = 0;
+			for (List<Duration> history : connHistory.values()) {
+				contacts += history.size();
+			}
+			return contacts;
+		}
+
+		public double getLocalCentrality(
+				Map<DTNHost, List<Duration>> connHistory,
+				CommunityDetection cd) {
+			return getGlobalCentrality(connHistory);
+		}
+
+		public Centrality replicate() {
+			return new HistoryCentrality(null);
+		}
+	}
+
+	/**
+	 * Router that gives access to the cached and freshly computed global
+	 * centrality
+	 */
+	private static class CheckedRouter extends CulturalACORouter {
+		private CheckedRouter(Settings s) {
+			super(s);
+		}
+
+		private CheckedRouter(CheckedRouter proto) {
+			super(proto);
+		}
+
+		private double getCachedCentrality() {
+			return getGlobalCentrality();
+		}
+
+		private double getFreshCentrality() {
+			return centrality.getGlobalCentrality(connHistory);
+		}
+
+		private int getNrofComputations() {
+			return ((HistoryCentrality)centrality).nrofComputations;
+		}
+
+		@Override
+		public MessageRouter replicate() {
+			return new CheckedRouter(this);
+		}
+	}
+
+	private void assertCentrality(CheckedRouter r, double expected) {
+		assertEquals(expected, r.getCachedCentrality());
+		assertEquals(expected, r.getFreshCentrality());
+	}
+
+	public void testCentralityCache() {
+		CheckedRouter r1 = (CheckedRouter)h1.getRouter();
+
+		clock.setTime(100);
+		h1.forceConnection(h2, null, true);
+		h1.forceConnection(h3, null, true);
+		clock.setTime(150);
+		h1.forceConnection(h2, null, false);
+		h1.forceConnection(h2, null, true);
+		clock.setTime(200);
+		assertCentrality(r1, 1);
+
+		/* the value is computed only once within a tick */
+		int computations = r1.getNrofComputations();
+		r1.getCachedCentrality();
+		r1.getCachedCentrality();
+		assertEquals(computations, r1.getNrofComputations());
+
+		/* history changes within the same tick */
+		h1.forceConnection(h2, null, false);
+		assertCentrality(r1, 2);
+		h1.forceConnection(h3, null, false);
+		assertCentrality(r1, 3);
+
+		clock.setTime(300);
+		assertCentrality(r1, 3);
+	}
+}
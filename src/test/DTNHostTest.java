@@ -67,6 +67,31 @@ public class DTNHostTest extends TestCase {
     assertFalse("Radio reported as active.", host.isRadioActive());
   }
 
+  /**
+   * Tests that the jumps made with setLocation are counted to the odometer
+   * and to the displacement bound.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testOdometer()
+  throws Exception {
+    final TestUtils utils = new TestUtils(null, null, new TestSettings());
+    final DTNHost host = utils.createHost(new Coord(0, 0));
+    final double odometer = host.getOdometer();
+    final double bound = DTNHost.getDisplacementBound();
+
+    host.setLocation(new Coord(3, 4));
+    host.setLocation(new Coord(3, 4));
+    host.setLocation(new Coord(3, 0));
+
+    // Tests
+    assertEquals("Wrong odometer value.", 9.0,
+        host.getOdometer() - odometer, 0.0);
+    assertTrue("Displacement bound not increased.",
+        DTNHost.getDisplacementBound() - bound >= 9.0);
+  }
+
   private static MovementModel makeMovementModel() {
     return new MovementModel() {
       @Override
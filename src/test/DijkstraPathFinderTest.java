@@ -73,6 +73,74 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 
+	public void testAStar() {
+		r = new DijkstraPathFinder(null, true);
+		testPathFinding();
+	}
+
+	public void testNoPath() {
+		MapNode lonely = newNode(30, 30);
+		assertEquals(0, getPath(n1, lonely).size());
+		assertEquals(0, getPath(lonely, n1).size());
+		checkPath(getPath(n1, n8), n1, n2, n3, n7, n8);
+	}
+
+	public void testReset() {
+		int lastIndex = newNode(0,0).getIndex();
+		checkPath(getPath(n1,n6), n1, n2, n5, n6);
+
+		/* the nodes of the next run get small indexes again */
+		MapNode.reset();
+		DijkstraPathFinder.reset();
+		MapNode m1 = newNode(0,0);
+		MapNode m2 = newNode(10,0);
+		MapNode m3 = newNode(10,10);
+		assertEquals(0, m1.getIndex());
+		m1.addNeighbor(m2);
+		m2.addNeighbor(m1);
+		m2.addNeighbor(m3);
+		m3.addNeighbor(m2);
+		checkPath(getPath(m1,m3), m1, m2, m3);
+		checkPath(getPath(m3,m1), m3, m2, m1);
+
+		/* other tests' nodes were created before the reset */
+		while (newNode(0,0).getIndex() < lastIndex) { }
+	}
+
+	public void testParallelSearches() throws Exception {
+		final MapNode[] ends = {n1, n2, n3, n4, n5, n6, n7, n8};
+		final String[] expected = new String[ends.length * ends.length];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = getPath(ends[i / ends.length],
+					ends[i % ends.length]).toString();
+		}
+
+		final boolean[] ok = new boolean[4];
+		Thread[] threads = new Thread[ok.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int round = 0; round < 200; round++) {
+						for (int i = 0; i < expected.length; i++) {
+							if (!expected[i].equals(getPath(
+									ends[i / ends.length],
+									ends[i % ends.length]).toString())) {
+								return;
+							}
+						}
+					}
+					ok[id] = true;
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			assertTrue("Thread " + t + " got a wrong path", ok[t]);
+		}
+	}
+
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 
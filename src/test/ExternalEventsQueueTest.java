@@ -5,6 +5,7 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.ColumnarEventsReader;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
@@ -66,6 +67,43 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testPrefetcherStops() {
+		String thread = "ExternalEvents " + tempFile.getName();
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), 1, 2);
+		for (int i=0; i < msgTimes.length; i++) {
+			eeq.nextEvent();
+		}
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+		assertFalse(BatchPrefetcherTest.isThreadAlive(thread));
+
+		/* queues that are not read to the end are closed on reset */
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), 1, 2);
+		eeq.nextEvent();
+		ExternalEventsQueue.reset();
+		assertFalse(BatchPrefetcherTest.isThreadAlive(thread));
+	}
+
+	public void testSetNrofPreload() {
+		/* without prefetching the new size is used for the next batch */
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), 1, 0);
+		eeq.setNrofPreload(4);
+		assertEquals(1, eeq.eventsLeftInBuffer());
+		eeq.nextEvent();
+		assertEquals(4, eeq.eventsLeftInBuffer());
+
+		/* prefetched batches keep their size but the later ones change */
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), 1, 2);
+		eeq.setNrofPreload(4);
+		int maxBatch = 0;
+		for (int i=0; i < msgTimes.length; i++) {
+			maxBatch = Math.max(maxBatch, eeq.eventsLeftInBuffer());
+			assertEquals(msgTimes[i], eeq.nextEventsTime());
+			eeq.nextEvent();
+		}
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+		assertEquals(4, maxBatch);
+	}
+
 	public void testBinaryEEQ() throws Exception{
 		int preload = 7;
 		File tmpBinFile = File.createTempFile("TempBinTest",
@@ -82,6 +120,33 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testColumnarEEQ() throws Exception {
+		int preload = 4;
+		File tmpColFile = File.createTempFile("TempColTest",
+				ColumnarEventsReader.COLUMNAR_EXT);
+		ColumnarEventsReader.convert(tempFile, tmpColFile);
+		assertTrue(ColumnarEventsReader.isColumnarEeFile(tmpColFile));
+		assertFalse(ColumnarEventsReader.isColumnarEeFile(tempFile));
+
+		eeq = new ExternalEventsQueue(tmpColFile.getAbsolutePath(), preload);
+		checkEeq(eeq, preload);
+
+		/* all the fields survive the conversion */
+		List<ExternalEvent> expected =
+			new StandardEventsReader(tempFile).readEvents(100);
+		ColumnarEventsReader r = new ColumnarEventsReader(tmpColFile);
+		List<ExternalEvent> events = r.readEvents(100);
+		assertEquals(expected.size(), events.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).toString(),
+					events.get(i).toString());
+		}
+		assertEquals(0, r.readEvents(10).size());
+		r.close();
+
+		assertTrue(tmpColFile.delete());
+	}
+
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
 		assertEquals(msgTimes[0],eeq.nextEventsTime());
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.ForwardingCandidates;
+
+/**
+ * Tests for the forwarding candidates' ordering
+ */
+public class ForwardingCandidatesTest extends TestCase {
+	private ForwardingCandidates c;
+
+	/** order: smaller score first, equal scores in insertion order */
+	private static final ForwardingCandidates.Order BY_SCORE =
+		new ForwardingCandidates.Order() {
+		public int compare(ForwardingCandidates c, int i, int j) {
+			return Double.compare(c.getScore(i), c.getScore(j));
+		}
+	};
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		c = new ForwardingCandidates();
+	}
+
+	public void testInsertionOrder() {
+		assertEquals(-1, c.next());
+		for (int i = 0; i < 3; i++) {
+			c.add(null, null, 3 - i);
+		}
+		assertEquals(3, c.size());
+		assertEquals(0, c.next());
+		assertEquals(1, c.next());
+		assertEquals(2, c.next());
+		assertEquals(-1, c.next());
+	}
+
+	public void testSortIsStable() {
+		Random rng = new Random(1);
+		final List<Integer> expected = new ArrayList<Integer>();
+		final double[] scores = new double[100];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = rng.nextInt(10);
+			c.add(null, null, scores[i]);
+			expected.add(i);
+		}
+		Collections.sort(expected, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(scores[i1], scores[i2]);
+			}
+		});
+
+		c.sort(BY_SCORE);
+		for (int i : expected) {
+			assertEquals(i, c.next());
+		}
+		assertEquals(-1, c.next());
+	}
+
+	public void testShuffleMatchesCollections() {
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 50; i++) {
+			c.add(null, null, 0);
+			expected.add(i);
+		}
+		Collections.shuffle(expected, new Random(42));
+
+		c.shuffle(42);
+		for (int i : expected) {
+			assertEquals(i, c.next());
+		}
+		assertEquals(-1, c.next());
+	}
+
+	public void testClearAndReuse() {
+		for (int i = 0; i < 40; i++) {
+			c.add(null, null, i);
+		}
+		c.sort(BY_SCORE);
+		assertEquals(0, c.next());
+
+		c.clear();
+		assertEquals(0, c.size());
+		assertEquals(-1, c.next());
+		c.add(null, null, 2.0);
+		c.add(null, null, 1.0);
+		assertEquals(2.0, c.getScore(0));
+		c.sort(BY_SCORE);
+		assertEquals(1, c.next());
+		assertEquals(0, c.next());
+		assertEquals(-1, c.next());
+	}
+}
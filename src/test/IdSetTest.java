@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.IdSet;
+
+public class IdSetTest extends TestCase {
+
+	public void testAddAndContains() {
+		IdSet s = new IdSet();
+		assertTrue(s.add(5));
+		assertTrue(s.add(70000));
+		assertTrue(s.add(0));
+		assertFalse(s.add(5));
+		assertEquals(3, s.size());
+
+		assertTrue(s.contains(0));
+		assertTrue(s.contains(5));
+		assertTrue(s.contains(70000));
+		assertFalse(s.contains(6));
+		assertFalse(s.contains(70000 - 65536));
+		assertFalse(s.contains(-1));
+	}
+
+	public void testDenseContainer() {
+		IdSet s = new IdSet();
+		BitSet ref = new BitSet();
+		Random rng = new Random(1);
+		/* enough IDs to one chunk to turn its container to a bitmap */
+		for (int i = 0; i < 20000; i++) {
+			int id = rng.nextInt(1 << 16);
+			assertEquals(!ref.get(id), s.add(id));
+			ref.set(id);
+		}
+		assertEquals(ref.cardinality(), s.size());
+		for (int id = 0; id < (1 << 16); id++) {
+			assertEquals(ref.get(id), s.contains(id));
+		}
+	}
+
+	public void testAddAll() {
+		IdSet a = new IdSet();
+		IdSet b = new IdSet();
+		a.add(1);
+		a.add(100000);
+		b.add(1);
+		b.add(2);
+		b.add(200000);
+
+		int[] added = a.addAll(b, 0);
+		Arrays.sort(added);
+		assertEquals("[2, 200000]", Arrays.toString(added));
+		assertEquals(4, a.size());
+		assertTrue(a.contains(200000));
+
+		assertEquals(0, a.addAll(b, 0).length);
+	}
+
+	public void testAddAllSinceVersion() {
+		IdSet a = new IdSet();
+		IdSet b = new IdSet();
+		b.add(3);
+		b.add(70000);
+		a.addAll(b, 0);
+		long synced = b.getVersion();
+
+		/* only the changed chunk of b needs to be looked at */
+		b.add(140000);
+		a.add(140001);
+		int[] added = a.addAll(b, synced);
+		assertEquals("[140000]", Arrays.toString(added));
+		assertEquals(0, a.addAll(b, b.getVersion()).length);
+		assertEquals(4, a.size());
+	}
+
+	public void testAddAllDenseContainers() {
+		IdSet a = new IdSet();
+		IdSet b = new IdSet();
+		for (int i = 0; i < 10000; i += 2) {
+			a.add(i);
+			b.add(i + 1);
+		}
+		b.add(0);
+
+		/* bitmap to an empty container */
+		IdSet c = new IdSet();
+		assertEquals(5001, c.addAll(b, 0).length);
+		assertEquals(5001, c.size());
+
+		/* bitmap to bitmap */
+		int[] added = a.addAll(b, 0);
+		assertEquals(5000, added.length);
+		assertEquals(10000, a.size());
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(a.contains(i));
+		}
+		assertFalse(a.contains(10000));
+	}
+}
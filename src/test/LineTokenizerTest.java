@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.LineTokenizer;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the text input tokenizer
+ */
+public class LineTokenizerTest extends TestCase {
+
+	private LineTokenizer create(String input) throws Exception {
+		File tmpFile = File.createTempFile("LTTest","tmp");
+		tmpFile.deleteOnExit();
+
+		PrintWriter pw = new PrintWriter(tmpFile);
+		pw.print(input);
+		pw.close();
+
+		return new LineTokenizer(tmpFile);
+	}
+
+	public void testLinesAndTokens() throws Exception {
+		LineTokenizer t = create("# comment\r\n  \n1.5 C\tm1 p12 3\r\n" +
+				"last line");
+
+		assertTrue(t.nextLine());
+		assertTrue(t.lineStartsWith('#'));
+		assertEquals("# comment", t.getLine());
+		assertTrue(t.nextLine());
+		assertTrue(t.isBlankLine());
+		assertFalse(t.hasNext());
+
+		assertTrue(t.nextLine());
+		assertFalse(t.isBlankLine());
+		assertEquals(1.5, t.nextDouble());
+		assertEquals("C", t.next());
+		assertEquals("m1", t.next());
+		assertEquals(12, t.nextAddress());
+		assertTrue(t.hasNextInt());
+		assertEquals(3, t.nextInt());
+		assertFalse(t.hasNext());
+		try {
+			t.next();
+			fail("Read a token past the end of the line");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+
+		assertTrue(t.nextLine());
+		assertEquals("last", t.next());
+		assertEquals("line", t.next());
+		assertFalse(t.nextLine());
+		t.close();
+	}
+
+	public void testNumbers() throws Exception {
+		LineTokenizer t = create("-0.25 1e3 2.5E-2 0.1 1234567890123456789" +
+				" NaN 10k -12 2147483648 p x1y\n");
+
+		assertTrue(t.nextLine());
+		assertEquals(-0.25, t.nextDouble());
+		assertEquals(1000.0, t.nextDouble());
+		assertEquals(0.025, t.nextDouble());
+		assertEquals(0.1, t.nextDouble());
+		assertEquals(1234567890123456789.0, t.nextDouble());
+		assertTrue(Double.isNaN(t.nextDouble()));
+		assertFalse(t.hasNextInt());
+		assertEquals("10k", t.next());
+		assertEquals(-12, t.nextInt());
+		assertFalse(t.hasNextInt());
+		assertEquals(2147483648.0, t.nextDouble());
+		try {
+			t.nextAddress();
+			fail("Parsed address from 'p'");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+		try {
+			t.nextDouble();
+			fail("Parsed a double from 'x1y'");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+	}
+
+	public void testDoublesMatchLibrary() throws Exception {
+		Random rng = new Random(7);
+		double[] values = new double[2000];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			String s;
+			if (i % 2 == 0) {
+				s = String.format(Locale.US, "%.6f",
+						(rng.nextDouble() - 0.5) * 1e5);
+			} else {
+				s = Double.toString(rng.nextGaussian() * Math.pow(10,
+						rng.nextInt(40) - 20));
+			}
+			values[i] = Double.parseDouble(s);
+			sb.append(s).append(i % 10 == 9 ? "\n" : " ");
+		}
+
+		LineTokenizer t = create(sb.toString());
+		int i = 0;
+		while (t.nextLine()) {
+			while (t.hasNext()) {
+				assertEquals(values[i++], t.nextDouble());
+			}
+		}
+		assertEquals(values.length, i);
+	}
+
+	public void testLongLines() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		int nrofTokens = 300000; // longer than the read buffer
+		for (int i = 0; i < nrofTokens; i++) {
+			sb.append(i).append(' ');
+		}
+		sb.append("\nend\n");
+
+		LineTokenizer t = create(sb.toString());
+		assertTrue(t.nextLine());
+		for (int i = 0; i < nrofTokens; i++) {
+			assertEquals(i, t.nextInt());
+		}
+		assertFalse(t.hasNext());
+		assertTrue(t.nextLine());
+		assertEquals("end", t.getLine());
+		assertFalse(t.nextLine());
+	}
+}
@@ -14,6 +14,7 @@ import java.util.Set;
 import junit.framework.TestCase;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
+import routing.maxprop.MeetingProbabilityTable;
 import core.DTNHost;
 
 /**
@@ -123,6 +124,59 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals( (1-0.625)+(1-0.5), result.get(5));
 	}
 
+	public void testLazySearchAndInvalidate() {
+		mapping.get(0).updateMeetingProbFor(1); // h0 meets h1
+		mapping.get(1).updateMeetingProbFor(2); // h1 meets h2
+		mapping.get(1).updateMeetingProbFor(3); // and h3
+
+		/* costs to nearer nodes first, then farther ones and back */
+		assertEquals(0.0, mpd.getCost(0, 0));
+		assertEquals(0.0, mpd.getCost(0, 1));
+		assertEquals(0.5, mpd.getCost(0, 3), DELTA);
+		assertEquals(0.5, mpd.getCost(0, 2), DELTA);
+		assertEquals(Double.MAX_VALUE, mpd.getCost(0, 4));
+		assertEquals(Double.MAX_VALUE, mpd.getCost(2, 0));
+		assertEquals(0.5, mpd.getCost(1, 2), DELTA);
+
+		/* new link is used only after invalidation */
+		mapping.get(2).updateMeetingProbFor(4);
+		assertEquals(Double.MAX_VALUE, mpd.getCost(0, 4));
+		mpd.invalidate();
+		assertEquals(0.5, mpd.getCost(0, 4), DELTA);
+		assertEquals(0.0, mpd.getCost(2, 4));
+	}
+
+	public void testReplicatesAndTableUpdates() {
+		core.SimClock.getInstance().setTime(10);
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		MeetingProbabilitySet snapshot = mps.replicate();
+		mps.updateMeetingProbFor(2);
+		assertEquals(0.5, mps.getProbFor(1));
+		assertEquals(1.0, snapshot.getProbFor(1));
+		assertEquals(0.0, snapshot.getProbFor(2));
+		assertEquals(1, snapshot.size());
+
+		MeetingProbabilityTable t1 = new MeetingProbabilityTable();
+		MeetingProbabilityTable t2 = new MeetingProbabilityTable();
+		t1.put(0, snapshot);
+		t2.updateFrom(t1, 0);
+		assertEquals(1.0, t2.get(0).getProbFor(1));
+		long synced = t1.getVersion();
+
+		/* only newer sets replace the old ones */
+		core.SimClock.getInstance().setTime(20);
+		mps.updateMeetingProbFor(2);
+		mapping.get(3).updateMeetingProbFor(4);
+		t1.put(3, mapping.get(3).replicate());
+		t1.put(0, mps.replicate());
+		t2.put(3, mapping.get(3).replicate());
+		mapping.get(3).updateMeetingProbFor(1); // newer in t2
+		t2.put(3, mapping.get(3).replicate());
+		t2.updateFrom(t1, synced);
+		assertEquals(0.75, t2.get(0).getProbFor(2));
+		assertEquals(0.5, t2.get(3).getProbFor(1));
+	}
 
 	public void testProbabilitySumsToOne() {
 		double total;
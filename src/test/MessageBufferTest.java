@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+import routing.util.MessageBuffer;
+import core.Message;
+import core.SettingsError;
+import core.SimClock;
+
+public class MessageBufferTest extends TestCase {
+
+	private Message m1, m2, m3;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		m1 = newMessage("M1", 300, 10, 5);
+		m2 = newMessage("M2", 100, 20, 1);
+		m3 = newMessage("M3", 200, 30, 3);
+	}
+
+	private Message newMessage(String id, int size, double time, int ttl) {
+		SimClock.getInstance().setTime(time);
+		Message m = new Message(null, null, id, size);
+		m.setTtl(ttl);
+		return m;
+	}
+
+	private MessageBuffer fill(String policy) {
+		MessageBuffer b = new MessageBuffer(policy);
+		b.add(m1);
+		b.add(m2);
+		b.add(m3);
+		return b;
+	}
+
+	private void assertDropOrder(MessageBuffer b, Message... expected) {
+		Iterator<Message> it = b.dropOrder();
+		for (Message m : expected) {
+			assertTrue(it.hasNext());
+			assertEquals(m, it.next());
+		}
+		assertFalse(it.hasNext());
+	}
+
+	public void testOccupancy() {
+		MessageBuffer b = fill(null);
+		assertEquals(600, b.getOccupancy());
+		assertEquals(3, b.size());
+
+		assertEquals(m2, b.remove(m2.getIntId()));
+		assertNull(b.remove(m2.getIntId()));
+		assertEquals(500, b.getOccupancy());
+
+		/* replacing a message with the same ID */
+		Message m1Copy = m1.replicate();
+		b.add(m1Copy);
+		assertEquals(500, b.getOccupancy());
+		assertEquals(2, b.size());
+		assertEquals(m1Copy, b.get(m1.getIntId()));
+	}
+
+	public void testDropPolicies() {
+		assertDropOrder(fill(null), m1, m2, m3);
+		assertDropOrder(fill("fifo"), m1, m2, m3);
+		assertDropOrder(fill("LIFO"), m3, m2, m1);
+		assertDropOrder(fill("largest"), m1, m3, m2);
+		assertDropOrder(fill("TTL"), m2, m3, m1);
+	}
+
+	public void testEqualKeysInAddOrder() {
+		MessageBuffer b = new MessageBuffer("FIFO");
+		Message a = newMessage("A", 10, 50, 1);
+		Message c = newMessage("C", 10, 50, 1);
+		b.add(c);
+		b.add(a);
+		assertDropOrder(b, c, a);
+	}
+
+	public void testModificationDuringIteration() {
+		MessageBuffer b = fill(null);
+		Iterator<Message> it = b.getMessages().iterator();
+		it.next();
+		try {
+			it.remove();
+			fail("Removing through the view should not be supported");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		b.remove(m2.getIntId());
+		try {
+			it.next();
+			fail("No exception from removing during iteration");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+
+		it = b.dropOrder();
+		it.next();
+		b.add(m2);
+		try {
+			it.next();
+			fail("No exception from adding during drop order iteration");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+
+		/* removing while iterating a copy is fine */
+		for (Message m : new ArrayList<Message>(b.getMessages())) {
+			b.remove(m.getIntId());
+		}
+		assertEquals(0, b.size());
+	}
+
+	public void testInvalidPolicy() {
+		assertFalse(MessageBuffer.isValidPolicy("random"));
+		try {
+			new MessageBuffer("random");
+			fail("Invalid policy accepted");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+}
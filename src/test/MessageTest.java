@@ -4,6 +4,8 @@
  */
 package test;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -12,6 +14,7 @@ import org.junit.Test;
 import core.DTNHost;
 import core.Message;
 import core.SimClock;
+import core.SimError;
 
 public class MessageTest extends TestCase {
 
@@ -60,5 +63,128 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testIntId() {
+		Message other = new Message(from, to, "M_other", 100);
+		Message same = new Message(from, to, "M", 10);
+
+		assertEquals(msg.getIntId(), same.getIntId());
+		assertEquals(msg.getIntId(), msg.replicate().getIntId());
+		assertTrue(msg.getIntId() != other.getIntId());
+		assertEquals(other.getIntId(), Message.getIntId("M_other"));
+		assertEquals(-1, Message.getIntId("no such id"));
+	}
+
+	@Test
+	public void testReplicateHops() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+
+		msg.addNodeOnPath(h1);
+		Message copy = msg.replicate();
+		copy.addNodeOnPath(h2);
+		msg.addNodeOnPath(h3);
+
+		assertEquals(2, msg.getHopCount());
+		assertEquals(2, copy.getHopCount());
+		assertEquals(Arrays.asList(from, h1, h3), msg.getHops());
+		assertEquals(Arrays.asList(from, h1, h2), copy.getHops());
+		assertTrue(copy.hasPassed(h1));
+		assertTrue(copy.hasPassed(h2));
+		assertFalse(copy.hasPassed(h3));
+	}
+
+	@Test
+	public void testReplicateProperties() {
+		msg.addProperty("foo", "value1");
+		Message copy = msg.replicate();
+		copy.updateProperty("foo", "value2");
+		copy.addProperty("bar", "value3");
+		msg.updateProperty("baz", "value4");
+
+		assertEquals("value1", msg.getProperty("foo"));
+		assertNull(msg.getProperty("bar"));
+		assertEquals("value2", copy.getProperty("foo"));
+		assertEquals("value3", copy.getProperty("bar"));
+		assertNull(copy.getProperty("baz"));
+	}
 
+	@Test
+	public void testTypedProperties() {
+		int count = Message.getPropertySlot("test.count");
+		int length = Message.getPropertySlot("test.length");
+		assertEquals(count, Message.getPropertySlot("test.count"));
+		assertTrue(count != length);
+
+		assertFalse(msg.hasProperty(count));
+		assertEquals(0, msg.getInt(count));
+		msg.setInt(count, 6);
+		msg.setDouble(length, 2.5);
+		assertTrue(msg.hasProperty(count));
+		assertEquals(6, msg.getInt(count));
+		assertEquals(2.5, msg.getDouble(length));
+
+		/* string keyed access to the same values */
+		assertEquals(Integer.valueOf(6), msg.getProperty("test.count"));
+		assertEquals(Double.valueOf(2.5), msg.getProperty("test.length"));
+		msg.updateProperty("test.count", 3);
+		assertEquals(3, msg.getInt(count));
+
+		Message copy = msg.replicate();
+		copy.setInt(count, 1);
+		assertEquals(3, msg.getInt(count));
+		assertEquals(1, copy.getInt(count));
+		assertEquals(2.5, copy.getDouble(length));
+	}
+
+	@Test
+	public void testAddTypedProperties() {
+		int count = Message.getPropertySlot("test.add.count");
+		int length = Message.getPropertySlot("test.add.length");
+		msg.addInt(count, 6);
+		msg.addDouble(length, 2.5);
+		assertEquals(6, msg.getInt(count));
+		assertEquals(2.5, msg.getDouble(length));
+
+		/* adding an existing value fails like with the string keys */
+		try {
+			msg.addInt(count, 7);
+			fail("Adding an existing int value didn't fail");
+		} catch (SimError e) {
+			assertTrue(e.getMessage().contains("test.add.count"));
+		}
+		try {
+			msg.replicate().addDouble(length, 3.5);
+			fail("Adding an existing double value didn't fail");
+		} catch (SimError e) {
+			assertTrue(e.getMessage().contains("test.add.length"));
+		}
+		assertEquals(6, msg.getInt(count));
+		assertEquals(2.5, msg.getDouble(length));
+	}
+
+	@Test
+	public void testPropertySlotRegistry() {
+		int first = Message.getPropertySlot("test.slots.first");
+
+		/* looking up unknown keys doesn't take slots */
+		msg.addProperty("test.slots.runLocal", "value");
+		assertNull(msg.getProperty("test.slots.misspelled"));
+		assertNull(new Message(from, to, "M2", 1).getProperty(
+				"test.slots.runLocal"));
+		assertEquals(first + 2, Message.getPropertySlot("test.slots.second"));
+
+		/* reset keeps the reserved slots but releases the others */
+		Message.reset();
+		assertEquals(first, Message.getPropertySlot("test.slots.first"));
+		assertEquals(first + 2, Message.getPropertySlot("test.slots.second"));
+		assertEquals(first + 3, Message.getPropertySlot("test.slots.third"));
+
+		Message m = new Message(from, to, "M3", 1);
+		m.updateProperty("test.slots.first", 1);
+		assertEquals(1, m.getInt(first));
+		assertNull(m.getProperty("test.slots.runLocal"));
+	}
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.culturalACOUtility.Pheromone;
+import core.DTNHost;
+import core.Message;
+import core.SettingsError;
+import core.SimClock;
+
+/**
+ * Tests for the pheromone table of the CulturalACO router
+ */
+public class PheromoneTest extends TestCase {
+	private static final int NROF_HOSTS = 40;
+	private static final double DELTA = 0.000001;
+
+	private TestSettings ts;
+	private Pheromone pheromone;
+	private List<DTNHost> hosts;
+	private int msgCount;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		this.ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		this.hosts = new ArrayList<DTNHost>();
+		for (int i=0; i < NROF_HOSTS; i++) {
+			hosts.add(utils.createHost());
+		}
+		this.msgCount = 0;
+		this.pheromone = createPheromone("0", "30");
+	}
+
+	private Pheromone createPheromone(String rate, String timeUnit) {
+		ts.setNameSpace(null);
+		ts.putSetting(Pheromone.EVAPORATION_RATE_SETTINGS, rate);
+		ts.putSetting(Pheromone.EVAPORATION_TIME_UNIT_SETTINGS, timeUnit);
+		return new Pheromone(ts);
+	}
+
+	/**
+	 * Creates a backward ant for a destination with the given path length
+	 */
+	private Message createAnt(DTNHost dest, int pathLength) {
+		Message m = new Message(hosts.get(0), dest, "M" + (msgCount++), 1);
+		for (int i=0; i < pathLength; i++) {
+			m.addNodeOnPath(hosts.get(i));
+		}
+		pheromone.createPheromoneTable(m);
+		return m;
+	}
+
+	/**
+	 * Updates the pheromone of a message that came to a host from a peer
+	 */
+	private void update(DTNHost host, DTNHost from, Message m) {
+		host.forceConnection(from, null, true);
+		pheromone.updatePheromone(host, from, m);
+		host.forceConnection(from, null, false);
+	}
+
+	public void testUnknownLookups() {
+		DTNHost dest = hosts.get(5);
+		Message noAnt = new Message(hosts.get(0), dest, "noAnt", 1);
+		assertEquals(0.0, pheromone.getPheromone(hosts.get(1), noAnt));
+
+		/* destination without a table row */
+		noAnt.addProperty(Pheromone.DESTINATION_PROPERTY, hosts.get(30));
+		assertEquals(0.0, pheromone.getPheromone(hosts.get(1), noAnt));
+
+		Message ant = createAnt(dest, 2);
+		assertEquals(0.0, pheromone.getPheromone(hosts.get(1), ant));
+		update(hosts.get(2), hosts.get(3), ant);
+		assertEquals(0.5, pheromone.getPheromone(hosts.get(3), ant), DELTA);
+		assertEquals(0.0, pheromone.getPheromone(hosts.get(2), ant));
+		assertEquals(0.0, pheromone.getPheromone(hosts.get(39), ant));
+	}
+
+	public void testColumnGrowth() {
+		DTNHost dest = hosts.get(5);
+		Message ant = createAnt(dest, 4);
+		update(hosts.get(2), hosts.get(1), ant);
+		update(hosts.get(2), hosts.get(20), ant);
+		update(hosts.get(2), hosts.get(39), ant);
+		update(hosts.get(2), hosts.get(39), ant);
+
+		assertEquals(0.25, pheromone.getPheromone(hosts.get(1), ant), DELTA);
+		assertEquals(0.25, pheromone.getPheromone(hosts.get(20), ant), DELTA);
+		assertEquals(0.5, pheromone.getPheromone(hosts.get(39), ant), DELTA);
+		assertEquals(0.0, pheromone.getPheromone(hosts.get(19), ant));
+
+		/* a message from a host that is not connected doesn't count */
+		pheromone.updatePheromone(hosts.get(2), hosts.get(1), ant);
+		assertEquals(0.25, pheromone.getPheromone(hosts.get(1), ant), DELTA);
+	}
+
+	/**
+	 * Compares the table against the previous map based implementation
+	 * (without evaporation, the old update was (1 - rate) * (current +
+	 * 1/pathLength))
+	 */
+	public void testMatchesMapTable() {
+		final double rate = 0;
+		Map<DTNHost, Map<DTNHost, Double>> mapTable =
+			new HashMap<DTNHost, Map<DTNHost, Double>>();
+		Map<DTNHost, Message> ants = new HashMap<DTNHost, Message>();
+		Random rng = new Random(1);
+
+		for (int i=0; i < 1000; i++) {
+			DTNHost dest = hosts.get(rng.nextInt(NROF_HOSTS));
+			DTNHost host = hosts.get(rng.nextInt(NROF_HOSTS));
+			DTNHost from = hosts.get(rng.nextInt(NROF_HOSTS));
+			if (host == from) {
+				continue;
+			}
+			int pathLength = 1 + rng.nextInt(5);
+			Message ant = createAnt(dest, pathLength);
+			ants.put(dest, ant);
+			if (!mapTable.containsKey(dest)) {
+				mapTable.put(dest, new HashMap<DTNHost, Double>());
+			}
+
+			Map<DTNHost, Double> row = mapTable.get(dest);
+			Double current = row.get(from);
+			row.put(from, (1 - rate) * ((current == null ? 0.0 : current) +
+					1.0 / pathLength));
+			update(host, from, ant);
+		}
+
+		for (DTNHost dest : hosts) {
+			Message ant = ants.get(dest);
+			if (ant == null) {
+				continue;
+			}
+			for (DTNHost peer : hosts) {
+				Double expected = mapTable.get(dest).get(peer);
+				assertEquals(expected == null ? 0.0 : expected,
+						pheromone.getPheromone(peer, ant), DELTA);
+			}
+		}
+	}
+
+	public void testEvaporation() {
+		SimClock clock = SimClock.getInstance();
+		this.pheromone = createPheromone("0.1", "30");
+		Message ant = createAnt(hosts.get(5), 2);
+		update(hosts.get(2), hosts.get(1), ant);
+		assertEquals(0.5, pheromone.getPheromone(hosts.get(1), ant), DELTA);
+
+		/* 10% of the value evaporates in every 30 seconds */
+		clock.setTime(30);
+		assertEquals(0.45, pheromone.getPheromone(hosts.get(1), ant), DELTA);
+		clock.setTime(45);
+		assertEquals(0.5 * Math.pow(0.9, 1.5),
+				pheromone.getPheromone(hosts.get(1), ant), DELTA);
+
+		/* a deposit is added to the evaporated value */
+		clock.setTime(60);
+		Message ant2 = createAnt(hosts.get(5), 4);
+		update(hosts.get(2), hosts.get(1), ant2);
+		assertEquals(0.405 + 0.25,
+				pheromone.getPheromone(hosts.get(1), ant), DELTA);
+		clock.setTime(90);
+		assertEquals(0.655 * 0.9,
+				pheromone.getPheromone(hosts.get(1), ant), DELTA);
+
+		/* other peers' values evaporate independently */
+		update(hosts.get(2), hosts.get(3), ant);
+		clock.setTime(120);
+		assertEquals(0.45, pheromone.getPheromone(hosts.get(3), ant), DELTA);
+		assertEquals(0.655 * 0.81,
+				pheromone.getPheromone(hosts.get(1), ant), DELTA);
+	}
+
+	public void testInvalidTimeUnit() {
+		String[] invalid = {"0", "-30"};
+		for (String timeUnit : invalid) {
+			try {
+				createPheromone("0.1", timeUnit);
+				fail("No error for time unit " + timeUnit);
+			} catch (SettingsError e) {
+				// expected
+			}
+		}
+	}
+}
@@ -151,4 +151,33 @@ public class ProphetRouterTest extends AbstractRouterTest {
 		assertEquals(newPred, r5.getPredFor(h4));
 	}
 
+	public void testLongAgingAndTransitivity() {
+		ProphetRouter r4 = (ProphetRouter)h4.getRouter();
+		ProphetRouter r5 = (ProphetRouter)h5.getRouter();
+		ProphetRouter r6 = (ProphetRouter)h6.getRouter();
+
+		h4.connect(h5);
+		disconnect(h5);
+		h5.connect(h6);
+		double transPred = ProphetRouter.P_INIT * ProphetRouter.P_INIT *
+			ProphetRouter.DEFAULT_BETA;
+		assertEquals(transPred, r6.getPredFor(h4), 1e-12);
+		assertEquals(0.0, r6.getPredFor(h1));
+		disconnect(h6);
+
+		/* long enough for the values to get smaller than any scale */
+		int units = 20000;
+		clock.advance(SECONDS_IN_TIME_UNIT * units);
+		double aged = Math.pow(ProphetRouter.DEFAULT_GAMMA, units);
+		assertEquals(1.0, r4.getPredFor(h5) / (ProphetRouter.P_INIT * aged),
+				1e-9);
+		assertEquals(1.0, r6.getPredFor(h4) / (transPred * aged), 1e-9);
+
+		h4.connect(h5);
+		double newPred = ProphetRouter.P_INIT * aged +
+			(1 - ProphetRouter.P_INIT * aged) * ProphetRouter.P_INIT;
+		assertEquals(newPred, r4.getPredFor(h5), 1e-12);
+		assertEquals(newPred, r5.getPredFor(h4), 1e-12);
+	}
+
 }
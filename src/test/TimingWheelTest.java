@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import util.TimingWheel;
+
+public class TimingWheelTest extends TestCase {
+
+	private TimingWheel<String> wheel;
+	private List<String> due;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		wheel = new TimingWheel<String>(1.0);
+		due = new ArrayList<String>();
+	}
+
+	private void assertDue(double time, String... expected) {
+		due.clear();
+		wheel.advance(time, due);
+		assertEquals(expected.length, due.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], due.get(i));
+		}
+	}
+
+	public void testExactTimes() {
+		wheel.add(10.5, "a");
+		wheel.add(10.2, "b");
+		wheel.add(11, "c");
+		assertEquals(3, wheel.size());
+
+		assertDue(10.1);
+		assertDue(10.2, "b");
+		assertDue(10.9, "a");
+		assertDue(11, "c");
+		assertEquals(0, wheel.size());
+	}
+
+	public void testFarAwayTimes() {
+		wheel.add(100000, "far");
+		wheel.add(4100, "mid");
+		wheel.add(65, "near");
+		wheel.add(1e12, "veryFar");
+
+		assertDue(64.9);
+		assertDue(4099.9, "near");
+		assertDue(4100.1, "mid");
+		assertDue(99999);
+		assertDue(200000, "far");
+		assertEquals(1, wheel.size());
+		assertDue(1e12, "veryFar");
+	}
+
+	public void testSteppedAdvance() {
+		for (int i = 0; i < 5000; i += 7) {
+			wheel.add(i + 0.5, "i" + i);
+		}
+		for (int t = 0; t < 5000; t++) {
+			due.clear();
+			wheel.advance(t + 0.6, due);
+			if (t % 7 == 0) {
+				assertEquals(1, due.size());
+				assertEquals("i" + t, due.get(0));
+			} else {
+				assertEquals(0, due.size());
+			}
+		}
+		assertEquals(0, wheel.size());
+	}
+
+	public void testPastTimes() {
+		assertDue(50);
+		wheel.add(10, "late");
+		assertDue(50, "late");
+	}
+}
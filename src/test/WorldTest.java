@@ -9,7 +9,17 @@ import input.EventQueue;
 import java.util.ArrayList;
 import java.util.List;
 
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.SimpleBroadcastInterface;
 import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import movement.RandomWaypoint;
+import routing.MessageRouter;
+import routing.PassiveRouter;
+import core.ConnectionListener;
+import core.Coord;
 import core.DTNHost;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
@@ -74,6 +84,201 @@ public class WorldTest extends TestCase {
 		assertNrofUpdates(nrofRounds);
 	}
 
+	public void testParallelUpdate() {
+		String[] optimizers = {"ConnectivityGrid", "SparseHashGrid", "KdTree"};
+		try {
+			for (String optimizer : optimizers) {
+				for (boolean incremental : new boolean[] {false, true}) {
+					String config = optimizer + (incremental ?
+							" incremental" : "");
+					List<String> serial = runConnectivityScenario(optimizer,
+							incremental, false);
+					List<String> parallel = runConnectivityScenario(
+							optimizer, incremental, true);
+					assertTrue(config + ": no connections",
+							serial.size() > 300);
+					assertEquals(config, serial, parallel);
+				}
+			}
+		} finally {
+			new TestSettings();
+			MovementModel.reset();
+			NetworkInterface.reset();
+			ConnectivityOptimizer.reset();
+			ConnectivityGrid.reset();
+		}
+	}
+
+	/**
+	 * Runs random waypoint hosts (with their own random number generators)
+	 * that have broadcast interfaces and records the connection changes and
+	 * the locations of the hosts
+	 * @param optimizer Name of the connectivity optimizer to use
+	 * @param incremental Should the incremental connectivity be used
+	 * @param parallel Should the parallel updates be used
+	 * @return The connection changes (time, hosts and up/down) in the order
+	 * they happened and the locations of the hosts after every 10 rounds
+	 */
+	private List<String> runConnectivityScenario(String optimizer,
+			boolean incremental, boolean parallel) {
+		String ns = World.OPTIMIZATION_SETTINGS_NS + ".";
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.HOST_RNG_S, "true");
+		ts.putSetting(MovementModel.SPEED, "0.5,1.5");
+		ts.putSetting(MovementModel.WAIT_TIME, "0,2");
+		ts.putSetting(ns + ConnectivityOptimizer.OPTIMIZER_S, optimizer);
+		ts.putSetting(ns + NetworkInterface.INCREMENTAL_CONNECTIVITY_S,
+				"" + incremental);
+		if (parallel) {
+			ts.putSetting(ns + World.PARALLEL_UPDATES_S, "true");
+			ts.putSetting(ns + World.PARALLELISM_S, "4");
+		}
+		SimClock.reset();
+		DTNHost.reset();
+		MovementModel.reset();
+		NetworkInterface.reset();
+		ConnectivityOptimizer.reset();
+		ConnectivityGrid.reset();
+
+		final List<String> events = new ArrayList<String>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add(SimClock.getTime() + " " + host1 + "-" + host2 +
+						" up");
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add(SimClock.getTime() + " " + host1 + "-" + host2 +
+						" down");
+			}
+		});
+
+		MovementModel mmProto = new RandomWaypoint(ts);
+		MessageRouter routerProto = new PassiveRouter(ts);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "30");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		NetworkInterface niProto = new SimpleBroadcastInterface(ts);
+		niProto.setClisteners(cl);
+		List<NetworkInterface> interfaces = new ArrayList<NetworkInterface>();
+		interfaces.add(niProto);
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<300; i++) {
+			hosts.add(new DTNHost(null, null, "h", interfaces,
+					new ModuleCommunicationBus(), mmProto, routerProto));
+		}
+		world = new World(hosts, 1000, 1000, 1.0,
+				new ArrayList<UpdateListener>(), true, eQueues);
+
+		for (int i=0; i<300; i++) {
+			world.update();
+			if (i % 10 == 0) {
+				for (DTNHost h : hosts) {
+					events.add(h + "@" + h.getLocation());
+				}
+			}
+		}
+		return events;
+	}
+
+	public void testParallelMovement() {
+		try {
+			List<Coord> serial = moveRandomWaypointHosts(false);
+			List<Coord> parallel = moveRandomWaypointHosts(true);
+			assertEquals(serial, parallel);
+		} finally {
+			new TestSettings();
+			MovementModel.reset(); // back to the common random numbers
+		}
+	}
+
+	/**
+	 * Moves random waypoint hosts that have their own random number
+	 * generators (including a warmup period). Every third host is moved in
+	 * the serial lane.
+	 * @param parallel Should the hosts be moved concurrently
+	 * @return Locations of the hosts after every 10 update rounds
+	 */
+	private List<Coord> moveRandomWaypointHosts(boolean parallel) {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.HOST_RNG_S, "true");
+		ts.putSetting(MovementModel.SPEED, "0.5,1.5");
+		ts.putSetting(MovementModel.WAIT_TIME, "0,2");
+		if (parallel) {
+			ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+					World.PARALLEL_MOVEMENT_S, "true");
+			ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+					World.PARALLELISM_S, "4");
+		}
+		SimClock.reset();
+		DTNHost.reset();
+		MovementModel.reset();
+
+		MovementModel proto = new RandomWaypoint(ts);
+		MovementModel serialProto = new SerialRandomWaypoint(ts);
+		TestUtils utils = new TestUtils(null, null, ts);
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<200; i++) {
+			hosts.add(utils.createHost(i % 3 == 0 ? serialProto : proto,
+					null));
+		}
+		world = new World(hosts, 1000, 1000, 1.0,
+				new ArrayList<UpdateListener>(), false, eQueues);
+
+		SimClock.getInstance().setTime(-100);
+		world.warmupMovementModel(100);
+		List<Coord> locations = new ArrayList<Coord>();
+		for (int i=0; i<300; i++) {
+			world.update();
+			if (i % 10 == 0) {
+				for (DTNHost h : hosts) {
+					locations.add(h.getLocation().clone());
+				}
+			}
+		}
+		return locations;
+	}
+
+	public void testContactPrediction() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.CONTACT_PREDICTION_S, "true");
+		final List<Double> ups = new ArrayList<Double>();
+		final List<Double> downs = new ArrayList<Double>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				ups.add(SimClock.getTime());
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				downs.add(SimClock.getTime());
+			}
+		});
+		TestUtils utils = new TestUtils(cl, null, ts);
+
+		/* h1 passes h2 (range 1.0) at 1 m/s in the middle of an interval */
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(utils.createHost(new LinearMovement(new Coord(0, 0),
+				new Coord(100, 0)), "h1"));
+		hosts.add(utils.createHost(new Coord(50, 0.5)));
+		world = new World(hosts, worldSizeX, worldSizeY, 10.0,
+				new ArrayList<UpdateListener>(), simulateConnections,
+				eQueues);
+
+		for (int i=0; i<10; i++) {
+			world.update();
+		}
+
+		double halfChord = Math.sqrt(1.0 - 0.5 * 0.5);
+		assertEquals(1, ups.size());
+		assertEquals(1, downs.size());
+		assertEquals(50 - halfChord, ups.get(0), TIME_DELTA);
+		assertEquals(50 + halfChord, downs.get(0), TIME_DELTA);
+	}
+
 	private void assertNrofUpdates(int nrof) {
 		for (TestDTNHost h : testHosts) {
 			assertEquals(nrof, h.nrofUpdate);
@@ -102,6 +307,69 @@ public class WorldTest extends TestCase {
 	}
 
 
+	/** Movement model that moves once along a line at 1 m/s */
+	private static class LinearMovement extends MovementModel {
+		private Coord from;
+		private Coord to;
+		private boolean moved;
+
+		public LinearMovement(Coord from, Coord to) {
+			this.from = from;
+			this.to = to;
+			this.moved = false;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return from.clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = new Path(1.0);
+			p.addWaypoint(from.clone());
+			p.addWaypoint(to.clone());
+			moved = true;
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return moved ? Double.MAX_VALUE : 0;
+		}
+
+		@Override
+		public LinearMovement replicate() {
+			return new LinearMovement(from, to);
+		}
+	}
+
+	/** Random waypoint movement whose hosts are moved in the serial lane */
+	private static class SerialRandomWaypoint extends RandomWaypoint {
+		public SerialRandomWaypoint(TestSettings s) {
+			super(s);
+		}
+
+		private SerialRandomWaypoint(SerialRandomWaypoint proto) {
+			super(proto);
+		}
+
+		@Override
+		public boolean isParallelSafe() {
+			return false;
+		}
+
+		@Override
+		public SerialRandomWaypoint replicate() {
+			return new SerialRandomWaypoint(this);
+		}
+	}
+
 	/** Dummy scenario for providing test values for the World */
 	@SuppressWarnings("serial")
 	private class TestScenario extends core.SimScenario {
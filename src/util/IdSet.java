@@ -0,0 +1,298 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+
+/**
+ * <P>Compact set of non-negative integer identifiers (e.g., interned message
+ * IDs). The ID space is split into chunks of 65536 IDs and each non-empty
+ * chunk has a container (as in Roaring bitmaps): a sorted array of the
+ * low 16 bits of the IDs while the chunk is sparse (2 bytes per ID) and a
+ * bitmap when it gets dense (8 kB per chunk, i.e., 1 bit per possible ID).
+ * </P>
+ * <P>The set has a version number that grows at every change and each
+ * container remembers the version when it was last changed. This way
+ * {@link #addAll(IdSet, long)} can copy only the changes made since the
+ * previous copying.</P>
+ */
+public class IdSet {
+	/** number of low bits stored in the containers */
+	private static final int LOW_BITS = 16;
+	/** largest number of IDs in an array container */
+	private static final int ARRAY_MAX = 4096;
+	/** number of long words in a bitmap container */
+	private static final int BITMAP_WORDS = (1 << LOW_BITS) / 64;
+
+	/** high bits of the containers' IDs in ascending order */
+	private int[] highs;
+	private Container[] containers;
+	private int nrofContainers;
+	private int size;
+	private long version;
+
+	/**
+	 * Creates a new, empty set
+	 */
+	public IdSet() {
+		this.highs = new int[4];
+		this.containers = new Container[4];
+		this.nrofContainers = 0;
+		this.size = 0;
+		this.version = 0;
+	}
+
+	/**
+	 * Adds an ID to the set
+	 * @param id The ID (must not be negative)
+	 * @return True if the ID was not in the set already
+	 */
+	public boolean add(int id) {
+		assert id >= 0 : "Negative id " + id;
+		int i = indexOf(id >>> LOW_BITS);
+		if (i < 0) {
+			i = insertContainer(-(i + 1), id >>> LOW_BITS);
+		}
+		if (!containers[i].add((char)id)) {
+			return false;
+		}
+		size++;
+		containers[i].modified = ++version;
+		return true;
+	}
+
+	/**
+	 * Returns true if the ID is in the set
+	 * @param id The ID
+	 * @return True if the ID is in the set
+	 */
+	public boolean contains(int id) {
+		if (id < 0) {
+			return false;
+		}
+		int i = indexOf(id >>> LOW_BITS);
+		return i >= 0 && containers[i].contains((char)id);
+	}
+
+	/**
+	 * Returns the number of IDs in the set
+	 * @return The size of the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the version of the set. The version grows every time an ID is
+	 * added.
+	 * @return The version
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Adds the IDs of another set that were added to it after the given
+	 * version of it. Only the containers that have changed after that are
+	 * looked at.
+	 * @param other The set whose IDs are added
+	 * @param sinceVersion Version of the other set whose IDs this set already
+	 * has (e.g., the version of the last call), or 0 to add all the IDs
+	 * @return The IDs that were added to this set (the ones this set did not
+	 * have)
+	 */
+	public int[] addAll(IdSet other, long sinceVersion) {
+		int[] added = new int[0];
+		int nrofAdded = 0;
+
+		for (int j = 0; j < other.nrofContainers; j++) {
+			Container oc = other.containers[j];
+			if (oc.modified <= sinceVersion) {
+				continue;
+			}
+			int high = other.highs[j];
+			int i = indexOf(high);
+			if (i < 0) {
+				i = insertContainer(-(i + 1), high);
+			}
+			Container c = containers[i];
+
+			int[] lows = c.addAll(oc);
+			if (lows.length == 0) {
+				continue;
+			}
+			if (nrofAdded + lows.length > added.length) {
+				added = Arrays.copyOf(added,
+						Math.max(nrofAdded + lows.length, 2 * added.length));
+			}
+			for (int low : lows) {
+				added[nrofAdded++] = (high << LOW_BITS) | low;
+			}
+			size += lows.length;
+			c.modified = ++version;
+		}
+
+		return nrofAdded == added.length ? added :
+			Arrays.copyOf(added, nrofAdded);
+	}
+
+	/**
+	 * Returns the index of the container with the given high bits or
+	 * (-(insertion point) - 1) if there is no such container
+	 */
+	private int indexOf(int high) {
+		return Arrays.binarySearch(highs, 0, nrofContainers, high);
+	}
+
+	/**
+	 * Inserts a new, empty container to the given index
+	 * @return The index
+	 */
+	private int insertContainer(int index, int high) {
+		if (nrofContainers == highs.length) {
+			highs = Arrays.copyOf(highs, 2 * highs.length);
+			containers = Arrays.copyOf(containers, 2 * containers.length);
+		}
+		System.arraycopy(highs, index, highs, index + 1,
+				nrofContainers - index);
+		System.arraycopy(containers, index, containers, index + 1,
+				nrofContainers - index);
+		highs[index] = high;
+		containers[index] = new Container();
+		nrofContainers++;
+		return index;
+	}
+
+	/**
+	 * Set of the low bits of the IDs of one chunk
+	 */
+	private static class Container {
+		/** sorted low bits (while the container is sparse) */
+		private char[] array;
+		/** number of IDs in the array */
+		private int count;
+		/** bitmap of the low bits (once the container gets dense) */
+		private long[] bitmap;
+		/** version of the set when this container was last changed */
+		private long modified;
+
+		private Container() {
+			this.array = new char[4];
+			this.count = 0;
+			this.bitmap = null;
+		}
+
+		private boolean contains(char low) {
+			if (bitmap != null) {
+				return (bitmap[low >>> 6] & (1L << low)) != 0;
+			}
+			return Arrays.binarySearch(array, 0, count, low) >= 0;
+		}
+
+		private boolean add(char low) {
+			if (bitmap != null) {
+				long bit = 1L << low;
+				if ((bitmap[low >>> 6] & bit) != 0) {
+					return false;
+				}
+				bitmap[low >>> 6] |= bit;
+				return true;
+			}
+
+			int i = Arrays.binarySearch(array, 0, count, low);
+			if (i >= 0) {
+				return false;
+			}
+			if (count == ARRAY_MAX) {
+				toBitmap();
+				return add(low);
+			}
+			i = -(i + 1);
+			if (count == array.length) {
+				array = Arrays.copyOf(array, Math.min(2 * count, ARRAY_MAX));
+			}
+			System.arraycopy(array, i, array, i + 1, count - i);
+			array[i] = low;
+			count++;
+			return true;
+		}
+
+		/**
+		 * Adds the IDs of another container
+		 * @return The low bits that were added
+		 */
+		private int[] addAll(Container other) {
+			int[] added;
+			int n = 0;
+			if (other.bitmap != null && this.bitmap == null &&
+					this.count > 0) {
+				toBitmap();
+			}
+
+			if (other.bitmap != null && this.bitmap != null) {
+				/* word by word: only the bits that this one lacks */
+				added = new int[0];
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					long missing = other.bitmap[w] & ~this.bitmap[w];
+					if (missing == 0) {
+						continue;
+					}
+					this.bitmap[w] |= missing;
+					if (n + Long.bitCount(missing) > added.length) {
+						added = Arrays.copyOf(added, Math.max(n +
+								Long.bitCount(missing), 2 * added.length));
+					}
+					while (missing != 0) {
+						added[n++] = (w << 6) +
+							Long.numberOfTrailingZeros(missing);
+						missing &= missing - 1;
+					}
+				}
+			} else if (other.bitmap != null) {
+				/* this one is empty: copy the bitmap */
+				this.bitmap = other.bitmap.clone();
+				this.array = null;
+				added = new int[other.cardinality()];
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					long bits = this.bitmap[w];
+					while (bits != 0) {
+						added[n++] = (w << 6) +
+							Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+					}
+				}
+			} else {
+				added = new int[other.count];
+				for (int k = 0; k < other.count; k++) {
+					if (add(other.array[k])) {
+						added[n++] = other.array[k];
+					}
+				}
+			}
+
+			return n == added.length ? added : Arrays.copyOf(added, n);
+		}
+
+		private int cardinality() {
+			if (bitmap == null) {
+				return count;
+			}
+			int c = 0;
+			for (long word : bitmap) {
+				c += Long.bitCount(word);
+			}
+			return c;
+		}
+
+		private void toBitmap() {
+			bitmap = new long[BITMAP_WORDS];
+			for (int k = 0; k < count; k++) {
+				bitmap[array[k] >>> 6] |= 1L << array[k];
+			}
+			array = null;
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive, non-negative int keys. Uses open addressing with
+ * linear probing, so no entry objects are created and the keys are not
+ * boxed. The values are iterated in the order of the hash table slots.
+ */
+public class IntHashMap<V> {
+	/** initial capacity of the table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 16;
+	/** key of an empty slot */
+	private static final int FREE = -1;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	/** number of added and removed keys (for detecting modifications
+	 * during iteration) */
+	private int modCount;
+	private Collection<V> valueView;
+
+	/**
+	 * Creates a new, empty map
+	 */
+	public IntHashMap() {
+		this.keys = newKeys(INITIAL_CAPACITY);
+		this.values = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	private static int[] newKeys(int capacity) {
+		int[] k = new int[capacity];
+		Arrays.fill(k, FREE);
+		return k;
+	}
+
+	/**
+	 * Returns the home slot of a key in a table with the given mask
+	 */
+	private static int slotOf(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the slot of the key or -1 if the key is not in the map
+	 */
+	private int find(int key) {
+		int mask = keys.length - 1;
+		for (int i = slotOf(key, mask); keys[i] != FREE; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int i = find(key);
+		return i < 0 ? null : (V)values[i];
+	}
+
+	/**
+	 * Returns true if the map contains the key
+	 * @param key The key
+	 * @return True if the key is in the map
+	 */
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Puts a value to the map
+	 * @param key The key (must not be negative)
+	 * @param value The value
+	 * @return The previous value of the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		assert key >= 0 : "Negative key " + key;
+		int mask = keys.length - 1;
+		int i = slotOf(key, mask);
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				V old = (V)values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+
+		if (2 * (size + 1) > keys.length) {
+			rehash(keys.length * 2);
+			insert(key, value);
+		} else {
+			keys[i] = key;
+			values[i] = value;
+		}
+		size++;
+		modCount++;
+		return null;
+	}
+
+	/**
+	 * Removes a key from the map. Uses backward shift deletion so no
+	 * tombstones are needed.
+	 * @param key The key
+	 * @return The value of the removed key or null if the key was not in
+	 * the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int i = find(key);
+		if (i < 0) {
+			return null;
+		}
+		V old = (V)values[i];
+
+		int mask = keys.length - 1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (keys[j] == FREE) {
+				break;
+			}
+			int home = slotOf(keys[j], mask);
+			/* can the entry at j be moved to the hole at i? */
+			boolean between = (i <= j) ? (i < home && home <= j) :
+				(i < home || home <= j);
+			if (!between) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		keys[i] = FREE;
+		values[i] = null;
+		size--;
+		modCount++;
+		return old;
+	}
+
+	/**
+	 * Returns the number of keys in the map
+	 * @return The size of the map
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the map is empty
+	 * @return True if there are no keys in the map
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns a read-only view of the values of the map. The map must not be
+	 * modified while the view is being iterated; the iterators throw a
+	 * ConcurrentModificationException if keys are added or removed.
+	 * @return The values
+	 */
+	public Collection<V> values() {
+		if (valueView == null) {
+			valueView = new AbstractCollection<V>() {
+				public Iterator<V> iterator() {
+					return new ValueIterator();
+				}
+
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return valueView;
+	}
+
+	/**
+	 * Inserts a new key to the table (that has room for it)
+	 */
+	private void insert(int key, Object value) {
+		int mask = keys.length - 1;
+		int i = slotOf(key, mask);
+		while (keys[i] != FREE) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+	}
+
+	/**
+	 * Resizes the table
+	 * @param capacity The new capacity (power of two)
+	 */
+	private void rehash(int capacity) {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.keys = newKeys(capacity);
+		this.values = new Object[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				insert(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Iterator over the values in the slot order
+	 */
+	private class ValueIterator implements Iterator<V> {
+		private int next;
+		private final int expectedModCount;
+
+		private ValueIterator() {
+			this.next = skipFree(0);
+			this.expectedModCount = modCount;
+		}
+
+		private int skipFree(int i) {
+			while (i < keys.length && keys[i] == FREE) {
+				i++;
+			}
+			return i;
+		}
+
+		public boolean hasNext() {
+			return next < keys.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= keys.length) {
+				throw new NoSuchElementException();
+			}
+			V value = (V)values[next];
+			next = skipFree(next + 1);
+			return value;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
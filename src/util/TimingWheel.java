@@ -0,0 +1,206 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <P>Hierarchical timing wheel for items that become due at a given time.
+ * The time is divided into ticks. The first level of the wheel has a slot
+ * for each of the next {@value #SLOTS} ticks, the second level for each of
+ * the next {@value #SLOTS} first level rounds and so on. When the wheel
+ * turns to a new round of a level, the items of that round's slot are
+ * moved down to the lower levels. Adding an item and finding it when it
+ * becomes due thus take constant amortized time, regardless of how many
+ * items the wheel has.</P>
+ * <P>Items are returned in the order they were added if they are due at
+ * the same tick.</P>
+ * <P>Items can't be removed from the wheel. If an item becomes obsolete
+ * before it is due, the caller should skip it when it is returned; the
+ * wheel keeps the item referenced until then.</P>
+ */
+public class TimingWheel<T> {
+	/** number of bits in a slot index */
+	private static final int SLOT_BITS = 6;
+	/** number of slots at each level */
+	private static final int SLOTS = 1 << SLOT_BITS;
+	/** number of levels (the last one also holds items beyond its range) */
+	private static final int LEVELS = 6;
+
+	private final double tickLength;
+	/** slots of each level; created when first needed */
+	private final List<Entry<T>>[][] wheel;
+	/** number of items at each level */
+	private final int[] levelSizes;
+	/** the current tick: items of earlier ticks have been returned */
+	private long currentTick;
+	private int size;
+
+	/**
+	 * Creates a new, empty timing wheel starting from time 0
+	 * @param tickLength Length of a tick (in the same unit as the times)
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimingWheel(double tickLength) {
+		this.tickLength = tickLength;
+		this.wheel = new List[LEVELS][SLOTS];
+		this.levelSizes = new int[LEVELS];
+		this.currentTick = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Adds an item to the wheel. Items whose time has already passed
+	 * are returned on the next call of {@link #advance(double, List)}.
+	 * @param time The time when the item becomes due
+	 * @param item The item
+	 */
+	public void add(double time, T item) {
+		long tick = Math.max((long)Math.floor(time / tickLength),
+				currentTick);
+		place(new Entry<T>(time, tick, item));
+		size++;
+	}
+
+	/**
+	 * Returns the number of items in the wheel
+	 * @return The number of items
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Turns the wheel forward and collects the items that are due
+	 * @param time The current time
+	 * @param due The list where the due items (with times at most the given
+	 * time) are added to
+	 */
+	public void advance(double time, List<T> due) {
+		long target = (long)Math.floor(time / tickLength);
+		if (size == 0) {
+			currentTick = Math.max(currentTick, target);
+			return;
+		}
+
+		while (currentTick < target) {
+			long next;
+			if (levelSizes[0] > 0) {
+				/* all items of the current tick are due */
+				List<Entry<T>> slot = takeSlot(0, currentTick);
+				if (slot != null) {
+					for (Entry<T> e : slot) {
+						due.add(e.item);
+					}
+					size -= slot.size();
+				}
+				next = currentTick + 1;
+			} else {
+				/* skip to the next round of the lowest level with items */
+				int level = 1;
+				while (levelSizes[level] == 0) {
+					level++;
+				}
+				int bits = SLOT_BITS * level;
+				next = ((currentTick >>> bits) + 1) << bits;
+			}
+
+			currentTick = Math.min(next, target);
+			if ((currentTick & (SLOTS - 1)) == 0) {
+				cascade();
+			}
+		}
+
+		/* the items of the current tick are due only if their time is */
+		List<Entry<T>> slot = wheel[0][(int)(currentTick & (SLOTS - 1))];
+		if (slot != null) {
+			int kept = 0;
+			for (int i = 0, n = slot.size(); i < n; i++) {
+				Entry<T> e = slot.get(i);
+				if (e.time <= time) {
+					due.add(e.item);
+				} else {
+					slot.set(kept++, e);
+				}
+			}
+			size -= slot.size() - kept;
+			levelSizes[0] -= slot.size() - kept;
+			slot.subList(kept, slot.size()).clear();
+		}
+	}
+
+	/**
+	 * Moves the items of the upper level slots whose round starts at the
+	 * current tick to the lower levels (highest level first)
+	 */
+	private void cascade() {
+		int top = 0;
+		while (top + 1 < LEVELS &&
+				(currentTick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+			top++;
+		}
+		for (int level = top; level > 0; level--) {
+			List<Entry<T>> slot = takeSlot(level, currentTick);
+			if (slot != null) {
+				for (Entry<T> e : slot) {
+					place(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Puts an entry to the slot of its tick on the lowest level that covers
+	 * the tick from the current tick
+	 */
+	private void place(Entry<T> e) {
+		long delta = e.tick - currentTick;
+		int level = 0;
+		while (level + 1 < LEVELS &&
+				delta >= (1L << (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		int index = (int)((e.tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+		List<Entry<T>> slot = wheel[level][index];
+		if (slot == null) {
+			slot = new ArrayList<Entry<T>>();
+			wheel[level][index] = slot;
+		}
+		slot.add(e);
+		levelSizes[level]++;
+	}
+
+	/**
+	 * Removes and returns the contents of the slot of the given tick at
+	 * the given level
+	 * @return The entries or null if the slot was empty
+	 */
+	private List<Entry<T>> takeSlot(int level, long tick) {
+		int index = (int)((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+		List<Entry<T>> slot = wheel[level][index];
+		if (slot == null || slot.isEmpty()) {
+			return null;
+		}
+		wheel[level][index] = null;
+		levelSizes[level] -= slot.size();
+		return slot;
+	}
+
+	/**
+	 * An item with its due time and tick
+	 */
+	private static class Entry<T> {
+		private final double time;
+		private final long tick;
+		private final T item;
+
+		private Entry(double time, long tick, T item) {
+			this.time = time;
+			this.tick = tick;
+			this.item = item;
+		}
+	}
+}